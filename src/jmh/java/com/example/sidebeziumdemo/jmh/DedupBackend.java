@@ -0,0 +1,226 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.jmh;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import com.example.sidebeziumdemo.eosapp.bloom.BloomFilter;
+import com.example.sidebeziumdemo.eosapp.bloom.SimpleBloomFilter;
+import com.example.sidebeziumdemo.eosapp.dedup.LongHashSet;
+import com.example.sidebeziumdemo.eosapp.dedup.LsnFilter;
+import com.example.sidebeziumdemo.eosapp.dedup.OffHeapLsnFilter;
+import com.example.sidebeziumdemo.eosapp.dedup.OffHeapLsnFilter.Layout;
+import com.google.common.hash.Funnels;
+
+import org.springframework.integration.metadata.SimpleMetadataStore;
+import org.springframework.integration.selector.MetadataStoreSelector;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+
+/**
+ * The dedup structures compared by the {@link DedupBenchmark}, adapted to the {@link LsnFilter} contract.
+ */
+public enum DedupBackend {
+
+	/** Guava on-heap bloom filter of boxed longs. */
+	GUAVA(true, true),
+
+	/** {@link BloomFilter} over an off-heap {@code MemorySegment}. */
+	BLOOM(true, false),
+
+	/** Cache-line blocked {@link BloomFilter} over an off-heap {@code MemorySegment}. */
+	BLOCKED_BLOOM(true, false),
+
+	/** Lock-free {@link BloomFilter} over an off-heap {@code MemorySegment}. */
+	CONCURRENT_BLOOM(true, true),
+
+	/** On-heap {@link SimpleBloomFilter} with the Murmur3 double hashing. */
+	SIMPLE_BLOOM(true, false),
+
+	/** Exact set of boxed longs, the fallback used by the EOS tests. */
+	SKIP_LIST(false, true),
+
+	/** {@code MetadataStoreSelector} over a {@code SimpleMetadataStore}, as used with the idempotent receiver. */
+	METADATA_STORE_SELECTOR(false, true),
+
+	/** Exact bounded primitive long set. */
+	LONG_HASH_SET(false, false);
+
+	private final boolean probabilistic;
+
+	private final boolean threadSafe;
+
+	DedupBackend(boolean probabilistic, boolean threadSafe) {
+		this.probabilistic = probabilistic;
+		this.threadSafe = threadSafe;
+	}
+
+	/**
+	 * @return true for the bloom filters, false for the exact sets.
+	 */
+	public boolean isProbabilistic() {
+		return this.probabilistic;
+	}
+
+	/**
+	 * @return true if concurrent puts are supported. Concurrent lookups are supported by all backends.
+	 */
+	public boolean isThreadSafe() {
+		return this.threadSafe;
+	}
+
+	/**
+	 * @param expectedEntries expected number of the entries.
+	 * @param fpp false positive probability, ignored by the exact sets.
+	 * @return new instance of the backend.
+	 */
+	public LsnFilter create(int expectedEntries, double fpp) {
+		return switch (this) {
+			case GUAVA -> guava(expectedEntries, fpp);
+			case BLOOM -> new OffHeapLsnFilter(expectedEntries, fpp, true, Layout.STANDARD);
+			case BLOCKED_BLOOM -> new OffHeapLsnFilter(expectedEntries, fpp, true, Layout.BLOCKED);
+			case CONCURRENT_BLOOM -> new OffHeapLsnFilter(expectedEntries, fpp, true, Layout.CONCURRENT);
+			case SIMPLE_BLOOM -> simpleBloom(expectedEntries, fpp);
+			case SKIP_LIST -> skipList();
+			case METADATA_STORE_SELECTOR -> metadataStoreSelector();
+			case LONG_HASH_SET -> longHashSet(expectedEntries);
+		};
+	}
+
+	/**
+	 * @return the expected false positive probability of the bloom filter sized for the entries and fpp, or 0 for the
+	 * exact sets.
+	 */
+	public double estimateFalsePositiveProbability(int expectedEntries, double fpp) {
+		return (this.probabilistic)
+				? BloomFilter.estimateFalsePositiveProbability(expectedEntries,
+						BloomFilter.optimalNumOfBits(expectedEntries, fpp))
+				: 0;
+	}
+
+	private static LsnFilter guava(int expectedEntries, double fpp) {
+		com.google.common.hash.BloomFilter<Long> filter = com.google.common.hash.BloomFilter
+				.create(Funnels.longFunnel(), expectedEntries, fpp);
+		return new LsnFilter() {
+
+			@Override
+			public boolean mightContain(long lsn) {
+				return filter.mightContain(lsn);
+			}
+
+			@Override
+			public void put(long lsn) {
+				filter.put(lsn);
+			}
+
+		};
+	}
+
+	private static LsnFilter simpleBloom(int expectedEntries, double fpp) {
+		int numBits = BloomFilter.optimalNumOfBits(expectedEntries, fpp);
+		int numHashFunctions = Math.max(1, (int) Math.round((double) numBits / expectedEntries * Math.log(2)));
+		SimpleBloomFilter filter = new SimpleBloomFilter(numBits, numHashFunctions);
+		return new LsnFilter() {
+
+			@Override
+			public boolean mightContain(long lsn) {
+				return filter.mightContain(lsn);
+			}
+
+			@Override
+			public void put(long lsn) {
+				filter.put(lsn);
+			}
+
+		};
+	}
+
+	private static LsnFilter skipList() {
+		Set<Long> set = new ConcurrentSkipListSet<>();
+		return new LsnFilter() {
+
+			@Override
+			public boolean mightContain(long lsn) {
+				return set.contains(lsn);
+			}
+
+			@Override
+			public void put(long lsn) {
+				set.add(lsn);
+			}
+
+		};
+	}
+
+	private static LsnFilter metadataStoreSelector() {
+		SimpleMetadataStore metadataStore = new SimpleMetadataStore();
+		// Same key strategy as the PostgresEos2Test had.
+		MetadataStoreSelector selector = new MetadataStoreSelector(message -> "" + message.getPayload(),
+				metadataStore);
+		return new LsnFilter() {
+
+			@Override
+			public boolean mightContain(long lsn) {
+				return metadataStore.get("" + lsn) != null;
+			}
+
+			@Override
+			public void put(long lsn) {
+				selector.accept(new LsnMessage(lsn));
+			}
+
+		};
+	}
+
+	private static LsnFilter longHashSet(int expectedEntries) {
+		LongHashSet set = new LongHashSet(expectedEntries);
+		return new LsnFilter() {
+
+			@Override
+			public boolean mightContain(long lsn) {
+				return set.contains(lsn);
+			}
+
+			@Override
+			public void put(long lsn) {
+				set.add(lsn);
+			}
+
+		};
+	}
+
+	/**
+	 * Minimal message, so that the message id generation does not blur the selector cost.
+	 */
+	private record LsnMessage(Long payload) implements Message<Long> {
+
+		private static final MessageHeaders HEADERS = new MessageHeaders(null);
+
+		@Override
+		public Long getPayload() {
+			return this.payload;
+		}
+
+		@Override
+		public MessageHeaders getHeaders() {
+			return HEADERS;
+		}
+
+	}
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.sidebeziumdemo.eosapp.dedup.LsnFilter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Put and lookup throughput of the {@link DedupBackend}s, for a stream of Postgres like LSNs.
+ * <p>
+ * Every trial pre-fills the backend with {@code entries} LSNs. The {@link #lookupHit} looks up the pre-filled LSNs and
+ * {@link #lookupMiss} the never added ones, counting the false positives: the ratio of the {@code falsePositives} and
+ * {@code lookups} secondary results is the measured FPP, to compare with the expected FPP printed on setup. The
+ * {@link #put} adds new LSNs above the pre-filled range, cycling over {@code entries} distinct LSNs per thread so that
+ * the exact sets do not grow without bound.
+ * <p>
+ * Run with the GC profiler ({@code -prof gc}) for the allocation per operation, see {@link DedupBenchmarkRunner}.
+ * <p>
+ * The forks run with a fixed 8GB heap, sized for the 10^8 entries. The {@code -jvmArgsAppend} command line option
+ * replaces it, e.g. {@code -jvmArgsAppend -Xmx2g} with the larger entries excluded.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+@State(Scope.Benchmark)
+public class DedupBenchmark {
+
+	static final long FIRST_LSN = 0x1_6B37_4D48L;
+
+	/** Average distance between two consecutive Postgres change LSNs. */
+	static final long LSN_STEP = 56;
+
+	/** LSNs at or above this index are never pre-filled. */
+	static final int MISS_INDEX_OFFSET = 1 << 30;
+
+	@Param({ "100000", "1000000", "10000000", "100000000" })
+	int entries;
+
+	@Param({ "0.01" })
+	double fpp;
+
+	@Param
+	DedupBackend backend;
+
+	LsnFilter filter;
+
+	private final AtomicInteger threadIndexes = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		if (!this.backend.isProbabilistic() && this.entries > 10_000_000) {
+			throw new IllegalStateException("The exact " + this.backend + " does not fit " + this.entries
+					+ " entries in the benchmark heap.");
+		}
+		this.filter = this.backend.create(this.entries, this.fpp);
+		for (int i = 0; i < this.entries; i++) {
+			this.filter.put(lsn(i));
+		}
+		System.out.println("\n" + this.backend + " entries=" + this.entries + ", expected FPP="
+				+ this.backend.estimateFalsePositiveProbability(this.entries, this.fpp));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		if (this.filter instanceof AutoCloseable closeable) {
+			closeable.close();
+		}
+	}
+
+	static long lsn(long index) {
+		return FIRST_LSN + index * LSN_STEP;
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadState {
+
+		long random;
+
+		long putIndex;
+
+		long putBase;
+
+		@Setup(Level.Trial)
+		public void setup(DedupBenchmark benchmark) {
+			int threadIndex = benchmark.threadIndexes.getAndIncrement();
+			this.random = 0x9E3779B97F4A7C15L * (threadIndex + 1);
+			this.putBase = benchmark.entries + (long) threadIndex * benchmark.entries;
+		}
+
+		/**
+		 * xorshift64, no allocation and no shared state.
+		 */
+		int nextIndex(int bound) {
+			long x = this.random;
+			x ^= x << 13;
+			x ^= x >>> 7;
+			x ^= x << 17;
+			this.random = x;
+			return (int) ((x >>> 1) % bound);
+		}
+
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class MissCounters {
+
+		public long lookups;
+
+		public long falsePositives;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			this.lookups = 0;
+			this.falsePositives = 0;
+		}
+
+	}
+
+	@Benchmark
+	public boolean lookupHit(ThreadState state) {
+		return this.filter.mightContain(lsn(state.nextIndex(this.entries)));
+	}
+
+	@Benchmark
+	public boolean lookupMiss(ThreadState state, MissCounters counters) {
+		boolean found = this.filter.mightContain(lsn(MISS_INDEX_OFFSET + (long) state.nextIndex(MISS_INDEX_OFFSET)));
+		counters.lookups++;
+		if (found) {
+			counters.falsePositives++;
+		}
+		return found;
+	}
+
+	@Benchmark
+	public void put(ThreadState state) {
+		this.filter.put(lsn(state.putBase + state.putIndex));
+		if (++state.putIndex == this.entries) {
+			state.putIndex = 0;
+		}
+	}
+
+}
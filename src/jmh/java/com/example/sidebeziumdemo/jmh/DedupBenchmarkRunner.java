@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.jmh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the {@link DedupBenchmark} matrix with the GC profiler, for 1, 2, 4 and 8 threads:
+ * <ul>
+ * <li>the lookups for all the backends. The exact sets are limited to 10^7 entries.</li>
+ * <li>the single threaded puts for all the backends.</li>
+ * <li>the concurrent puts for the thread-safe backends only.</li>
+ * </ul>
+ * The standard JMH command line options (e.g. {@code -p entries=100000 -f 2 -rff results.json}) are passed through.
+ * <pre>
+ * ./mvnw -Pjmh test-compile exec:exec -Djmh.args="-p entries=100000,1000000"
+ * ./mvnw -Pjmh test-compile exec:exec -Djmh.args="-p entries=100000,1000000 -jvmArgsAppend -Xmx2g"
+ * </pre>
+ */
+public final class DedupBenchmarkRunner {
+
+	static final int[] THREADS = { 1, 2, 4, 8 };
+
+	static final String[] ALL_ENTRIES = { "100000", "1000000", "10000000", "100000000" };
+
+	static final String[] EXACT_ENTRIES = { "100000", "1000000", "10000000" };
+
+	private DedupBenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		List<RunResult> results = new ArrayList<>();
+
+		for (int threads : THREADS) {
+			results.addAll(run(commandLine, "lookup", threads, ALL_ENTRIES, DedupBackend::isProbabilistic));
+			results.addAll(run(commandLine, "lookup", threads, EXACT_ENTRIES, b -> !b.isProbabilistic()));
+			Predicate<DedupBackend> putBackends = (threads == 1) ? b -> true : DedupBackend::isThreadSafe;
+			results.addAll(run(commandLine, "put", threads, ALL_ENTRIES,
+					putBackends.and(DedupBackend::isProbabilistic)));
+			results.addAll(run(commandLine, "put", threads, EXACT_ENTRIES,
+					putBackends.and(b -> !b.isProbabilistic())));
+		}
+
+		System.out.println("\nDedup benchmark summary:");
+		ResultFormatFactory.getInstance(ResultFormatType.TEXT, System.out).writeOut(results);
+	}
+
+	private static Collection<RunResult> run(CommandLineOptions commandLine, String benchmarks, int threads,
+			String[] entries, Predicate<DedupBackend> backendFilter) throws RunnerException {
+
+		String[] backends = Arrays.stream(DedupBackend.values())
+				.filter(backendFilter)
+				.map(Enum::name)
+				.toArray(String[]::new);
+		if (backends.length == 0) {
+			return List.of();
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.parent(commandLine)
+				.include(DedupBenchmark.class.getName() + "." + benchmarks)
+				.addProfiler(GCProfiler.class)
+				.threads(threads)
+				.param("backend", backends);
+		if (!commandLine.getParameter("entries").hasValue()) {
+			options.param("entries", entries);
+		}
+		return new Runner(options.build()).run();
+	}
+
+}
@@ -1,50 +1,139 @@
 package com.example.sidebeziumdemo;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Properties;
+
+import com.example.sidebeziumdemo.support.ByteValueMatcher;
+import com.example.sidebeziumdemo.tuning.SnapshotChunkSizeTuner;
 import io.debezium.engine.ChangeEvent;
 import io.debezium.engine.DebeziumEngine;
+import io.debezium.engine.format.JsonByteArray;
+import io.debezium.engine.spi.OffsetCommitPolicy;
 import io.debezium.pipeline.notification.Notification;
 import io.debezium.pipeline.signal.SignalRecord;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
 import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.PayloadApplicationEvent;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.core.log.LogAccessor;
 import org.springframework.integration.debezium.dsl.Debezium;
 import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.context.IntegrationFlowContext;
+import org.springframework.integration.dsl.context.IntegrationFlowContext.IntegrationFlowRegistration;
 import org.springframework.integration.metadata.MetadataStore;
 import org.springframework.integration.metadata.SimpleMetadataStore;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 
 @SpringBootApplication(exclude = { MongoAutoConfiguration.class })
 @EnableScheduling
-public class CdcDemoApplication implements ApplicationContextAware {
+public class CdcDemoApplication implements ApplicationContextAware, ApplicationRunner {
+
+	private static final LogAccessor logger = new LogAccessor(CdcDemoApplication.class);
 
 	private ApplicationEventPublisher publisher;
 
+	@Autowired
+	private ObjectProvider<DebeziumEngine.CompletionCallback> completionCallback;
+
+	@Autowired
+	private ObjectProvider<DebeziumEngine.ConnectorCallback> connectorCallback;
+
+	@Autowired
+	private ObjectProvider<OffsetCommitPolicy> offsetCommitPolicy;
+
+	@Autowired
+	private IntegrationFlowContext flowContext;
+
+	@Autowired
+	private TaskScheduler taskScheduler;
+
+	@Autowired
+	private Environment environment;
+
+	private IntegrationFlowRegistration streamFlow;
+
+	// The Debezium configuration at start, copied into every engine built with the tuned chunk size.
+	private Properties engineProperties;
+
 	public static void main(String[] args) {
 		new SpringApplicationBuilder(CdcDemoApplication.class)
 				.web(WebApplicationType.NONE)
 				.run("--spring.config.location=classpath:/application-boza.properties");
 	}
 
+	// Incremental snapshot chunk size tuned towards 2s chunks, applied by restarting the engine between snapshots.
 	@Bean
-	public IntegrationFlow streamFlowFromBuilder(DebeziumEngine.Builder<ChangeEvent<byte[], byte[]>> builder) {
+	public SnapshotChunkSizeTuner snapshotChunkSizeTuner() {
+		return new SnapshotChunkSizeTuner(Duration.ofSeconds(2), 1, 100_000,
+				Integer.parseInt(debeziumProperties().getProperty(SnapshotChunkSizeTuner.CHUNK_SIZE_PROPERTY, "1024")));
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		registerStreamFlow();
+	}
+
+	// The flow is registered dynamically to rebuild the engine with the tuned chunk size.
+	private synchronized void registerStreamFlow() {
+		if (this.streamFlow != null) {
+			this.streamFlow.destroy();
+		}
+		if (this.engineProperties == null) {
+			this.engineProperties = debeziumProperties();
+		}
 
-		return IntegrationFlow.from(Debezium.inboundChannelAdapter(builder)
+		// Snapshot (read) events only, matched on the payload '__op' field (add.fields=op) without decoding it.
+		IntegrationFlow flow = IntegrationFlow.from(Debezium.inboundChannelAdapter(
+				engineBuilder(snapshotChunkSizeTuner().getChunkSize()))
 				.enableEmptyPayload(true))
+				.filter(ByteValueMatcher.payloadField("__op", "r"))
 				.handle(message -> {
-					if (PrintUtils.toString(message.getPayload()).contains("\"r\"")) {
-						System.out.println(PrintUtils.headersToString(message.getHeaders()));
-						System.out.println(PrintUtils.prettyJson((byte[]) message.getPayload()));
-					}
+					System.out.println(PrintUtils.headersToString(message.getHeaders()));
+					System.out.println(PrintUtils.prettyJson((byte[]) message.getPayload()));
 				}).get();
+		this.streamFlow = this.flowContext.registration(flow).id("streamFlowFromBuilder").register();
+	}
+
+	// A new builder per engine, with the JSON formats, the properties and the callback and policy beans of the
+	// auto-configured one, so that the shared builder bean is never mutated from the scheduler thread.
+	private DebeziumEngine.Builder<ChangeEvent<byte[], byte[]>> engineBuilder(int chunkSize) {
+		Properties properties = new Properties();
+		properties.putAll(this.engineProperties);
+		properties.setProperty(SnapshotChunkSizeTuner.CHUNK_SIZE_PROPERTY, String.valueOf(chunkSize));
+
+		DebeziumEngine.Builder<ChangeEvent<byte[], byte[]>> builder = DebeziumEngine
+				.create(JsonByteArray.class, JsonByteArray.class, JsonByteArray.class)
+				.using(properties);
+		this.completionCallback.ifAvailable(builder::using);
+		this.connectorCallback.ifAvailable(builder::using);
+		this.offsetCommitPolicy.ifAvailable(builder::using);
+		return builder;
+	}
+
+	private Properties debeziumProperties() {
+		Properties properties = new Properties();
+		properties.putAll(Binder.get(this.environment)
+				.bind("debezium.properties", Bindable.mapOf(String.class, String.class))
+				.orElse(Map.of()));
+		return properties;
 	}
 
 	// Custom Offset Store based on SI MetadataStore.
@@ -57,6 +146,14 @@ public class CdcDemoApplication implements ApplicationContextAware {
 	@EventListener
 	public void applicationEventListener(PayloadApplicationEvent<Notification> applicationEvent) {
 		System.out.println("APPLICATION EVENT: " + applicationEvent.getPayload());
+		SnapshotChunkSizeTuner.Decision decision = snapshotChunkSizeTuner().onNotification(applicationEvent.getPayload());
+		if (decision != null) {
+			logger.info(() -> "Snapshot chunk size: " + decision);
+			if (decision.chunkSize() != decision.previousChunkSize()) {
+				// Notified on the engine thread, so restart from another one.
+				this.taskScheduler.schedule(this::registerStreamFlow, Instant.now());
+			}
+		}
 	}
 
 	// Send Incremental Snapshot as Spring Application Event
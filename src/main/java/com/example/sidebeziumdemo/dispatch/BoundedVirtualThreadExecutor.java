@@ -0,0 +1,117 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.dispatch;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.util.Assert;
+
+/**
+ * Thread per task executor, meant for the virtual threads, with a bounded number of concurrent tasks.
+ * <p>
+ * The {@link #execute(Runnable)} blocks the caller while all the permits are taken. Used behind an
+ * {@link org.springframework.integration.channel.ExecutorChannel} fed by the Debezium inbound adapter, it blocks the
+ * engine thread, which stops draining the Debezium queue, which in turn blocks the connector: the backpressure
+ * reaches the source instead of piling up tasks in memory.
+ * <p>
+ * The tasks run unordered. Use a {@link org.springframework.integration.channel.PartitionedChannel} with
+ * {@link VirtualThreadSupport#threadFactory(String)} lanes where the per key order matters, and an
+ * {@link OrderedCompletionTracker} to commit the offsets past the completed events only.
+ */
+public class BoundedVirtualThreadExecutor implements TaskExecutor {
+
+	private final Semaphore permits;
+
+	private final int maxConcurrency;
+
+	private final ThreadFactory threadFactory;
+
+	private final AtomicLong blockedSubmissions = new AtomicLong(0);
+
+	/**
+	 * @param maxConcurrency the maximum number of the concurrently running tasks.
+	 */
+	public BoundedVirtualThreadExecutor(int maxConcurrency) {
+		this(maxConcurrency, VirtualThreadSupport.threadFactory("cdc-virtual-"));
+	}
+
+	/**
+	 * @param maxConcurrency the maximum number of the concurrently running tasks.
+	 * @param threadFactory the factory of the task threads, one thread per task.
+	 */
+	public BoundedVirtualThreadExecutor(int maxConcurrency, ThreadFactory threadFactory) {
+		Assert.isTrue(maxConcurrency > 0, "The maxConcurrency must be positive.");
+		Assert.notNull(threadFactory, "The threadFactory can not be null.");
+		this.maxConcurrency = maxConcurrency;
+		this.permits = new Semaphore(maxConcurrency);
+		this.threadFactory = threadFactory;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		Assert.notNull(task, "The task can not be null.");
+		try {
+			if (!this.permits.tryAcquire()) {
+				this.blockedSubmissions.incrementAndGet();
+				this.permits.acquire();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TaskRejectedException("Interrupted while waiting for a free slot", e);
+		}
+		Thread thread;
+		try {
+			thread = this.threadFactory.newThread(() -> {
+				try {
+					task.run();
+				}
+				finally {
+					this.permits.release();
+				}
+			});
+			thread.start();
+		}
+		catch (RuntimeException | Error e) {
+			this.permits.release();
+			throw new TaskRejectedException("Failed to start the task thread", e);
+		}
+	}
+
+	/**
+	 * @return Number of the running tasks.
+	 */
+	public int getActiveCount() {
+		return this.maxConcurrency - this.permits.availablePermits();
+	}
+
+	public int getMaxConcurrency() {
+		return this.maxConcurrency;
+	}
+
+	/**
+	 * @return Number of the submissions that had to wait for a free slot, i.e. the backpressure events.
+	 */
+	public long getBlockedSubmissions() {
+		return this.blockedSubmissions.get();
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.dispatch;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import org.springframework.integration.debezium.support.DebeziumHeaders;
+import org.springframework.messaging.Message;
+
+/**
+ * Partition key functions for a {@link org.springframework.integration.channel.PartitionedChannel} dispatching the
+ * Debezium change events over ordered lanes.
+ * <p>
+ * The channel picks the lane from the key {@code hashCode()}, so the serialized {@code byte[]} keys are turned into
+ * their content hash: the events of the same primary key always land on the same lane and keep their order.
+ */
+public final class CdcPartitionKeys {
+
+	private CdcPartitionKeys() {
+	}
+
+	/**
+	 * Partitions by the {@link DebeziumHeaders#KEY} (the primary key), or by the {@link DebeziumHeaders#DESTINATION}
+	 * for the keyless events, e.g. tables without primary key or schema changes.
+	 * @return the partition key function.
+	 */
+	public static Function<Message<?>, Object> primaryKey() {
+		return message -> {
+			Object key = message.getHeaders().get(DebeziumHeaders.KEY);
+			if (key == null) {
+				return destinationOf(message);
+			}
+			return (key instanceof byte[] bytes) ? Arrays.hashCode(bytes) : key;
+		};
+	}
+
+	/**
+	 * Partitions by the {@link DebeziumHeaders#DESTINATION}, keeping the order per table.
+	 * @return the partition key function.
+	 */
+	public static Function<Message<?>, Object> destination() {
+		return CdcPartitionKeys::destinationOf;
+	}
+
+	private static Object destinationOf(Message<?> message) {
+		Object destination = message.getHeaders().get(DebeziumHeaders.DESTINATION);
+		return (destination != null) ? destination : "";
+	}
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.dispatch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.example.sidebeziumdemo.support.ChangeEventHeaders;
+import com.example.sidebeziumdemo.support.DebeziumHeaderValue;
+import io.debezium.data.Envelope;
+
+import org.springframework.integration.handler.AbstractMessageHandler;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.util.Assert;
+
+/**
+ * Routes the change events to per table and per operation channels, e.g. the input channels of subflows, from the
+ * {@code __table} and {@code __op} headers added by the {@code ExtractNewRecordState} transformation.
+ * <p>
+ * The routes are compiled into a switch table indexed by the table number and the operation ordinal. The table header
+ * bytes are looked up, in place, in a precomputed hash table of the routed table names and the operation is decoded
+ * from its single character code, so routing an event takes constant time and allocates nothing, whatever the number
+ * of routes.
+ * <p>
+ * The most specific route wins: the table and operation route, then the table route (any operation), then the
+ * operation route (any table), then the catch-all route and finally the default output channel. The events without a
+ * route are rejected with a {@link MessageDeliveryException}.
+ */
+public class ChangeEventRouter extends AbstractMessageHandler {
+
+	private static final Envelope.Operation[] OPERATIONS = Envelope.Operation.values();
+
+	/** The operations, plus the missing or unknown operation. */
+	private static final int COLUMNS = OPERATIONS.length + 1;
+
+	private final String tableHeader;
+
+	/** Table name (null for any table) to operation (null for any operation) to channel. */
+	private final Map<String, Map<Envelope.Operation, MessageChannel>> routes = new LinkedHashMap<>();
+
+	private MessageChannel defaultOutputChannel;
+
+	private volatile Compiled compiled;
+
+	/**
+	 * Routes on the {@link ChangeEventHeaders#TABLE} header.
+	 */
+	public ChangeEventRouter() {
+		this(ChangeEventHeaders.TABLE);
+	}
+
+	/**
+	 * @param tableHeader the header holding the table name, e.g. the
+	 * {@link org.springframework.integration.debezium.support.DebeziumHeaders#DESTINATION}.
+	 */
+	public ChangeEventRouter(String tableHeader) {
+		Assert.hasText(tableHeader, "The tableHeader can not be empty.");
+		this.tableHeader = tableHeader;
+		compile();
+	}
+
+	/**
+	 * @param table the table name or null for any table.
+	 * @param operation the operation or null for any operation, the missing one included.
+	 * @param channel the target channel.
+	 * @return this router.
+	 */
+	public synchronized ChangeEventRouter route(String table, Envelope.Operation operation, MessageChannel channel) {
+		Assert.notNull(channel, "The channel can not be null.");
+		this.routes.computeIfAbsent(table, t -> new HashMap<>()).put(operation, channel);
+		compile();
+		return this;
+	}
+
+	/**
+	 * @param defaultOutputChannel the channel for the events without a route.
+	 */
+	public synchronized void setDefaultOutputChannel(MessageChannel defaultOutputChannel) {
+		this.defaultOutputChannel = defaultOutputChannel;
+		compile();
+	}
+
+	@Override
+	public String getComponentType() {
+		return "change-event-router";
+	}
+
+	@Override
+	protected void handleMessageInternal(Message<?> message) {
+		Compiled switchTable = this.compiled;
+		int table = switchTable.tableIndex(message.getHeaders().get(this.tableHeader));
+		Envelope.Operation operation = ChangeEventHeaders.operation(message);
+		int column = (operation != null) ? operation.ordinal() : OPERATIONS.length;
+		MessageChannel channel = switchTable.channels[table * COLUMNS + column];
+		if (channel == null) {
+			throw new MessageDeliveryException(message, "No route for the change event in " + this);
+		}
+		if (!channel.send(message)) {
+			throw new MessageDeliveryException(message, "Failed to send the change event to " + channel);
+		}
+	}
+
+	private void compile() {
+		String[] tables = this.routes.keySet().stream().filter(t -> t != null).toArray(String[]::new);
+		// The last row is for the events of not routed tables.
+		MessageChannel[] channels = new MessageChannel[(tables.length + 1) * COLUMNS];
+		Map<Envelope.Operation, MessageChannel> anyTable = this.routes.getOrDefault(null, Collections.emptyMap());
+		for (int t = 0; t <= tables.length; t++) {
+			Map<Envelope.Operation, MessageChannel> tableRoutes = (t < tables.length)
+					? this.routes.get(tables[t])
+					: Collections.emptyMap();
+			for (int c = 0; c < COLUMNS; c++) {
+				Envelope.Operation operation = (c < OPERATIONS.length) ? OPERATIONS[c] : null;
+				MessageChannel channel = (operation != null) ? tableRoutes.get(operation) : null;
+				if (channel == null) {
+					channel = tableRoutes.get(null);
+				}
+				if (channel == null && operation != null) {
+					channel = anyTable.get(operation);
+				}
+				if (channel == null) {
+					channel = anyTable.get(null);
+				}
+				channels[t * COLUMNS + c] = (channel != null) ? channel : this.defaultOutputChannel;
+			}
+		}
+		this.compiled = new Compiled(tables, channels);
+	}
+
+	@Override
+	public String toString() {
+		return "ChangeEventRouter: tableHeader=" + this.tableHeader + ", routes=" + this.routes;
+	}
+
+	/**
+	 * The switch table and the table names hash table.
+	 */
+	private static final class Compiled {
+
+		private final Map<String, Integer> tableIndex = new HashMap<>();
+
+		private final byte[][] tableNames;
+
+		/** Open addressing table of the table numbers plus one, 0 for the empty slots. */
+		private final int[] slots;
+
+		private final MessageChannel[] channels;
+
+		Compiled(String[] tables, MessageChannel[] channels) {
+			this.channels = channels;
+			this.tableNames = new byte[tables.length][];
+			this.slots = new int[Integer.highestOneBit(Math.max(1, tables.length) * 2) << 1];
+			for (int t = 0; t < tables.length; t++) {
+				this.tableIndex.put(tables[t], t);
+				byte[] name = tables[t].getBytes(StandardCharsets.UTF_8);
+				this.tableNames[t] = name;
+				int slot = hash(name, 0, name.length) & (this.slots.length - 1);
+				while (this.slots[slot] != 0) {
+					slot = (slot + 1) & (this.slots.length - 1);
+				}
+				this.slots[slot] = t + 1;
+			}
+		}
+
+		/**
+		 * @return the table number, or the number of tables for the not routed or missing tables.
+		 */
+		int tableIndex(Object headerValue) {
+			if (headerValue instanceof DebeziumHeaderValue value) {
+				headerValue = value.getBytes();
+			}
+			if (headerValue instanceof byte[] bytes) {
+				int start = ChangeEventHeaders.valueStart(bytes);
+				int end = (start >= 0) ? ChangeEventHeaders.valueEnd(bytes, start) : -1;
+				if (end >= 0) {
+					int slot = hash(bytes, start, end) & (this.slots.length - 1);
+					while (this.slots[slot] != 0) {
+						byte[] name = this.tableNames[this.slots[slot] - 1];
+						if (Arrays.equals(bytes, start, end, name, 0, name.length)) {
+							return this.slots[slot] - 1;
+						}
+						slot = (slot + 1) & (this.slots.length - 1);
+					}
+				}
+			}
+			else if (headerValue instanceof String name) {
+				Integer index = this.tableIndex.get(name);
+				if (index != null) {
+					return index;
+				}
+			}
+			return this.tableNames.length;
+		}
+
+		private static int hash(byte[] bytes, int from, int to) {
+			int hash = 0x811C9DC5;
+			for (int i = from; i < to; i++) {
+				hash = (hash ^ bytes[i]) * 0x01000193;
+			}
+			return hash ^ (hash >>> 16);
+		}
+
+	}
+
+}
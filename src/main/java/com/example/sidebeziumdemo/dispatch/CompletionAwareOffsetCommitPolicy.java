@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.dispatch;
+
+import java.time.Duration;
+
+import io.debezium.engine.spi.OffsetCommitPolicy;
+
+import org.springframework.core.log.LogAccessor;
+import org.springframework.util.Assert;
+
+/**
+ * {@link OffsetCommitPolicy} decorator that commits only once all the dispatched events are completed.
+ * <p>
+ * The engine commits the offsets of all the events it has handed over, but with the parallel dispatch the events may
+ * still be queued or in progress on their lanes. When the delegate policy decides to commit, this policy waits, up to
+ * the drain timeout, until the {@link OrderedCompletionTracker} watermark reaches the last dispatched event. On
+ * timeout the commit is skipped and retried on the next policy call, so the offsets never advance past an unprocessed
+ * event.
+ * <p>
+ * Once a dispatched event has failed the policy throws, which stops the Debezium engine with the failure instead of
+ * postponing the commits forever.
+ */
+public class CompletionAwareOffsetCommitPolicy implements OffsetCommitPolicy {
+
+	private static final LogAccessor logger = new LogAccessor(CompletionAwareOffsetCommitPolicy.class);
+
+	private final OffsetCommitPolicy delegate;
+
+	private final OrderedCompletionTracker tracker;
+
+	private final Duration drainTimeout;
+
+	/**
+	 * @param delegate the policy deciding when to commit.
+	 * @param tracker the tracker of the dispatched events.
+	 * @param drainTimeout the maximum time to wait for the in-flight events on commit.
+	 */
+	public CompletionAwareOffsetCommitPolicy(OffsetCommitPolicy delegate, OrderedCompletionTracker tracker,
+			Duration drainTimeout) {
+
+		Assert.notNull(delegate, "The delegate policy can not be null.");
+		Assert.notNull(tracker, "The tracker can not be null.");
+		Assert.isTrue(!drainTimeout.isNegative(), "The drainTimeout can not be negative.");
+		this.delegate = delegate;
+		this.tracker = tracker;
+		this.drainTimeout = drainTimeout;
+	}
+
+	@Override
+	public boolean performCommit(long numberOfMessagesSinceLastCommit, Duration timeSinceLastCommit) {
+		checkFailure();
+		if (!this.delegate.performCommit(numberOfMessagesSinceLastCommit, timeSinceLastCommit)) {
+			return false;
+		}
+		try {
+			if (this.tracker.awaitCompleted(this.tracker.getLastIssued(), this.drainTimeout)) {
+				return true;
+			}
+			checkFailure();
+			logger.warn(() -> "Offset commit postponed, the dispatched events are not completed: " + this.tracker);
+			return false;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private void checkFailure() {
+		Throwable failure = this.tracker.getFailure();
+		if (failure != null) {
+			throw new IllegalStateException("A dispatched event failed, the offsets can not be committed past it: "
+					+ this.tracker, failure);
+		}
+	}
+
+}
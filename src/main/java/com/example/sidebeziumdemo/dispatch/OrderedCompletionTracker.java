@@ -0,0 +1,302 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.dispatch;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.integration.handler.advice.AbstractRequestHandlerAdvice;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.util.Assert;
+
+/**
+ * Tracks the completion of the change events dispatched out of order, e.g. over the lanes of a
+ * {@link org.springframework.integration.channel.PartitionedChannel}.
+ * <p>
+ * Every event gets a sequence number on dispatch, from the Debezium engine thread (see
+ * {@link #sequencingInterceptor()}), and is completed by the lane that handled it (see {@link #completionAdvice()}).
+ * The completed watermark is the highest sequence number such that all the events up to it are completed, so the
+ * offsets can be committed once the watermark reaches the last dispatched event (see
+ * {@link CompletionAwareOffsetCommitPolicy}).
+ * <p>
+ * The number of the in-flight events is bounded by the window capacity: the dispatch blocks when the window is full,
+ * which keeps the lanes queues bounded too, up to the window timeout.
+ * <p>
+ * A failed event is never completed, so it pins the committed offsets and is replayed after a restart. The tracker
+ * fails fast instead of waiting for it: the first failure is recorded and the next dispatch (see {@link #begin()})
+ * and offset commit (see {@link CompletionAwareOffsetCommitPolicy}) throw, which stops the Debezium engine with that
+ * error. The tracker can not be used after a failure.
+ */
+public class OrderedCompletionTracker {
+
+	/**
+	 * Message header holding the event sequence number.
+	 */
+	public static final String SEQUENCE_HEADER = "cdc_sequence";
+
+	private final boolean[] completed;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition windowAvailable = this.lock.newCondition();
+
+	private final Condition watermarkAdvanced = this.lock.newCondition();
+
+	private long nextSequence = 0;
+
+	private long completedWatermark = -1;
+
+	private final AtomicLong failures = new AtomicLong(0);
+
+	private final long windowTimeoutNanos;
+
+	private volatile Throwable failure;
+
+	/**
+	 * Waits up to a minute for the dispatch window.
+	 * @param windowCapacity maximum number of the in-flight events.
+	 */
+	public OrderedCompletionTracker(int windowCapacity) {
+		this(windowCapacity, Duration.ofMinutes(1));
+	}
+
+	/**
+	 * @param windowCapacity maximum number of the in-flight events.
+	 * @param windowTimeout the maximum time to wait for the dispatch window.
+	 */
+	public OrderedCompletionTracker(int windowCapacity, Duration windowTimeout) {
+		Assert.isTrue(windowCapacity > 0, "The windowCapacity must be positive.");
+		Assert.isTrue(windowTimeout != null && !windowTimeout.isNegative(), "The windowTimeout can not be negative.");
+		this.completed = new boolean[windowCapacity];
+		this.windowTimeoutNanos = windowTimeout.toNanos();
+	}
+
+	/**
+	 * Issues the next sequence number. Blocks while the window is full, up to the window timeout.
+	 * @return the sequence number of the dispatched event.
+	 * @throws InterruptedException if interrupted while waiting for the window.
+	 * @throws MessagingException if a dispatched event failed or the window is still full after the timeout.
+	 */
+	public long begin() throws InterruptedException {
+		this.lock.lock();
+		try {
+			long remaining = this.windowTimeoutNanos;
+			while (true) {
+				if (this.failure != null) {
+					throw new MessagingException("A dispatched event failed, stopping the dispatch: " + this,
+							this.failure);
+				}
+				if (this.nextSequence - this.completedWatermark <= this.completed.length) {
+					return this.nextSequence++;
+				}
+				if (remaining <= 0) {
+					throw new MessagingException("The dispatch window is still full after "
+							+ Duration.ofNanos(this.windowTimeoutNanos) + ": " + this);
+				}
+				remaining = this.windowAvailable.awaitNanos(remaining);
+			}
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Marks the event as completed and advances the watermark over the contiguous completed events.
+	 * @param sequence the sequence number of the completed event.
+	 */
+	public void complete(long sequence) {
+		this.lock.lock();
+		try {
+			Assert.isTrue(sequence > this.completedWatermark && sequence < this.nextSequence,
+					() -> "Sequence " + sequence + " is not in flight.");
+			this.completed[slot(sequence)] = true;
+			long watermark = this.completedWatermark;
+			while (watermark + 1 < this.nextSequence && this.completed[slot(watermark + 1)]) {
+				watermark++;
+				this.completed[slot(watermark)] = false;
+			}
+			if (watermark != this.completedWatermark) {
+				this.completedWatermark = watermark;
+				this.windowAvailable.signalAll();
+				this.watermarkAdvanced.signalAll();
+			}
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Records the failure of the event, which is never completed, and wakes up the blocked dispatch.
+	 * @param sequence the sequence number of the failed event.
+	 * @param cause the failure.
+	 */
+	public void fail(long sequence, Throwable cause) {
+		this.failures.incrementAndGet();
+		this.lock.lock();
+		try {
+			if (this.failure == null) {
+				this.failure = new MessagingException("Dispatched event " + sequence + " failed", cause);
+			}
+			this.windowAvailable.signalAll();
+			this.watermarkAdvanced.signalAll();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until all the events up to the sequence number are completed.
+	 * @param sequence the sequence number to wait for.
+	 * @param timeout the maximum time to wait.
+	 * @return true if the watermark reached the sequence, false on timeout or failure.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public boolean awaitCompleted(long sequence, Duration timeout) throws InterruptedException {
+		long remaining = timeout.toNanos();
+		this.lock.lock();
+		try {
+			while (this.completedWatermark < sequence) {
+				if (remaining <= 0 || this.failure != null) {
+					return false;
+				}
+				remaining = this.watermarkAdvanced.awaitNanos(remaining);
+			}
+			return true;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The sequence number of the last dispatched event or -1 if none.
+	 */
+	public long getLastIssued() {
+		this.lock.lock();
+		try {
+			return this.nextSequence - 1;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return All the events up to this sequence number are completed.
+	 */
+	public long getCompletedWatermark() {
+		this.lock.lock();
+		try {
+			return this.completedWatermark;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return Number of the dispatched but not yet completed (or failed) events.
+	 */
+	public long getInFlight() {
+		this.lock.lock();
+		try {
+			return this.nextSequence - 1 - this.completedWatermark;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return Number of the events whose handling failed. They are never completed.
+	 */
+	public long getFailures() {
+		return this.failures.get();
+	}
+
+	/**
+	 * @return The first failure, or null if none.
+	 */
+	public Throwable getFailure() {
+		return this.failure;
+	}
+
+	/**
+	 * @return Interceptor, for the dispatching channel, assigning the {@link #SEQUENCE_HEADER} to the sent messages.
+	 */
+	public ChannelInterceptor sequencingInterceptor() {
+		return new ChannelInterceptor() {
+
+			@Override
+			public Message<?> preSend(Message<?> message, MessageChannel channel) {
+				try {
+					return MessageBuilder.fromMessage(message).setHeader(SEQUENCE_HEADER, begin()).build();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new MessagingException(message, "Interrupted while waiting for the dispatch window", e);
+				}
+			}
+
+		};
+	}
+
+	/**
+	 * @return Advice, for the lane handler, completing the event once handled successfully or recording its failure.
+	 */
+	public AbstractRequestHandlerAdvice completionAdvice() {
+		return new AbstractRequestHandlerAdvice() {
+
+			@Override
+			protected Object doInvoke(ExecutionCallback callback, Object target, Message<?> message) {
+				Long sequence = message.getHeaders().get(SEQUENCE_HEADER, Long.class);
+				Assert.notNull(sequence, "The " + SEQUENCE_HEADER + " header is missing.");
+				Object result;
+				try {
+					result = callback.execute();
+				}
+				catch (RuntimeException e) {
+					fail(sequence, e);
+					throw e;
+				}
+				complete(sequence);
+				return result;
+			}
+
+		};
+	}
+
+	private int slot(long sequence) {
+		return (int) (sequence % this.completed.length);
+	}
+
+	@Override
+	public String toString() {
+		return "OrderedCompletionTracker: lastIssued=" + getLastIssued() + ", completedWatermark="
+				+ getCompletedWatermark() + ", failures=" + this.failures.get();
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.dispatch;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ThreadFactory;
+
+import org.springframework.core.log.LogAccessor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Virtual threads (JDK 21) factories for the dispatch executors, looked up reflectively as the project compiles for
+ * Java 17. On an older runtime the factories fall back to daemon platform threads, so the callers must not rely on the
+ * virtual threads being cheap unless {@link #isAvailable()}.
+ */
+public final class VirtualThreadSupport {
+
+	private static final LogAccessor logger = new LogAccessor(VirtualThreadSupport.class);
+
+	private static final MethodHandle OF_VIRTUAL = lookupOfVirtual();
+
+	private VirtualThreadSupport() {
+	}
+
+	/**
+	 * @return true if the runtime supports the virtual threads.
+	 */
+	public static boolean isAvailable() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * @param prefix the thread name prefix, followed by a counter.
+	 * @return a virtual threads factory, or a daemon platform threads factory if not {@link #isAvailable()}.
+	 */
+	public static ThreadFactory threadFactory(String prefix) {
+		if (OF_VIRTUAL != null) {
+			try {
+				return (ThreadFactory) OF_VIRTUAL.invoke(prefix, 0L);
+			}
+			catch (Throwable e) {
+				logger.warn(e, "Failed to create the virtual threads factory, using platform threads");
+			}
+		}
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+		threadFactory.setDaemon(true);
+		return threadFactory;
+	}
+
+	/**
+	 * @return {@code (prefix, start) -> Thread.ofVirtual().name(prefix, start).factory()} or null before JDK 21.
+	 */
+	private static MethodHandle lookupOfVirtual() {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+			MethodHandle ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualClass));
+			MethodHandle name = lookup.findVirtual(ofVirtualClass, "name",
+					MethodType.methodType(ofVirtualClass, String.class, long.class));
+			MethodHandle factory = lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class));
+			// (prefix, start) -> ofVirtual().name(prefix, start)
+			MethodHandle named = MethodHandles.foldArguments(name, ofVirtual);
+			return MethodHandles.filterReturnValue(named, factory.asType(MethodType.methodType(ThreadFactory.class,
+					ofVirtualClass)));
+		}
+		catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.history;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.debezium.config.Configuration;
+import io.debezium.config.Field;
+import io.debezium.document.Document;
+import io.debezium.document.DocumentReader;
+import io.debezium.document.DocumentWriter;
+import io.debezium.relational.TableId;
+import io.debezium.relational.Tables;
+import io.debezium.relational.ddl.DdlParser;
+import io.debezium.relational.history.AbstractSchemaHistory;
+import io.debezium.relational.history.HistoryRecord;
+import io.debezium.relational.history.HistoryRecordComparator;
+import io.debezium.relational.history.SchemaHistory;
+import io.debezium.relational.history.SchemaHistoryException;
+import io.debezium.relational.history.SchemaHistoryListener;
+import io.debezium.relational.history.TableChanges;
+import org.apache.kafka.common.config.ConfigDef;
+
+/**
+ * File based {@link SchemaHistory} that compacts the recovered history into a snapshot of the latest table schemas,
+ * so that the next start loads the tables directly instead of replaying the whole DDL history.
+ * <p>
+ * The records are appended as CRC protected frames holding the record document, deflated when large. The file header
+ * indexes the first live frame: on every recovery, the records at or before the recovered offsets are folded into a
+ * single snapshot record (the recovered tables, as {@code CREATE} table changes, positioned at the offsets) which is
+ * appended, together with the not yet reached tail records, and becomes the new live start. The dead prefix is dropped
+ * by rewriting the file once it outweighs the live part. A torn frame at the end of the file is truncated on start.
+ * <p>
+ * The compaction needs the table changes recorded with the DDL (the Debezium default), a single source partition in
+ * the offsets and the DDL not preferred over the table changes. Otherwise the history is only appended to, like the
+ * {@link io.debezium.storage.file.history.FileSchemaHistory}.
+ * <p>
+ * Configure with {@code schema.history.internal=com.example.sidebeziumdemo.history.CompactingFileSchemaHistory} and
+ * {@code schema.history.internal.file.filename}.
+ */
+public class CompactingFileSchemaHistory extends AbstractSchemaHistory {
+
+	public static final Field FILE_PATH = Field.create(SchemaHistory.CONFIGURATION_FIELD_PREFIX_STRING + "file.filename")
+		.withDescription("The path to the file that will be used to record the database schema history")
+		.withType(ConfigDef.Type.STRING)
+		.required();
+
+	public static final Collection<Field> ALL_FIELDS = List.of(FILE_PATH);
+
+	static final int MAGIC = 0x53434848;
+
+	static final int VERSION = 1;
+
+	/** Magic, version and the live start offset. */
+	static final int HEADER_BYTES = 16;
+
+	/** Frame length, CRC and flags. */
+	static final int FRAME_HEADER_BYTES = 9;
+
+	static final byte DEFLATED = 1;
+
+	static final byte SNAPSHOT = 2;
+
+	/** Deflate the record documents larger than this. */
+	static final int DEFLATE_THRESHOLD = 512;
+
+	private final DocumentWriter writer = DocumentWriter.defaultWriter();
+
+	private final DocumentReader reader = DocumentReader.defaultReader();
+
+	private Path path;
+
+	private HistoryRecordComparator comparator;
+
+	private boolean preferDdl;
+
+	private FileChannel channel;
+
+	private long liveStart;
+
+	private final List<Frame> liveFrames = new ArrayList<>();
+
+	private record Frame(HistoryRecord record, byte[] bytes, byte flags) {
+	}
+
+	@Override
+	public void configure(Configuration config, HistoryRecordComparator comparator, SchemaHistoryListener listener,
+			boolean useCatalogBeforeSchema) {
+
+		if (!config.validateAndRecord(ALL_FIELDS, logger::error)) {
+			throw new SchemaHistoryException("Error configuring an instance of " + getClass().getSimpleName()
+					+ "; check the logs for details");
+		}
+		super.configure(config, comparator, listener, useCatalogBeforeSchema);
+		this.path = Paths.get(config.getString(FILE_PATH));
+		this.comparator = comparator;
+		this.preferDdl = config.getBoolean(SchemaHistory.INTERNAL_PREFER_DDL);
+	}
+
+	@Override
+	public synchronized void start() {
+		super.start();
+		try {
+			initializeStorage();
+			this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			this.channel.read(header, 0);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				throw new SchemaHistoryException("Not a schema history file: " + this.path);
+			}
+			this.liveStart = header.getLong(8);
+			long end = scan(frame -> {
+			});
+			if (end < this.channel.size()) {
+				logger.warn("Truncating the torn schema history tail of {} at {}", this.path, end);
+				this.channel.truncate(end);
+				this.channel.force(true);
+			}
+		}
+		catch (IOException e) {
+			throw new SchemaHistoryException("Unable to open the schema history file " + this.path, e);
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		try {
+			if (this.channel != null) {
+				this.channel.close();
+				this.channel = null;
+			}
+		}
+		catch (IOException e) {
+			logger.warn("Failed to close the schema history file " + this.path, e);
+		}
+		super.stop();
+	}
+
+	@Override
+	protected synchronized void storeRecord(HistoryRecord record) throws SchemaHistoryException {
+		try {
+			append(List.of(encode(record, (byte) 0)));
+		}
+		catch (IOException e) {
+			throw new SchemaHistoryException("Unable to write the schema history record " + record, e);
+		}
+	}
+
+	@Override
+	protected synchronized void recoverRecords(Consumer<HistoryRecord> records) {
+		this.liveFrames.clear();
+		try {
+			scan(frame -> {
+				this.liveFrames.add(frame);
+				records.accept(frame.record());
+			});
+		}
+		catch (IOException e) {
+			throw new SchemaHistoryException("Unable to read the schema history file " + this.path, e);
+		}
+	}
+
+	@Override
+	public synchronized void recover(Map<Map<String, ?>, Map<String, ?>> offsets, Tables schema, DdlParser ddlParser) {
+		super.recover(offsets, schema, ddlParser);
+		if (offsets.size() != 1 || this.preferDdl) {
+			logger.debug("Schema history compaction skipped");
+			return;
+		}
+		Map.Entry<Map<String, ?>, Map<String, ?>> offset = offsets.entrySet().iterator().next();
+		if (offset.getValue() == null) {
+			return;
+		}
+		try {
+			compact(offset.getKey(), offset.getValue(), schema);
+		}
+		catch (IOException e) {
+			throw new SchemaHistoryException("Unable to compact the schema history file " + this.path, e);
+		}
+		finally {
+			this.liveFrames.clear();
+		}
+	}
+
+	/**
+	 * Appends a snapshot of the recovered tables, positioned at the offset, followed by the tail records past the
+	 * offset, and moves the live start to the snapshot.
+	 */
+	private void compact(Map<String, ?> source, Map<String, ?> position, Tables schema) throws IOException {
+		HistoryRecord stopPoint = new HistoryRecord(source, position, null, null, null, null, Instant.now());
+		Document stopSource = stopPoint.document().getDocument(HistoryRecord.Fields.SOURCE);
+
+		List<Frame> tail = new ArrayList<>();
+		int folded = 0;
+		boolean snapshotOnly = true;
+		for (Frame frame : this.liveFrames) {
+			Document frameSource = frame.record().document().getDocument(HistoryRecord.Fields.SOURCE);
+			if (stopSource.equals(frameSource) && this.comparator.isAtOrBefore(frame.record(), stopPoint)) {
+				folded++;
+				snapshotOnly &= (frame.flags() & SNAPSHOT) != 0;
+			}
+			else {
+				tail.add(frame);
+			}
+		}
+		if (folded == 0 || (folded == 1 && snapshotOnly)) {
+			return;
+		}
+
+		TableChanges changes = new TableChanges();
+		for (TableId tableId : schema.tableIds()) {
+			changes.create(schema.forTable(tableId));
+		}
+		HistoryRecord snapshot = new HistoryRecord(source, position, null, null, null, changes, Instant.now());
+
+		List<ByteBuffer> frames = new ArrayList<>();
+		frames.add(encode(snapshot, SNAPSHOT));
+		for (Frame frame : tail) {
+			frames.add(frame(frame.bytes(), frame.flags()));
+		}
+		long snapshotStart = append(frames);
+		writeLiveStart(snapshotStart);
+
+		int tables = schema.tableIds().size();
+		int records = folded;
+		logger.info("Compacted {} schema history records into a snapshot of {} tables", records, tables);
+
+		if (this.liveStart - HEADER_BYTES > this.channel.size() - this.liveStart) {
+			rewrite();
+		}
+	}
+
+	/**
+	 * Copies the live frames to a new file, moved over the current one.
+	 */
+	private void rewrite() throws IOException {
+		Path rewritten = this.path.resolveSibling(this.path.getFileName() + ".compact");
+		try (FileChannel target = FileChannel.open(rewritten, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			target.write(header(HEADER_BYTES), 0);
+			long size = this.channel.size();
+			long transferred = 0;
+			while (transferred < size - this.liveStart) {
+				transferred += this.channel.transferTo(this.liveStart + transferred, size - this.liveStart - transferred,
+						target.position(HEADER_BYTES + transferred));
+			}
+			target.force(true);
+		}
+		this.channel.close();
+		Files.move(rewritten, this.path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.liveStart = HEADER_BYTES;
+	}
+
+	/**
+	 * Reads the live frames, up to the first invalid one.
+	 * @return the end position of the last valid frame.
+	 */
+	private long scan(Consumer<Frame> frames) throws IOException {
+		long size = this.channel.size();
+		long position = this.liveStart;
+		ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		while (position + FRAME_HEADER_BYTES <= size) {
+			frameHeader.clear();
+			this.channel.read(frameHeader, position);
+			int length = frameHeader.getInt(0);
+			if (length <= 0 || position + FRAME_HEADER_BYTES + length > size) {
+				break;
+			}
+			ByteBuffer payload = ByteBuffer.allocate(length);
+			this.channel.read(payload, position + FRAME_HEADER_BYTES);
+			CRC32C crc = new CRC32C();
+			crc.update(frameHeader.get(8));
+			crc.update(payload.array());
+			if ((int) crc.getValue() != frameHeader.getInt(4)) {
+				break;
+			}
+			byte flags = frameHeader.get(8);
+			byte[] bytes = payload.array();
+			byte[] document = ((flags & DEFLATED) != 0) ? inflate(bytes) : bytes;
+			frames.accept(new Frame(new HistoryRecord(this.reader.read(document)), bytes, flags));
+			position += FRAME_HEADER_BYTES + length;
+		}
+		return position;
+	}
+
+	/**
+	 * @return the position of the first appended frame.
+	 */
+	private long append(List<ByteBuffer> frames) throws IOException {
+		long start = this.channel.size();
+		long position = start;
+		for (ByteBuffer frame : frames) {
+			while (frame.hasRemaining()) {
+				position += this.channel.write(frame, position);
+			}
+		}
+		this.channel.force(false);
+		return start;
+	}
+
+	private void writeLiveStart(long liveStart) throws IOException {
+		this.channel.write(header(liveStart), 0);
+		this.channel.force(false);
+		this.liveStart = liveStart;
+	}
+
+	private ByteBuffer encode(HistoryRecord record, byte flags) {
+		byte[] bytes = this.writer.writeAsBytes(record.document());
+		if (bytes.length > DEFLATE_THRESHOLD) {
+			bytes = deflate(bytes);
+			flags |= DEFLATED;
+		}
+		return frame(bytes, flags);
+	}
+
+	private static ByteBuffer frame(byte[] bytes, byte flags) {
+		CRC32C crc = new CRC32C();
+		crc.update(flags);
+		crc.update(bytes);
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+		frame.putInt(bytes.length).putInt((int) crc.getValue()).put(flags).put(bytes);
+		return frame.flip();
+	}
+
+	private static ByteBuffer header(long liveStart) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putLong(liveStart);
+		return header.flip();
+	}
+
+	private static byte[] deflate(byte[] bytes) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(bytes);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return out.toByteArray();
+		}
+		finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(byte[] bytes) throws IOException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(bytes);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+			byte[] buffer = new byte[8192];
+			while (!inflater.finished()) {
+				int inflated = inflater.inflate(buffer);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("Truncated deflated schema history record");
+				}
+				out.write(buffer, 0, inflated);
+			}
+			return out.toByteArray();
+		}
+		catch (DataFormatException e) {
+			throw new IOException("Corrupted deflated schema history record", e);
+		}
+		finally {
+			inflater.end();
+		}
+	}
+
+	@Override
+	public synchronized boolean exists() {
+		try {
+			return storageExists() && Files.size(this.path) > HEADER_BYTES;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public boolean storageExists() {
+		return Files.exists(this.path);
+	}
+
+	@Override
+	public synchronized void initializeStorage() {
+		if (storageExists()) {
+			return;
+		}
+		try {
+			Path parent = this.path.toAbsolutePath().getParent();
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+			try (FileChannel target = FileChannel.open(this.path, StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.WRITE)) {
+				target.write(header(HEADER_BYTES), 0);
+				target.force(true);
+			}
+		}
+		catch (IOException e) {
+			throw new SchemaHistoryException("Unable to create the schema history file " + this.path, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "compacting file " + ((this.path != null) ? this.path : "(unstarted)");
+	}
+
+}
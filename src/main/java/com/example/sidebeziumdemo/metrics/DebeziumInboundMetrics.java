@@ -0,0 +1,271 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import com.example.sidebeziumdemo.support.ChangeEventHeaders;
+import com.example.sidebeziumdemo.support.DebeziumHeaderValue;
+import com.example.sidebeziumdemo.support.DebeziumQueueMetrics;
+import com.example.sidebeziumdemo.support.JsonFieldExtractor;
+import io.debezium.data.Envelope;
+import io.debezium.engine.ChangeEvent;
+import io.debezium.engine.Header;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.core.log.LogAccessor;
+import org.springframework.integration.debezium.support.DebeziumHeaders;
+import org.springframework.integration.handler.advice.AbstractRequestHandlerAdvice;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Micrometer meters for the Debezium inbound channel adapter pipeline.
+ * <p>
+ * The {@link #handlerAdvice()}, applied on the first handler after the {@code Debezium.inboundChannelAdapter}, records
+ * for every change event, single or in a batch:
+ * <ul>
+ * <li>{@code debezium.events}: counter per destination and operation, for the events/s.</li>
+ * <li>{@code debezium.handler}: timer of the handler call, per destination, or with the {@value #BATCH_DESTINATION}
+ * destination for a batch, whose events may belong to several tables.</li>
+ * <li>{@code debezium.source.lag}: timer of the source commit to receive lag, per destination, from the
+ * {@value #SOURCE_TS} header ({@code add.headers=source.ts_ms}) or payload field ({@code add.fields=source.ts_ms}) of
+ * the {@code ExtractNewRecordState} transformation. Not recorded if neither is present.</li>
+ * </ul>
+ * The operation is read from the {@code __op} header ({@code add.headers=op}), see {@link ChangeEventHeaders}, so the
+ * header mapper must map the {@code __op} and {@value #SOURCE_TS} headers.
+ * <p>
+ * The binder also registers the {@code debezium.queue.depth} and {@code debezium.queue.capacity} gauges, read from the
+ * Debezium streaming metrics MBean, and the {@code debezium.dedup} counters, per {@link Deduplication} outcome, fed by
+ * {@link #recordDeduplication} or bound to the existing counts with {@link #bindDeduplication}. The offset commit
+ * duration is recorded by the offset store, e.g. the
+ * {@link com.example.sidebeziumdemo.offset.MappedOffsetLogBackingStore}.
+ * <p>
+ * Nothing is recorded until the binder is bound to a registry, which Spring Boot does for the {@link MeterBinder}
+ * beans.
+ */
+public class DebeziumInboundMetrics implements MeterBinder {
+
+	private static final LogAccessor logger = new LogAccessor(DebeziumInboundMetrics.class);
+
+	/**
+	 * The source commit timestamp header and payload field name.
+	 */
+	public static final String SOURCE_TS = "__source_ts_ms";
+
+	/**
+	 * The {@code debezium.handler} timer destination tag of the batches.
+	 */
+	public static final String BATCH_DESTINATION = "batch";
+
+	private static final JsonFieldExtractor SOURCE_TS_FIELD = JsonFieldExtractor.forField(SOURCE_TS);
+
+	private static final String UNKNOWN = "unknown";
+
+	/**
+	 * The de-duplication outcome.
+	 */
+	public enum Deduplication {
+
+		/** Duplicate event dropped. */
+		HIT,
+
+		/** Not seen event matched by a probabilistic filter. */
+		FALSE_POSITIVE,
+
+		/** Duplicate event missed by the filter. */
+		FALSE_NEGATIVE;
+
+		String tag() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+
+	}
+
+	private final Map<String, Counter> eventCounters = new ConcurrentHashMap<>();
+
+	private final Map<String, Timer> handlerTimers = new ConcurrentHashMap<>();
+
+	private final Map<String, Timer> lagTimers = new ConcurrentHashMap<>();
+
+	private final Map<Deduplication, Counter> deduplicationCounters = new ConcurrentHashMap<>();
+
+	private final List<Runnable> pendingBindings = new ArrayList<>();
+
+	private volatile MeterRegistry registry;
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("debezium.queue.depth", () -> DebeziumQueueMetrics.totalCapacity()
+				- DebeziumQueueMetrics.remainingCapacity())
+			.description("Change events queued between the connector task and the engine")
+			.register(registry);
+		Gauge.builder("debezium.queue.capacity", () -> DebeziumQueueMetrics.totalCapacity())
+			.description("The max.queue.size")
+			.register(registry);
+		synchronized (this.pendingBindings) {
+			this.registry = registry;
+			this.pendingBindings.forEach(Runnable::run);
+			this.pendingBindings.clear();
+		}
+	}
+
+	/**
+	 * @return Advice recording the event counts, handler latency and source lag, to apply on the flow handler.
+	 */
+	public AbstractRequestHandlerAdvice handlerAdvice() {
+		return new AbstractRequestHandlerAdvice() {
+
+			@Override
+			protected Object doInvoke(ExecutionCallback callback, Object target, Message<?> message) {
+				MeterRegistry registry = DebeziumInboundMetrics.this.registry;
+				if (registry == null) {
+					return callback.execute();
+				}
+				String destination = recordReceived(registry, message);
+				long start = System.nanoTime();
+				try {
+					return callback.execute();
+				}
+				finally {
+					handlerTimers.computeIfAbsent(destination, d -> Timer.builder("debezium.handler")
+						.description("Change event handler latency")
+						.tag("destination", d)
+						.register(registry))
+						.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				}
+			}
+
+		};
+	}
+
+	/**
+	 * @param outcome the de-duplication outcome of an event.
+	 */
+	public void recordDeduplication(Deduplication outcome) {
+		MeterRegistry registry = this.registry;
+		if (registry != null) {
+			this.deduplicationCounters.computeIfAbsent(outcome, o -> Counter.builder("debezium.dedup")
+				.description("De-duplicated change events")
+				.tag("outcome", o.tag())
+				.register(registry)).increment();
+		}
+	}
+
+	/**
+	 * Binds an existing de-duplication count, e.g. of a de-duplication advice, instead of the
+	 * {@link #recordDeduplication} calls for the same outcome.
+	 * @param outcome the counted outcome.
+	 * @param count the monotonic count.
+	 */
+	public void bindDeduplication(Deduplication outcome, LongSupplier count) {
+		Assert.notNull(count, "The count can not be null.");
+		Runnable binding = () -> FunctionCounter.builder("debezium.dedup", count, LongSupplier::getAsLong)
+			.description("De-duplicated change events")
+			.tag("outcome", outcome.tag())
+			.register(this.registry);
+		synchronized (this.pendingBindings) {
+			if (this.registry != null) {
+				binding.run();
+			}
+			else {
+				this.pendingBindings.add(binding);
+			}
+		}
+	}
+
+	// Returns the destination of the handler timer.
+	private String recordReceived(MeterRegistry registry, Message<?> message) {
+		if (message.getPayload() instanceof List<?> batch) {
+			for (Object event : batch) {
+				if (event instanceof ChangeEvent<?, ?> changeEvent) {
+					String destination = (changeEvent.destination() != null) ? changeEvent.destination() : UNKNOWN;
+					Object op = null;
+					Object sourceTs = null;
+					for (Header<?> header : changeEvent.headers()) {
+						if (ChangeEventHeaders.OP.equals(header.getKey())) {
+							op = header.getValue();
+						}
+						else if (SOURCE_TS.equals(header.getKey())) {
+							sourceTs = header.getValue();
+						}
+					}
+					record(registry, destination, ChangeEventHeaders.operation(op), sourceTs, changeEvent.value());
+				}
+			}
+			return BATCH_DESTINATION;
+		}
+		String destination = message.getHeaders().get(DebeziumHeaders.DESTINATION, String.class);
+		destination = (destination != null) ? destination : UNKNOWN;
+		record(registry, destination, ChangeEventHeaders.operation(message), message.getHeaders().get(SOURCE_TS),
+				message.getPayload());
+		return destination;
+	}
+
+	private void record(MeterRegistry registry, String destination, Envelope.Operation operation, Object sourceTs,
+			Object payload) {
+
+		String op = (operation != null) ? operation.name().toLowerCase(Locale.ROOT) : UNKNOWN;
+		this.eventCounters.computeIfAbsent(destination + '\0' + op, key -> Counter.builder("debezium.events")
+			.description("Received change events")
+			.tag("destination", destination)
+			.tag("op", op)
+			.register(registry)).increment();
+
+		long sourceTsMs = sourceTimestamp(sourceTs, payload);
+		if (sourceTsMs > 0) {
+			this.lagTimers.computeIfAbsent(destination, d -> Timer.builder("debezium.source.lag")
+				.description("Source commit to receive lag")
+				.tag("destination", d)
+				.register(registry))
+				.record(Math.max(0, System.currentTimeMillis() - sourceTsMs), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static long sourceTimestamp(Object headerValue, Object payload) {
+		try {
+			if (headerValue instanceof DebeziumHeaderValue value) {
+				return value.asLong();
+			}
+			if (headerValue instanceof byte[] bytes) {
+				return new DebeziumHeaderValue(bytes).asLong();
+			}
+			if (headerValue instanceof Number number) {
+				return number.longValue();
+			}
+			if (payload instanceof byte[] bytes && SOURCE_TS_FIELD.hasField(bytes)) {
+				return SOURCE_TS_FIELD.extractLong(bytes);
+			}
+		}
+		catch (IllegalArgumentException e) {
+			logger.debug(e, "Invalid source timestamp");
+		}
+		return -1;
+	}
+
+}
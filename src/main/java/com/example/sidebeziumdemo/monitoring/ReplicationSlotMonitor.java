@@ -0,0 +1,309 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.monitoring;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+import javax.sql.DataSource;
+
+import io.debezium.engine.spi.OffsetCommitPolicy;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.integration.handler.advice.AbstractRequestHandlerAdvice;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Polls the Postgres replication slot of the Debezium connector and reports the WAL it retains.
+ * <p>
+ * The slot retains the WAL from its {@code restart_lsn} on, which advances only once the connector flushes the
+ * committed offsets to the slot ({@code confirmed_flush_lsn}), so a slow consumer or a rare offset commit can fill the
+ * database disk. On every poll the monitor reads the slot positions and the {@code pg_current_wal_lsn()}, and compares
+ * them with the last handled {@code __lsn} (see {@link #handlerAdvice} or {@link #recordHandled}). The positions are
+ * exposed as the {@code debezium.slot.*} gauges, in bytes:
+ * <ul>
+ * <li>{@code retained}: the WAL retained by the slot, from the {@code restart_lsn}.</li>
+ * <li>{@code flush.lag}: the WAL not yet confirmed by the connector, from the {@code confirmed_flush_lsn}.</li>
+ * <li>{@code handled.lag}: the WAL not yet handled by the application.</li>
+ * <li>{@code unflushed}: the WAL handled but not yet confirmed, released by an offset commit.</li>
+ * </ul>
+ * Once the retained WAL crosses the threshold, the {@link #flushPolicy()} forces the offset commits and the
+ * {@link Listener} is notified, e.g. to throttle the writers, until the retention drops back below the threshold.
+ */
+public class ReplicationSlotMonitor implements SmartLifecycle, MeterBinder {
+
+	private static final LogAccessor logger = new LogAccessor(ReplicationSlotMonitor.class);
+
+	static final String SLOT_QUERY = "SELECT (pg_current_wal_lsn() - '0/0')::bigint, "
+			+ "(restart_lsn - '0/0')::bigint, (confirmed_flush_lsn - '0/0')::bigint, active "
+			+ "FROM pg_replication_slots WHERE slot_name = ?";
+
+	/**
+	 * The slot positions, as the 64-bit LSNs.
+	 * @param currentLsn the {@code pg_current_wal_lsn()}.
+	 * @param restartLsn the oldest WAL position retained by the slot.
+	 * @param confirmedFlushLsn the position confirmed by the connector.
+	 * @param handledLsn the last position handled by the application, or -1 if none.
+	 * @param active whether the connector is connected to the slot.
+	 */
+	public record SlotStatus(long currentLsn, long restartLsn, long confirmedFlushLsn, long handledLsn,
+			boolean active) {
+
+		public long retainedBytes() {
+			return this.currentLsn - this.restartLsn;
+		}
+
+		public long flushLagBytes() {
+			return this.currentLsn - this.confirmedFlushLsn;
+		}
+
+		public long handledLagBytes() {
+			return (this.handledLsn < 0) ? flushLagBytes() : Math.max(0, this.currentLsn - this.handledLsn);
+		}
+
+		public long unflushedBytes() {
+			return (this.handledLsn < 0) ? 0 : Math.max(0, this.handledLsn - this.confirmedFlushLsn);
+		}
+
+	}
+
+	/**
+	 * Notified when the retained WAL crosses the threshold, from the polling thread.
+	 */
+	public interface Listener {
+
+		void retentionExceeded(SlotStatus status);
+
+		void retentionRecovered(SlotStatus status);
+
+	}
+
+	private final DataSource dataSource;
+
+	private final String slotName;
+
+	private final long retentionThreshold;
+
+	private final AtomicLong handledLsn = new AtomicLong(-1);
+
+	private Duration pollInterval = Duration.ofSeconds(10);
+
+	private Listener listener;
+
+	private ScheduledExecutorService poller;
+
+	private volatile SlotStatus status;
+
+	private volatile boolean retentionExceeded;
+
+	private volatile boolean running;
+
+	/**
+	 * @param dataSource the data source of the captured database.
+	 * @param slotName the connector {@code slot.name}.
+	 * @param retentionThreshold the retained WAL bytes forcing the offset commits.
+	 */
+	public ReplicationSlotMonitor(DataSource dataSource, String slotName, long retentionThreshold) {
+		Assert.notNull(dataSource, "The dataSource can not be null.");
+		Assert.hasText(slotName, "The slotName can not be empty.");
+		Assert.isTrue(retentionThreshold > 0, "The retentionThreshold must be positive.");
+		this.dataSource = dataSource;
+		this.slotName = slotName;
+		this.retentionThreshold = retentionThreshold;
+	}
+
+	public void setPollInterval(Duration pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @param lsn the handled change event position, e.g. the {@code __lsn} header.
+	 */
+	public void recordHandled(long lsn) {
+		this.handledLsn.accumulateAndGet(lsn, Math::max);
+	}
+
+	/**
+	 * @param lsnExtractor extracts the LSN from the change event message.
+	 * @return Advice, for the flow handler, recording the LSN of the successfully handled events.
+	 */
+	public AbstractRequestHandlerAdvice handlerAdvice(ToLongFunction<Message<?>> lsnExtractor) {
+		Assert.notNull(lsnExtractor, "The lsnExtractor can not be null.");
+		return new AbstractRequestHandlerAdvice() {
+
+			@Override
+			protected Object doInvoke(ExecutionCallback callback, Object target, Message<?> message) {
+				Object result = callback.execute();
+				recordHandled(lsnExtractor.applyAsLong(message));
+				return result;
+			}
+
+		};
+	}
+
+	/**
+	 * Combine it with the regular policy, e.g. {@code OffsetCommitPolicy.periodic(properties).or(monitor.flushPolicy())}.
+	 * @return Policy committing the offsets on every call while the retained WAL exceeds the threshold.
+	 */
+	public OffsetCommitPolicy flushPolicy() {
+		return (numberOfMessagesSinceLastCommit, timeSinceLastCommit) -> this.retentionExceeded
+				&& numberOfMessagesSinceLastCommit > 0;
+	}
+
+	/**
+	 * @return The last polled slot status, or null if not polled yet, the slot does not exist or has no WAL position.
+	 */
+	public SlotStatus getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * @return Whether the retained WAL exceeds the threshold.
+	 */
+	public boolean isRetentionExceeded() {
+		return this.retentionExceeded;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("debezium.slot.retained", this, m -> bytes(m, SlotStatus::retainedBytes))
+			.description("WAL bytes retained by the replication slot")
+			.baseUnit("bytes")
+			.tag("slot", this.slotName)
+			.register(registry);
+		Gauge.builder("debezium.slot.flush.lag", this, m -> bytes(m, SlotStatus::flushLagBytes))
+			.description("WAL bytes not yet confirmed by the connector")
+			.baseUnit("bytes")
+			.tag("slot", this.slotName)
+			.register(registry);
+		Gauge.builder("debezium.slot.handled.lag", this, m -> bytes(m, SlotStatus::handledLagBytes))
+			.description("WAL bytes not yet handled by the application")
+			.baseUnit("bytes")
+			.tag("slot", this.slotName)
+			.register(registry);
+		Gauge.builder("debezium.slot.unflushed", this, m -> bytes(m, SlotStatus::unflushedBytes))
+			.description("WAL bytes handled but not yet confirmed to the slot")
+			.baseUnit("bytes")
+			.tag("slot", this.slotName)
+			.register(registry);
+	}
+
+	private static double bytes(ReplicationSlotMonitor monitor, ToLongFunction<SlotStatus> value) {
+		SlotStatus status = monitor.status;
+		return (status != null) ? value.applyAsLong(status) : Double.NaN;
+	}
+
+	@Override
+	public synchronized void start() {
+		if (this.running) {
+			return;
+		}
+		this.running = true;
+		this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "replication-slot-monitor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long interval = this.pollInterval.toMillis();
+		this.poller.scheduleWithFixedDelay(this::poll, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (!this.running) {
+			return;
+		}
+		this.running = false;
+		this.poller.shutdownNow();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	void poll() {
+		try (Connection connection = this.dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement(SLOT_QUERY)) {
+			statement.setString(1, this.slotName);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				if (!resultSet.next()) {
+					logger.debug(() -> "The replication slot " + this.slotName + " does not exist (yet)");
+					this.status = null;
+					return;
+				}
+				long currentLsn = resultSet.getLong(1);
+				long restartLsn = resultSet.getLong(2);
+				boolean noRestartLsn = resultSet.wasNull();
+				long confirmedFlushLsn = resultSet.getLong(3);
+				if (noRestartLsn || resultSet.wasNull()) {
+					// Read as 0 the NULL positions would count the whole WAL as retained.
+					logger.debug(() -> "The replication slot " + this.slotName + " has not reserved the WAL (yet)");
+					this.status = null;
+					return;
+				}
+				update(new SlotStatus(currentLsn, restartLsn, confirmedFlushLsn, this.handledLsn.get(),
+						resultSet.getBoolean(4)));
+			}
+		}
+		catch (SQLException | RuntimeException e) {
+			logger.warn(e, "Failed to poll the replication slot " + this.slotName);
+		}
+	}
+
+	private void update(SlotStatus status) {
+		this.status = status;
+		boolean exceeded = status.retainedBytes() >= this.retentionThreshold;
+		if (exceeded == this.retentionExceeded) {
+			return;
+		}
+		this.retentionExceeded = exceeded;
+		if (exceeded) {
+			logger.warn(() -> "The replication slot " + this.slotName + " retains " + status.retainedBytes()
+					+ " WAL bytes, forcing the offset commits: " + status);
+		}
+		else {
+			logger.info(() -> "The replication slot " + this.slotName + " retention recovered: " + status);
+		}
+		if (this.listener != null) {
+			if (exceeded) {
+				this.listener.retentionExceeded(status);
+			}
+			else {
+				this.listener.retentionRecovered(status);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.offset;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.debezium.engine.spi.OffsetCommitPolicy;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link OffsetCommitPolicy} committing after a number of events or a time interval, whichever comes first.
+ * <p>
+ * The events handled since the last commit are the ones replayed after a failure, so the policy bounds the duplicates
+ * by the max events (plus the last Debezium batch overshoot) while paying the offset flush once per group instead of
+ * once per event, as the {@code OffsetCommitPolicy.always()} does.
+ * <p>
+ * Other components can ask for an early commit with {@link #requestCommit()}, e.g. before a planned restart. The
+ * requests made in between two policy calls of the engine are coalesced into a single commit.
+ * <p>
+ * The observed duplicate window, i.e. the events and the time since the last commit, is exposed through the getters
+ * and, once bound to a {@link MeterRegistry}, as the {@code debezium.offset.commit.window.*} gauges.
+ */
+public class GroupCommitOffsetCommitPolicy implements OffsetCommitPolicy, MeterBinder {
+
+	private final long maxEvents;
+
+	private final Duration maxInterval;
+
+	private final AtomicBoolean commitRequested = new AtomicBoolean(false);
+
+	private final AtomicLong commits = new AtomicLong(0);
+
+	private final AtomicLong coalescedRequests = new AtomicLong(0);
+
+	private final AtomicLong committedEvents = new AtomicLong(0);
+
+	private volatile long pendingEvents;
+
+	private volatile long pendingMillis;
+
+	private volatile long lastWindowEvents;
+
+	private volatile long maxWindowEvents;
+
+	/**
+	 * @param maxEvents commit once that many events were handled since the last commit.
+	 * @param maxInterval commit once that much time passed since the last commit.
+	 */
+	public GroupCommitOffsetCommitPolicy(long maxEvents, Duration maxInterval) {
+		Assert.isTrue(maxEvents > 0, "The maxEvents must be positive.");
+		Assert.isTrue(!maxInterval.isNegative() && !maxInterval.isZero(), "The maxInterval must be positive.");
+		this.maxEvents = maxEvents;
+		this.maxInterval = maxInterval;
+	}
+
+	@Override
+	public boolean performCommit(long numberOfMessagesSinceLastCommit, Duration timeSinceLastCommit) {
+		this.pendingEvents = numberOfMessagesSinceLastCommit;
+		this.pendingMillis = timeSinceLastCommit.toMillis();
+
+		boolean requested = this.commitRequested.getAndSet(false);
+		boolean commit = numberOfMessagesSinceLastCommit >= this.maxEvents
+				|| (numberOfMessagesSinceLastCommit > 0 && timeSinceLastCommit.compareTo(this.maxInterval) >= 0)
+				|| requested;
+		if (commit) {
+			this.commits.incrementAndGet();
+			this.committedEvents.addAndGet(numberOfMessagesSinceLastCommit);
+			this.lastWindowEvents = numberOfMessagesSinceLastCommit;
+			if (numberOfMessagesSinceLastCommit > this.maxWindowEvents) {
+				this.maxWindowEvents = numberOfMessagesSinceLastCommit;
+			}
+			this.pendingEvents = 0;
+			this.pendingMillis = 0;
+		}
+		return commit;
+	}
+
+	/**
+	 * Requests a commit on the next engine policy call. The pending requests are coalesced into one commit.
+	 */
+	public void requestCommit() {
+		if (this.commitRequested.getAndSet(true)) {
+			this.coalescedRequests.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return The events handled since the last commit, as of the last policy call: the current duplicate window.
+	 */
+	public long getPendingEvents() {
+		return this.pendingEvents;
+	}
+
+	/**
+	 * @return The milliseconds since the last commit, as of the last policy call.
+	 */
+	public long getPendingMillis() {
+		return this.pendingMillis;
+	}
+
+	/**
+	 * @return The events committed by the last commit.
+	 */
+	public long getLastWindowEvents() {
+		return this.lastWindowEvents;
+	}
+
+	/**
+	 * @return The largest number of events committed at once: the worst duplicate window observed.
+	 */
+	public long getMaxWindowEvents() {
+		return this.maxWindowEvents;
+	}
+
+	/**
+	 * @return The average number of events per commit.
+	 */
+	public double getMeanWindowEvents() {
+		long commitCount = this.commits.get();
+		return (commitCount > 0) ? (double) this.committedEvents.get() / commitCount : 0;
+	}
+
+	public long getCommits() {
+		return this.commits.get();
+	}
+
+	/**
+	 * @return Number of the {@link #requestCommit()} calls merged into an already pending request.
+	 */
+	public long getCoalescedRequests() {
+		return this.coalescedRequests.get();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("debezium.offset.commit.window.pending.events", this, p -> p.pendingEvents)
+			.description("Events handled since the last offset commit, replayed on failure")
+			.register(registry);
+		Gauge.builder("debezium.offset.commit.window.max.events", this, p -> p.maxWindowEvents)
+			.description("Largest number of events committed at once")
+			.register(registry);
+		Gauge.builder("debezium.offset.commit.window.mean.events", this, GroupCommitOffsetCommitPolicy::getMeanWindowEvents)
+			.description("Average number of events per offset commit")
+			.register(registry);
+		Gauge.builder("debezium.offset.commit.window.pending.ms", this, p -> p.pendingMillis)
+			.description("Milliseconds since the last offset commit")
+			.register(registry);
+		Gauge.builder("debezium.offset.commits", this, p -> p.commits.get())
+			.description("Number of the offset commits")
+			.register(registry);
+	}
+
+	@Override
+	public String toString() {
+		return "GroupCommitOffsetCommitPolicy: maxEvents=" + this.maxEvents + ", maxInterval=" + this.maxInterval
+				+ ", commits=" + this.commits.get() + ", maxWindowEvents=" + this.maxWindowEvents
+				+ ", meanWindowEvents=" + String.format("%.1f", getMeanWindowEvents());
+	}
+
+}
@@ -0,0 +1,534 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.offset;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.connect.runtime.WorkerConfig;
+import org.apache.kafka.connect.storage.OffsetBackingStore;
+import org.apache.kafka.connect.util.Callback;
+
+import org.springframework.core.log.LogAccessor;
+import org.springframework.util.Assert;
+
+/**
+ * Append-only, memory-mapped offset log for the embedded Debezium engine.
+ * <p>
+ * Unlike the {@link org.apache.kafka.connect.storage.FileOffsetBackingStore}, which rewrites and serializes the whole
+ * offsets map on every commit, each {@link #set} appends a small CRC protected record, with the committed entries
+ * only, to the mapped file. Once the log fills half of the mapped capacity it is compacted off the commit path: a
+ * snapshot of the current offsets is written, as a single record, to a new file by a background thread, while the
+ * commits keep appending to the second half of the log. The records appended since the snapshot are then copied after
+ * the compacted record and the new file is atomically moved over the log. Only this swap, proportional to the tail, runs
+ * on the commit thread. A commit that does not fit the log before the background compaction completes compacts it
+ * inline (see {@link #getInlineCompactions()}).
+ * Startup reads the compacted record and the tail appended since, and stops at the first torn record.
+ * <p>
+ * The fsync batching is controlled by the {@value #SYNC_INTERVAL_CONFIG} property. With the default {@code 0} every
+ * commit is forced to the disk before it completes. Otherwise the commit completes once written to the mapped pages,
+ * which survives an application crash, and the pages are forced on the interval: an OS crash loses at most the last
+ * interval of commits, which are replayed and must be deduplicated downstream. This makes the
+ * {@code OffsetCommitPolicy.always()} per-event commits cheap.
+ * <p>
+ * Configuration, through the {@code debezium.properties.*}:
+ * <ul>
+ * <li>{@value #FILENAME_CONFIG}: the log file (required).</li>
+ * <li>{@value #CAPACITY_CONFIG}: the initial mapped capacity in bytes, doubled when the compacted offsets need it
+ * (default 16MB).</li>
+ * <li>{@value #SYNC_INTERVAL_CONFIG}: the fsync interval in milliseconds (default 0, sync on every commit).</li>
+ * </ul>
+ * <p>
+ * The store is created by the engine, so the commit duration, from the {@link #set} call to the completion, is recorded
+ * by the {@value #COMMIT_TIMER} timer in the Micrometer global registry, which includes the Spring Boot registry.
+ */
+public class MappedOffsetLogBackingStore implements OffsetBackingStore {
+
+	private static final LogAccessor logger = new LogAccessor(MappedOffsetLogBackingStore.class);
+
+	public static final String FILENAME_CONFIG = "offset.storage.file.filename";
+
+	public static final String CAPACITY_CONFIG = "offset.storage.mapped.capacity.bytes";
+
+	public static final String SYNC_INTERVAL_CONFIG = "offset.storage.mapped.sync.interval.ms";
+
+	public static final String COMMIT_TIMER = "debezium.offset.commit.duration";
+
+	static final int MAGIC = 0x4F46534C;
+
+	static final int VERSION = 1;
+
+	static final int HEADER_BYTES = 16;
+
+	/** Record length and CRC. */
+	static final int RECORD_HEADER_BYTES = 8;
+
+	private static final int DEFAULT_CAPACITY = 16 * 1024 * 1024;
+
+	private final Map<ByteBuffer, ByteBuffer> data = new HashMap<>();
+
+	private Path file;
+
+	private int capacity = DEFAULT_CAPACITY;
+
+	private long syncIntervalMs = 0;
+
+	private ScheduledExecutorService executor;
+
+	private ExecutorService compactor;
+
+	private FileChannel channel;
+
+	private MappedByteBuffer buffer;
+
+	private int position;
+
+	private boolean dirty;
+
+	/** A background compaction is in progress. Accessed from the store executor only. */
+	private boolean compacting;
+
+	/** Incremented on every log file swap, to discard the background compactions of a replaced log. */
+	private int generation;
+
+	private volatile long appends;
+
+	private volatile long compactions;
+
+	private volatile long inlineCompactions;
+
+	private Timer commitTimer;
+
+	@Override
+	public void configure(WorkerConfig config) {
+		configure(config.originals());
+	}
+
+	/**
+	 * @param config the offset store configuration, see the class documentation.
+	 */
+	public void configure(Map<String, ?> config) {
+		Object filename = config.get(FILENAME_CONFIG);
+		Assert.notNull(filename, () -> "The " + FILENAME_CONFIG + " is required.");
+		this.file = Paths.get(filename.toString());
+		if (config.get(CAPACITY_CONFIG) != null) {
+			this.capacity = Integer.parseInt(config.get(CAPACITY_CONFIG).toString());
+			Assert.isTrue(this.capacity > HEADER_BYTES + RECORD_HEADER_BYTES, "The capacity is too small.");
+		}
+		if (config.get(SYNC_INTERVAL_CONFIG) != null) {
+			this.syncIntervalMs = Long.parseLong(config.get(SYNC_INTERVAL_CONFIG).toString());
+			Assert.isTrue(this.syncIntervalMs >= 0, "The sync interval can not be negative.");
+		}
+	}
+
+	@Override
+	public synchronized void start() {
+		Assert.state(this.file != null, "The store is not configured.");
+		logger.info(() -> "Starting MappedOffsetLogBackingStore with file " + this.file);
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "offset-log");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "offset-log-compactor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			load();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Failed to load the offsets from " + this.file, e);
+		}
+		this.commitTimer = Timer.builder(COMMIT_TIMER)
+			.description("Offset commit duration, from the engine flush to the written (and synced) record")
+			.tag("file", this.file.getFileName().toString())
+			.register(Metrics.globalRegistry);
+		if (this.syncIntervalMs > 0) {
+			this.executor.scheduleWithFixedDelay(this::sync, this.syncIntervalMs, this.syncIntervalMs,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (this.executor == null) {
+			return;
+		}
+		this.compactor.shutdown();
+		try {
+			// The compactor hands over the swap to the executor, so it terminates first.
+			if (!this.compactor.awaitTermination(30, TimeUnit.SECONDS)) {
+				this.compactor.shutdownNow();
+			}
+			this.executor.shutdown();
+			if (!this.executor.awaitTermination(30, TimeUnit.SECONDS)) {
+				logger.error("Failed to stop the offset log executor in 30 seconds");
+				this.executor.shutdownNow();
+			}
+		}
+		catch (InterruptedException e) {
+			this.executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		this.executor = null;
+		Metrics.globalRegistry.remove(this.commitTimer);
+		this.dirty = true;
+		sync();
+		closeChannel();
+		logger.info("Stopped MappedOffsetLogBackingStore");
+	}
+
+	@Override
+	public Future<Map<ByteBuffer, ByteBuffer>> get(Collection<ByteBuffer> keys) {
+		return this.executor.submit(() -> {
+			Map<ByteBuffer, ByteBuffer> result = new HashMap<>();
+			for (ByteBuffer key : keys) {
+				result.put(key, this.data.get(key));
+			}
+			return result;
+		});
+	}
+
+	@Override
+	public Future<Void> set(Map<ByteBuffer, ByteBuffer> values, Callback<Void> callback) {
+		long start = System.nanoTime();
+		return this.executor.submit(() -> {
+			try {
+				this.data.putAll(values);
+				if (!append(values)) {
+					// The log is full, the compacted offsets include the new values.
+					compact();
+					this.inlineCompactions++;
+				}
+				else if (this.syncIntervalMs == 0) {
+					this.buffer.force();
+				}
+				else {
+					this.dirty = true;
+				}
+			}
+			catch (RuntimeException | IOException e) {
+				if (callback != null) {
+					callback.onCompletion(e, null);
+				}
+				throw e;
+			}
+			this.commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			if (callback != null) {
+				callback.onCompletion(null, null);
+			}
+			if (this.position > this.capacity / 2 && !this.compacting) {
+				startCompaction();
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * @return Number of the appended records since start.
+	 */
+	public long getAppends() {
+		return this.appends;
+	}
+
+	/**
+	 * @return Number of the compactions since start.
+	 */
+	public long getCompactions() {
+		return this.compactions;
+	}
+
+	/**
+	 * @return Number of the compactions run on the commit path, because the log got full before the background
+	 * compaction completed.
+	 */
+	public long getInlineCompactions() {
+		return this.inlineCompactions;
+	}
+
+	private void load() throws IOException {
+		if (Files.exists(this.file) && Files.size(this.file) >= HEADER_BYTES) {
+			this.capacity = (int) Math.max(this.capacity, Files.size(this.file));
+			map(this.file);
+			if (this.buffer.getInt(0) == MAGIC && this.buffer.getInt(4) == VERSION) {
+				int records = 0;
+				this.position = HEADER_BYTES;
+				ByteBuffer record;
+				while ((record = readRecord(this.position)) != null) {
+					while (record.hasRemaining()) {
+						ByteBuffer key = readBytes(record);
+						this.data.put(key, readBytes(record));
+					}
+					this.position += RECORD_HEADER_BYTES + record.limit();
+					records++;
+				}
+				// Clear the torn tail, if any, so that it is never mistaken for a valid record.
+				for (int i = this.position; i < this.capacity && this.buffer.get(i) != 0; i++) {
+					this.buffer.put(i, (byte) 0);
+				}
+				int loaded = records;
+				logger.info(() -> "Loaded " + this.data.size() + " offsets from " + loaded + " records");
+				return;
+			}
+			logger.warn(() -> "Not an offset log, overwriting: " + this.file);
+			closeChannel();
+		}
+		Path parent = this.file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		compact();
+	}
+
+	/**
+	 * @return the record body or null if there is no valid record at the position.
+	 */
+	private ByteBuffer readRecord(int position) {
+		if (position + RECORD_HEADER_BYTES > this.capacity) {
+			return null;
+		}
+		int length = this.buffer.getInt(position);
+		if (length <= 0 || length > this.capacity - position - RECORD_HEADER_BYTES) {
+			return null;
+		}
+		ByteBuffer body = this.buffer.slice(position + RECORD_HEADER_BYTES, length).order(ByteOrder.LITTLE_ENDIAN);
+		CRC32C crc = new CRC32C();
+		crc.update(body.duplicate());
+		return ((int) crc.getValue() == this.buffer.getInt(position + 4)) ? body : null;
+	}
+
+	private static ByteBuffer readBytes(ByteBuffer record) {
+		int length = record.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		record.get(bytes);
+		return ByteBuffer.wrap(bytes);
+	}
+
+	/**
+	 * @return false if the record does not fit the remaining capacity.
+	 */
+	private boolean append(Map<ByteBuffer, ByteBuffer> values) {
+		int end = writeRecord(this.buffer, this.position, this.capacity, values);
+		if (end < 0) {
+			return false;
+		}
+		this.position = end;
+		this.appends++;
+		return true;
+	}
+
+	/**
+	 * @return the record end position or -1 if the record does not fit the capacity.
+	 */
+	private static int writeRecord(ByteBuffer target, int position, int capacity, Map<ByteBuffer, ByteBuffer> values) {
+		long length = 0;
+		for (Map.Entry<ByteBuffer, ByteBuffer> entry : values.entrySet()) {
+			length += 8 + entry.getKey().remaining() + ((entry.getValue() != null) ? entry.getValue().remaining() : 0);
+		}
+		if (length == 0 || position + RECORD_HEADER_BYTES + length > capacity) {
+			return -1;
+		}
+		ByteBuffer body = target.slice(position + RECORD_HEADER_BYTES, (int) length).order(ByteOrder.LITTLE_ENDIAN);
+		for (Map.Entry<ByteBuffer, ByteBuffer> entry : values.entrySet()) {
+			writeBytes(body, entry.getKey());
+			writeBytes(body, entry.getValue());
+		}
+		body.flip();
+		CRC32C crc = new CRC32C();
+		crc.update(body);
+		int end = position + RECORD_HEADER_BYTES + (int) length;
+		if (end + 4 <= capacity) {
+			// Terminates the log, in case of a stale record past the end.
+			target.putInt(end, 0);
+		}
+		target.putInt(position + 4, (int) crc.getValue());
+		target.putInt(position, (int) length);
+		return end;
+	}
+
+	private static void writeBytes(ByteBuffer body, ByteBuffer bytes) {
+		if (bytes == null) {
+			body.putInt(-1);
+		}
+		else {
+			body.putInt(bytes.remaining());
+			body.put(bytes.duplicate());
+		}
+	}
+
+	/**
+	 * Writes the current offsets as a single record to a new file, forced and moved over the log, and maps it.
+	 */
+	private void compact() throws IOException {
+		Path compacted = this.file.resolveSibling(this.file.getFileName() + ".compact");
+		Compacted result = writeCompacted(compacted, this.data, this.capacity);
+		install(compacted, result.capacity(), result.end());
+	}
+
+	/**
+	 * Snapshots the current offsets and writes them to a new file in the background. Runs on the store executor.
+	 */
+	private void startCompaction() {
+		Map<ByteBuffer, ByteBuffer> snapshot = new HashMap<>(this.data);
+		int snapshotPosition = this.position;
+		int snapshotGeneration = this.generation;
+		int snapshotCapacity = this.capacity;
+		Path compacted = this.file.resolveSibling(this.file.getFileName() + ".compacting");
+		this.compacting = true;
+		try {
+			this.compactor.execute(() -> {
+				try {
+					Compacted result = writeCompacted(compacted, snapshot, snapshotCapacity);
+					this.executor.execute(() -> swap(compacted, result, snapshotPosition, snapshotGeneration));
+				}
+				catch (IOException | RuntimeException e) {
+					logger.error(e, "Failed to compact the offset log " + this.file);
+					this.executor.execute(() -> this.compacting = false);
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			// Stopping.
+			this.compacting = false;
+		}
+	}
+
+	/**
+	 * Copies the records appended since the snapshot after the compacted record and moves the new file over the log.
+	 * Runs on the store executor.
+	 */
+	private void swap(Path compacted, Compacted result, int snapshotPosition, int snapshotGeneration) {
+		this.compacting = false;
+		try {
+			int tail = this.position - snapshotPosition;
+			if (snapshotGeneration != this.generation || result.end() + tail > result.capacity()) {
+				// The log has been compacted inline meanwhile, or the tail does not fit: retried on the next commit.
+				Files.deleteIfExists(compacted);
+				return;
+			}
+			if (tail > 0) {
+				try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.READ,
+						StandardOpenOption.WRITE)) {
+
+					MappedByteBuffer mapped = target.map(FileChannel.MapMode.READ_WRITE, 0, result.capacity());
+					mapped.put(result.end(), this.buffer, snapshotPosition, tail);
+					mapped.force();
+				}
+			}
+			install(compacted, result.capacity(), result.end() + tail);
+		}
+		catch (IOException | RuntimeException e) {
+			logger.error(e, "Failed to swap the compacted offset log " + this.file);
+		}
+	}
+
+	/**
+	 * Moves the compacted file over the log and maps it.
+	 */
+	private void install(Path compacted, int newCapacity, int end) throws IOException {
+		closeChannel();
+		Files.move(compacted, this.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		this.capacity = newCapacity;
+		map(this.file);
+		this.position = end;
+		this.dirty = false;
+		this.generation++;
+		this.compactions++;
+	}
+
+	/**
+	 * Writes the offsets as a single forced record, doubling the capacity until the record fits its first half.
+	 */
+	private static Compacted writeCompacted(Path target, Map<ByteBuffer, ByteBuffer> offsets, int capacity)
+			throws IOException {
+
+		int newCapacity = capacity;
+		while (true) {
+			try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+				mapped.order(ByteOrder.LITTLE_ENDIAN);
+				mapped.putInt(0, MAGIC);
+				mapped.putInt(4, VERSION);
+				int end = offsets.isEmpty() ? HEADER_BYTES : writeRecord(mapped, HEADER_BYTES, newCapacity, offsets);
+				if (end >= 0 && end <= newCapacity / 2) {
+					mapped.force();
+					return new Compacted(newCapacity, end);
+				}
+			}
+			newCapacity = Math.multiplyExact(newCapacity, 2);
+		}
+	}
+
+	private record Compacted(int capacity, int end) {
+	}
+
+	private void map(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+		this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private void sync() {
+		if (this.dirty && this.buffer != null) {
+			this.buffer.force();
+			this.dirty = false;
+		}
+	}
+
+	private void closeChannel() {
+		if (this.channel != null) {
+			try {
+				this.channel.close();
+			}
+			catch (IOException e) {
+				logger.warn(e, "Failed to close the offset log " + this.file);
+			}
+			this.channel = null;
+			this.buffer = null;
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.support;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.springframework.core.log.LogAccessor;
+import org.springframework.integration.core.MessageSelector;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Matches a string value of the Debezium change events, such as the operation or the table, directly on the
+ * {@code byte[]} header or payload, without decoding them.
+ * <p>
+ * The expected values are encoded once, at creation. A header value is matched either as a whole or, for the JSON
+ * envelope of the converted headers (e.g. {@code {"payload":"c"}} for the {@code __op} header added by the
+ * {@code ExtractNewRecordState}), on its {@code payload} field. A payload value is matched on a top-level field of
+ * the JSON payload (e.g. the {@code __op} field added by the {@code add.fields=op}).
+ * <p>
+ * Used as a filter, the matched messages, and their payload bytes, are passed through untouched. The
+ * {@link #indexOf(Message)} tells which of the expected values matched, for routing.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public final class ByteValueMatcher implements MessageSelector {
+
+	private static final LogAccessor logger = new LogAccessor(ByteValueMatcher.class);
+
+	private final String headerName;
+
+	private final JsonFieldExtractor field;
+
+	private final String[] values;
+
+	private final byte[][] encodedValues;
+
+	private ByteValueMatcher(String headerName, JsonFieldExtractor field, String... values) {
+		Assert.notEmpty(values, "At least one value is required.");
+		this.headerName = headerName;
+		this.field = field;
+		this.values = values.clone();
+		this.encodedValues = new byte[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			Assert.notNull(values[i], "The values can not be null.");
+			this.encodedValues[i] = values[i].getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * @param headerName the header to match, holding the value or its {@code {"payload":...}} JSON envelope.
+	 * @param values the expected values.
+	 * @return the matcher.
+	 */
+	public static ByteValueMatcher header(String headerName, String... values) {
+		Assert.hasText(headerName, "The headerName can not be empty.");
+		return new ByteValueMatcher(headerName, JsonFieldExtractor.PAYLOAD, values);
+	}
+
+	/**
+	 * @param fieldName the top-level field of the JSON payload to match.
+	 * @param values the expected values.
+	 * @return the matcher.
+	 */
+	public static ByteValueMatcher payloadField(String fieldName, String... values) {
+		return new ByteValueMatcher(null, JsonFieldExtractor.forField(fieldName), values);
+	}
+
+	@Override
+	public boolean accept(Message<?> message) {
+		return indexOf(message) >= 0;
+	}
+
+	/**
+	 * @param message the change event message.
+	 * @return the index of the matched expected value or -1 if none, or if the value is missing.
+	 */
+	public int indexOf(Message<?> message) {
+		Object value = (this.headerName != null) ? message.getHeaders().get(this.headerName) : message.getPayload();
+		if (value instanceof DebeziumHeaderValue headerValue) {
+			return indexOfHeader(headerValue.getBytes());
+		}
+		if (value instanceof byte[] bytes) {
+			return (this.headerName != null) ? indexOfHeader(bytes) : indexOfField(bytes);
+		}
+		if (value instanceof String string) {
+			return Arrays.asList(this.values).indexOf(string);
+		}
+		if (value != null) {
+			logger.debug(() -> "Unsupported value type: " + value.getClass());
+		}
+		return -1;
+	}
+
+	/**
+	 * @param index the index of the expected value.
+	 * @return the expected value.
+	 */
+	public String getValue(int index) {
+		return this.values[index];
+	}
+
+	private int indexOfHeader(byte[] bytes) {
+		int i = 0;
+		while (i < bytes.length && bytes[i] <= ' ') {
+			i++;
+		}
+		if (i < bytes.length && bytes[i] == '{') {
+			return indexOfField(bytes);
+		}
+		for (int v = 0; v < this.encodedValues.length; v++) {
+			if (Arrays.equals(bytes, this.encodedValues[v])) {
+				return v;
+			}
+		}
+		return -1;
+	}
+
+	private int indexOfField(byte[] json) {
+		int offset = this.field.valueOffset(json);
+		if (offset < 0 || json[offset] != '"') {
+			return -1;
+		}
+		int start = offset + 1;
+		for (int v = 0; v < this.encodedValues.length; v++) {
+			byte[] expected = this.encodedValues[v];
+			int end = start + expected.length;
+			if (end < json.length && json[end] == '"'
+					&& Arrays.equals(json, start, end, expected, 0, expected.length)) {
+				return v;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString() {
+		return "ByteValueMatcher: " + ((this.headerName != null) ? "header " + this.headerName : "payload " + this.field)
+				+ " in " + Arrays.toString(this.values);
+	}
+
+}
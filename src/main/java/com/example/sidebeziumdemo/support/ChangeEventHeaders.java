@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.support;
+
+import io.debezium.data.Envelope;
+
+import org.springframework.messaging.Message;
+
+/**
+ * Allocation-free decoding of the metadata headers added by the {@code ExtractNewRecordState} transformation
+ * ({@code add.headers=op,table,...}).
+ * <p>
+ * The converted header values are either the raw value or its {@code {"payload":...}} JSON envelope, as bytes.
+ */
+public final class ChangeEventHeaders {
+
+	/**
+	 * Header added with the {@code add.headers=op}.
+	 */
+	public static final String OP = "__op";
+
+	/**
+	 * Header added with the {@code add.headers=table}.
+	 */
+	public static final String TABLE = "__table";
+
+	private ChangeEventHeaders() {
+	}
+
+	/**
+	 * @param message the change event message.
+	 * @return the {@link #OP} header operation, or null if missing or unknown.
+	 */
+	public static Envelope.Operation operation(Message<?> message) {
+		return operation(message.getHeaders().get(OP));
+	}
+
+	/**
+	 * @param headerValue the {@link #OP} header value.
+	 * @return the operation, or null if missing or unknown.
+	 */
+	public static Envelope.Operation operation(Object headerValue) {
+		if (headerValue instanceof DebeziumHeaderValue value) {
+			return value.asOperation();
+		}
+		if (headerValue instanceof byte[] bytes) {
+			int start = valueStart(bytes);
+			if (start < 0) {
+				return null;
+			}
+			int end = valueEnd(bytes, start);
+			return (end == start + 1) ? operation(bytes[start]) : null;
+		}
+		if (headerValue instanceof String string) {
+			return (string.length() == 1) ? operation((byte) string.charAt(0)) : null;
+		}
+		return null;
+	}
+
+	private static Envelope.Operation operation(byte code) {
+		return switch (code) {
+			case 'c' -> Envelope.Operation.CREATE;
+			case 'u' -> Envelope.Operation.UPDATE;
+			case 'd' -> Envelope.Operation.DELETE;
+			case 'r' -> Envelope.Operation.READ;
+			case 't' -> Envelope.Operation.TRUNCATE;
+			case 'm' -> Envelope.Operation.MESSAGE;
+			default -> null;
+		};
+	}
+
+	/**
+	 * @param bytes the header value bytes, raw or JSON envelope.
+	 * @return the offset of the first byte of the string value (0 for a raw value), or -1 if not a string value.
+	 */
+	public static int valueStart(byte[] bytes) {
+		int i = 0;
+		while (i < bytes.length && bytes[i] <= ' ') {
+			i++;
+		}
+		if (i < bytes.length && bytes[i] == '{') {
+			int offset = JsonFieldExtractor.PAYLOAD.valueOffset(bytes);
+			return (offset >= 0 && bytes[offset] == '"') ? offset + 1 : -1;
+		}
+		// A JSON string or the raw value.
+		return (i < bytes.length && bytes[i] == '"') ? i + 1 : 0;
+	}
+
+	/**
+	 * @param bytes the header value bytes, raw or JSON envelope.
+	 * @param start the value start, as returned by the {@link #valueStart(byte[])}.
+	 * @return the offset past the last byte of the string value, or -1 for the escaped strings.
+	 */
+	public static int valueEnd(byte[] bytes, int start) {
+		if (start == 0) {
+			return bytes.length;
+		}
+		for (int i = start; i < bytes.length; i++) {
+			if (bytes[i] == '"') {
+				return i;
+			}
+			if (bytes[i] == '\\') {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.support;
+
+import java.nio.charset.StandardCharsets;
+
+import io.debezium.data.Envelope;
+
+import org.springframework.util.Assert;
+
+/**
+ * Debezium header value, as mapped by the {@link LazyDebeziumHeaderMapper}, decoded on the first typed access.
+ * <p>
+ * The value wraps the header bytes, either the raw value or its {@code {"schema":..,"payload":..}} JSON envelope, and
+ * caches the decoded value, so that the handlers, selectors and advices reading the same header, e.g. the
+ * {@code __lsn} for the de-duplication, parse it only once per event. The decoding is idempotent, so the concurrent
+ * first accesses are harmless.
+ */
+public final class DebeziumHeaderValue {
+
+	private final byte[] bytes;
+
+	private final boolean envelope;
+
+	private String string;
+
+	private long longValue;
+
+	private volatile boolean longDecoded;
+
+	private Envelope.Operation operation;
+
+	private volatile boolean operationDecoded;
+
+	public DebeziumHeaderValue(byte[] bytes) {
+		Assert.notNull(bytes, "The bytes can not be null.");
+		this.bytes = bytes;
+		int i = 0;
+		while (i < bytes.length && bytes[i] <= ' ') {
+			i++;
+		}
+		this.envelope = i < bytes.length && bytes[i] == '{';
+	}
+
+	/**
+	 * @return The header bytes, as converted by the Debezium header converter. Not copied, do not modify.
+	 */
+	public byte[] getBytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * @return The value as an integral number, e.g. for the {@code __lsn}, {@code __pos} or {@code __commit_lsn}.
+	 * @throws IllegalArgumentException if the value is not an integral number.
+	 */
+	public long asLong() {
+		if (!this.longDecoded) {
+			this.longValue = this.envelope
+					? JsonFieldExtractor.PAYLOAD.extractLong(this.bytes)
+					: Long.parseLong(stripQuotes(new String(this.bytes, StandardCharsets.UTF_8).trim()));
+			this.longDecoded = true;
+		}
+		return this.longValue;
+	}
+
+	/**
+	 * @return The value as a string, or null for the JSON null.
+	 */
+	public String asString() {
+		String value = this.string;
+		if (value == null) {
+			value = this.envelope
+					? JsonFieldExtractor.PAYLOAD.extractString(this.bytes)
+					: stripQuotes(new String(this.bytes, StandardCharsets.UTF_8));
+			if (value == null || "null".equals(value)) {
+				return null;
+			}
+			this.string = value;
+		}
+		return value;
+	}
+
+	/**
+	 * @return The value as a change event operation, e.g. for the {@code __op}, or null if unknown.
+	 */
+	public Envelope.Operation asOperation() {
+		if (!this.operationDecoded) {
+			this.operation = ChangeEventHeaders.operation(this.bytes);
+			this.operationDecoded = true;
+		}
+		return this.operation;
+	}
+
+	private static String stripQuotes(String value) {
+		return (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"')
+				? value.substring(1, value.length() - 1)
+				: value;
+	}
+
+	@Override
+	public String toString() {
+		return new String(this.bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.support;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.springframework.core.log.LogAccessor;
+
+/**
+ * Reads the Debezium streaming queue capacity from the connector metrics MBean, registered by the running engine.
+ */
+public final class DebeziumQueueMetrics {
+
+	private static final LogAccessor logger = new LogAccessor(DebeziumQueueMetrics.class);
+
+	/**
+	 * The streaming connector metrics MBean name pattern.
+	 */
+	public static final String QUEUE_METRICS_PATTERN = "debezium.*:type=connector-metrics,context=streaming,*";
+
+	private DebeziumQueueMetrics() {
+	}
+
+	/**
+	 * @return the queue capacity or NaN if the metrics MBean is not registered.
+	 */
+	public static double totalCapacity() {
+		return attribute("QueueTotalCapacity");
+	}
+
+	/**
+	 * @return the free queue capacity or NaN if the metrics MBean is not registered.
+	 */
+	public static double remainingCapacity() {
+		return attribute("QueueRemainingCapacity");
+	}
+
+	/**
+	 * @return the queue occupancy in [0, 1] or NaN if the metrics MBean is not registered.
+	 */
+	public static double occupancy() {
+		double total = totalCapacity();
+		return (total > 0) ? 1.0 - remainingCapacity() / total : Double.NaN;
+	}
+
+	private static double attribute(String attribute) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			Set<ObjectName> names = server.queryNames(new ObjectName(QUEUE_METRICS_PATTERN), null);
+			if (!names.isEmpty()) {
+				return ((Number) server.getAttribute(names.iterator().next(), attribute)).doubleValue();
+			}
+		}
+		catch (Exception e) {
+			logger.debug(e, "Failed to read the Debezium queue metrics");
+		}
+		return Double.NaN;
+	}
+
+}
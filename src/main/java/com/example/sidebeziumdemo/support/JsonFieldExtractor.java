@@ -0,0 +1,297 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.support;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.util.Assert;
+
+/**
+ * Extracts a single top-level field from a JSON object encoded as UTF-8 bytes, such as the Debezium change event
+ * payload or the {@code {"payload":...}} envelope of the Debezium headers.
+ * <p>
+ * The bytes are scanned in place: the other fields, nested objects and arrays included, are skipped without being
+ * decoded, so the numeric extraction allocates nothing. The scanner assumes well-formed JSON and does not validate it.
+ * Field names with escape sequences are not matched.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public final class JsonFieldExtractor {
+
+	/**
+	 * Extractor for the {@code payload} field of the Debezium header envelope.
+	 */
+	public static final JsonFieldExtractor PAYLOAD = forField("payload");
+
+	private final String fieldName;
+
+	private final byte[] name;
+
+	private JsonFieldExtractor(String fieldName) {
+		this.fieldName = fieldName;
+		this.name = fieldName.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param fieldName name of the top-level field to extract.
+	 * @return the extractor.
+	 */
+	public static JsonFieldExtractor forField(String fieldName) {
+		Assert.hasText(fieldName, "The fieldName can not be empty.");
+		return new JsonFieldExtractor(fieldName);
+	}
+
+	/**
+	 * @param json the JSON object bytes.
+	 * @return true if the field is present (null values included).
+	 */
+	public boolean hasField(byte[] json) {
+		return json != null && valueOffset(json) >= 0;
+	}
+
+	/**
+	 * Extracts an integral numeric value. Quoted numbers (e.g. {@code "123"}) are accepted as well.
+	 * @param json the JSON object bytes.
+	 * @return the field value.
+	 * @throws IllegalArgumentException if the field is missing or is not an integral number.
+	 */
+	public long extractLong(byte[] json) {
+		int offset = requiredValueOffset(json);
+		boolean quoted = json[offset] == '"';
+		int i = quoted ? offset + 1 : offset;
+		boolean negative = false;
+		if (i < json.length && json[i] == '-') {
+			negative = true;
+			i++;
+		}
+		int digitsStart = i;
+		long value = 0;
+		while (i < json.length && json[i] >= '0' && json[i] <= '9') {
+			int digit = json[i] - '0';
+			if (value < (Long.MIN_VALUE + digit) / 10) {
+				throw new IllegalArgumentException("The [" + this.fieldName + "] value overflows a long.");
+			}
+			// Accumulate negatively to cover Long.MIN_VALUE.
+			value = value * 10 - digit;
+			i++;
+		}
+		if (i == digitsStart || (quoted && (i >= json.length || json[i] != '"'))
+				|| (!quoted && i < json.length && (json[i] == '.' || json[i] == 'e' || json[i] == 'E'))) {
+			throw new IllegalArgumentException("The [" + this.fieldName + "] value is not an integral number.");
+		}
+		if (!negative && value == Long.MIN_VALUE) {
+			throw new IllegalArgumentException("The [" + this.fieldName + "] value overflows a long.");
+		}
+		return negative ? value : -value;
+	}
+
+	/**
+	 * @param json the JSON object bytes.
+	 * @return the field value.
+	 * @throws IllegalArgumentException if the field is missing or is not an integral number within the int range.
+	 */
+	public int extractInt(byte[] json) {
+		long value = extractLong(json);
+		Assert.isTrue(value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE,
+				() -> "The [" + this.fieldName + "] value overflows an int.");
+		return (int) value;
+	}
+
+	/**
+	 * Extracts the raw text of the value: the unescaped content of a string, the literal of a number, boolean or null
+	 * value, or the JSON text of a nested object or array.
+	 * @param json the JSON object bytes.
+	 * @return the field value text or null if the field is missing.
+	 */
+	public String extractString(byte[] json) {
+		int offset = valueOffset(json);
+		if (offset < 0) {
+			return null;
+		}
+		if (json[offset] == '"') {
+			int end = skipString(json, offset);
+			String raw = new String(json, offset + 1, end - offset - 2, StandardCharsets.UTF_8);
+			return (raw.indexOf('\\') < 0) ? raw : unescape(raw);
+		}
+		return new String(json, offset, skipValue(json, offset) - offset, StandardCharsets.UTF_8).trim();
+	}
+
+	/**
+	 * @param json the JSON object bytes.
+	 * @param expected the expected string value.
+	 * @return true if the field is a string equal to the expected value. Compares the bytes in place.
+	 */
+	public boolean valueEquals(byte[] json, byte[] expected) {
+		int offset = valueOffset(json);
+		if (offset < 0 || json[offset] != '"') {
+			return false;
+		}
+		return regionEquals(json, offset + 1, expected) && offset + 1 + expected.length < json.length
+				&& json[offset + 1 + expected.length] == '"';
+	}
+
+	/**
+	 * @param json the JSON object bytes.
+	 * @return the offset of the field value or -1 if the field is missing.
+	 */
+	public int valueOffset(byte[] json) {
+		int i = skipWhitespace(json, 0);
+		if (i >= json.length || json[i] != '{') {
+			return -1;
+		}
+		i++;
+		while (true) {
+			i = skipWhitespace(json, i);
+			if (i >= json.length || json[i] != '"') {
+				return -1;
+			}
+			int keyEnd = skipString(json, i);
+			boolean match = (keyEnd - i - 2 == this.name.length) && regionEquals(json, i + 1, this.name);
+			i = skipWhitespace(json, keyEnd);
+			if (i >= json.length || json[i] != ':') {
+				return -1;
+			}
+			i = skipWhitespace(json, i + 1);
+			if (match) {
+				return (i < json.length) ? i : -1;
+			}
+			i = skipWhitespace(json, skipValue(json, i));
+			if (i >= json.length || json[i] != ',') {
+				return -1;
+			}
+			i++;
+		}
+	}
+
+	private int requiredValueOffset(byte[] json) {
+		Assert.notNull(json, "The json can not be null.");
+		int offset = valueOffset(json);
+		if (offset < 0) {
+			throw new IllegalArgumentException("Missing [" + this.fieldName + "] field.");
+		}
+		return offset;
+	}
+
+	private static boolean regionEquals(byte[] json, int offset, byte[] expected) {
+		if (offset + expected.length > json.length) {
+			return false;
+		}
+		for (int j = 0; j < expected.length; j++) {
+			if (json[offset + j] != expected[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int skipWhitespace(byte[] json, int i) {
+		while (i < json.length && (json[i] == ' ' || json[i] == '\n' || json[i] == '\r' || json[i] == '\t')) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return the offset after the closing quote of the string starting at i.
+	 */
+	private static int skipString(byte[] json, int i) {
+		i++;
+		while (i < json.length) {
+			byte b = json[i];
+			if (b == '\\') {
+				i += 2;
+			}
+			else if (b == '"') {
+				return i + 1;
+			}
+			else {
+				i++;
+			}
+		}
+		return json.length;
+	}
+
+	/**
+	 * @return the offset after the value starting at i.
+	 */
+	private static int skipValue(byte[] json, int i) {
+		if (i >= json.length) {
+			return i;
+		}
+		byte b = json[i];
+		if (b == '"') {
+			return skipString(json, i);
+		}
+		if (b == '{' || b == '[') {
+			int depth = 0;
+			while (i < json.length) {
+				b = json[i];
+				if (b == '"') {
+					i = skipString(json, i);
+					continue;
+				}
+				if (b == '{' || b == '[') {
+					depth++;
+				}
+				else if (b == '}' || b == ']') {
+					depth--;
+					if (depth == 0) {
+						return i + 1;
+					}
+				}
+				i++;
+			}
+			return i;
+		}
+		// Number, boolean or null literal.
+		while (i < json.length && json[i] != ',' && json[i] != '}' && json[i] != ']') {
+			i++;
+		}
+		return i;
+	}
+
+	private static String unescape(String raw) {
+		StringBuilder builder = new StringBuilder(raw.length());
+		for (int i = 0; i < raw.length(); i++) {
+			char c = raw.charAt(i);
+			if (c != '\\' || i + 1 >= raw.length()) {
+				builder.append(c);
+				continue;
+			}
+			char escaped = raw.charAt(++i);
+			switch (escaped) {
+				case 'n' -> builder.append('\n');
+				case 't' -> builder.append('\t');
+				case 'r' -> builder.append('\r');
+				case 'b' -> builder.append('\b');
+				case 'f' -> builder.append('\f');
+				case 'u' -> {
+					builder.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+					i += 4;
+				}
+				default -> builder.append(escaped);
+			}
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public String toString() {
+		return "JsonFieldExtractor: " + this.fieldName;
+	}
+
+}
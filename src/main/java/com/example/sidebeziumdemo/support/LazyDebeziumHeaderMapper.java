@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.support;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.debezium.engine.Header;
+
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.HeaderMapper;
+import org.springframework.util.Assert;
+
+/**
+ * Debezium header mapper mapping only the declared header names, with their {@code byte[]} values wrapped into
+ * {@link DebeziumHeaderValue}s decoded lazily, on the first typed access, and cached.
+ * <p>
+ * Unlike the {@link org.springframework.integration.debezium.support.DefaultDebeziumHeaderMapper} with the
+ * {@code headerNames("*")}, the not declared headers are neither matched against patterns nor copied into the
+ * message headers, and the declared ones are not decoded unless read. The other value types are mapped as is.
+ * <p>
+ * Set it with the {@code Debezium.inboundChannelAdapter(builder).headerMapper(...)}.
+ */
+public class LazyDebeziumHeaderMapper implements HeaderMapper<List<Header<Object>>> {
+
+	private final Set<String> headerNames;
+
+	/**
+	 * @param headerNames the exact names of the headers to map, e.g. {@code __lsn} and {@code __op}.
+	 */
+	public LazyDebeziumHeaderMapper(String... headerNames) {
+		Assert.notEmpty(headerNames, "At least one header name is required.");
+		this.headerNames = Set.of(headerNames);
+	}
+
+	@Override
+	public MessageHeaders toHeaders(List<Header<Object>> debeziumHeaders) {
+		Map<String, Object> headers = new HashMap<>();
+		for (Header<Object> header : debeziumHeaders) {
+			if (this.headerNames.contains(header.getKey())) {
+				Object value = header.getValue();
+				headers.put(header.getKey(), (value instanceof byte[] bytes) ? new DebeziumHeaderValue(bytes) : value);
+			}
+		}
+		return new MessageHeaders(headers);
+	}
+
+	@Override
+	public void fromHeaders(MessageHeaders headers, List<Header<Object>> target) {
+		throw new UnsupportedOperationException("The 'fromHeaders' is not supported!");
+	}
+
+	/**
+	 * @param headers the message headers.
+	 * @param headerName the mapped header name.
+	 * @return the header value as a number, see {@link DebeziumHeaderValue#asLong()}.
+	 * @throws IllegalArgumentException if the header is missing.
+	 */
+	public static long getLong(Map<String, Object> headers, String headerName) {
+		Object value = headers.get(headerName);
+		Assert.notNull(value, () -> "The " + headerName + " header is missing.");
+		return (value instanceof DebeziumHeaderValue headerValue)
+				? headerValue.asLong()
+				: JsonFieldExtractor.PAYLOAD.extractLong((byte[]) value);
+	}
+
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.tuning;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.example.sidebeziumdemo.support.DebeziumQueueMetrics;
+import io.debezium.engine.ChangeEvent;
+import io.debezium.engine.DebeziumEngine;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.integration.debezium.inbound.DebeziumMessageProducer;
+import org.springframework.integration.handler.advice.AbstractRequestHandlerAdvice;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.util.Assert;
+
+/**
+ * Debezium inbound channel adapter whose {@code max.batch.size}, {@code max.queue.size} and {@code poll.interval.ms}
+ * are tuned at runtime by a {@link BatchSizeTuner}.
+ * <p>
+ * The handler latency is recorded by the {@link #latencyAdvice()}, to be applied on the flow handler, and the queue
+ * occupancy is read from the Debezium streaming metrics MBean. On every control interval the tuner evaluates the
+ * interval p99 latency and the occupancy. The evaluation is skipped while a decided settings change is not applied
+ * yet and until a full control interval has been measured with the applied settings, so the decisions do not compound
+ * before their effect is observed.
+ * <p>
+ * The Debezium engine can not be reconfigured once built, so a settings change stops the current
+ * {@link DebeziumMessageProducer} and starts a new one, built from the same engine builder with the new settings, that
+ * sends to the same output channel. The engine resumes from the committed offsets: the restarts are rate limited by
+ * the min restart interval and the events replayed since the last commit must be deduplicated downstream. Use a
+ * persistent offset store, as the memory one does not survive the restart.
+ */
+public class AdaptiveDebeziumInboundAdapter implements SmartLifecycle, BeanFactoryAware {
+
+	private static final LogAccessor logger = new LogAccessor(AdaptiveDebeziumInboundAdapter.class);
+
+	private static final int MAX_DECISIONS = 20;
+
+	private final DebeziumEngine.Builder<ChangeEvent<byte[], byte[]>> builder;
+
+	private final Properties baseProperties;
+
+	private final MessageChannel outputChannel;
+
+	private final BatchSizeTuner tuner;
+
+	private final Recorder latencyRecorder = new Recorder(TimeUnit.MINUTES.toNanos(10), 3);
+
+	private final AtomicLong handledMessages = new AtomicLong(0);
+
+	private final AtomicLong handledEvents = new AtomicLong(0);
+
+	private final ArrayDeque<BatchSizeTuner.Decision> decisions = new ArrayDeque<>();
+
+	private Consumer<DebeziumMessageProducer> producerCustomizer = producer -> {
+	};
+
+	private Duration controlInterval = Duration.ofSeconds(30);
+
+	private Duration minRestartInterval = Duration.ofMinutes(2);
+
+	private BeanFactory beanFactory;
+
+	private ScheduledExecutorService controlLoop;
+
+	private volatile DebeziumMessageProducer producer;
+
+	private volatile BatchSizeTuner.Settings appliedSettings;
+
+	private volatile long lastRestart;
+
+	private volatile boolean running;
+
+	private final AtomicLong restarts = new AtomicLong(0);
+
+	private Histogram intervalHistogram;
+
+	/**
+	 * @param builder the Debezium engine builder.
+	 * @param baseProperties the Debezium engine properties. The tuned settings are overridden.
+	 * @param outputChannel the channel to send the change events to.
+	 * @param tuner the settings tuner.
+	 */
+	public AdaptiveDebeziumInboundAdapter(DebeziumEngine.Builder<ChangeEvent<byte[], byte[]>> builder,
+			Properties baseProperties, MessageChannel outputChannel, BatchSizeTuner tuner) {
+
+		Assert.notNull(builder, "The builder can not be null.");
+		Assert.notNull(baseProperties, "The baseProperties can not be null.");
+		Assert.notNull(outputChannel, "The outputChannel can not be null.");
+		Assert.notNull(tuner, "The tuner can not be null.");
+		this.builder = builder;
+		this.baseProperties = baseProperties;
+		this.outputChannel = outputChannel;
+		this.tuner = tuner;
+	}
+
+	/**
+	 * @param producerCustomizer applied on every new producer, e.g. to set the header mapper or the batch mode.
+	 */
+	public void setProducerCustomizer(Consumer<DebeziumMessageProducer> producerCustomizer) {
+		Assert.notNull(producerCustomizer, "The producerCustomizer can not be null.");
+		this.producerCustomizer = producerCustomizer;
+	}
+
+	public void setControlInterval(Duration controlInterval) {
+		this.controlInterval = controlInterval;
+	}
+
+	public void setMinRestartInterval(Duration minRestartInterval) {
+		this.minRestartInterval = minRestartInterval;
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	/**
+	 * @return Advice recording the handler latency, to apply on the flow handler.
+	 */
+	public AbstractRequestHandlerAdvice latencyAdvice() {
+		return new AbstractRequestHandlerAdvice() {
+
+			@Override
+			protected Object doInvoke(ExecutionCallback callback, Object target, Message<?> message) {
+				long start = System.nanoTime();
+				try {
+					return callback.execute();
+				}
+				finally {
+					latencyRecorder.recordValue(Math.min(System.nanoTime() - start, TimeUnit.MINUTES.toNanos(10)));
+					handledMessages.incrementAndGet();
+					handledEvents.addAndGet((message.getPayload() instanceof List<?> batch) ? batch.size() : 1);
+				}
+			}
+
+		};
+	}
+
+	@Override
+	public synchronized void start() {
+		if (this.running) {
+			return;
+		}
+		this.running = true;
+		startProducer(this.tuner.getSettings());
+		this.controlLoop = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "debezium-tuner");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long interval = this.controlInterval.toMillis();
+		this.controlLoop.scheduleWithFixedDelay(this::control, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (!this.running) {
+			return;
+		}
+		this.running = false;
+		this.controlLoop.shutdownNow();
+		stopProducer();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	void control() {
+		try {
+			this.intervalHistogram = this.latencyRecorder.getIntervalHistogram(this.intervalHistogram);
+			long messages = this.handledMessages.getAndSet(0);
+			long events = this.handledEvents.getAndSet(0);
+			BatchSizeTuner.Settings current = this.appliedSettings;
+			BatchSizeTuner.Settings target = this.tuner.getSettings();
+			long sinceRestart = System.currentTimeMillis() - this.lastRestart;
+
+			if (target.equals(current)) {
+				if (sinceRestart < this.controlInterval.toMillis()) {
+					// Not a full measurement window with the applied settings yet.
+					return;
+				}
+				long p99 = this.intervalHistogram.getValueAtPercentile(99);
+				double batchFill = (messages > 0 && events > messages)
+						? (double) events / messages / current.maxBatchSize()
+						: Double.NaN;
+				BatchSizeTuner.Decision decision = this.tuner.evaluate(p99, DebeziumQueueMetrics.occupancy(), batchFill);
+				recordDecision(decision);
+				target = decision.settings();
+			}
+
+			// A pending change is applied once the restarts rate limit allows it, without further evaluations.
+			if (!target.equals(current) && sinceRestart >= this.minRestartInterval.toMillis()) {
+				BatchSizeTuner.Settings settings = target;
+				logger.info(() -> "Restarting the Debezium engine with " + settings);
+				synchronized (this) {
+					if (this.running) {
+						stopProducer();
+						startProducer(settings);
+						this.restarts.incrementAndGet();
+					}
+				}
+			}
+		}
+		catch (Exception e) {
+			logger.error(e, "Debezium tuner control loop failure");
+		}
+	}
+
+	private void startProducer(BatchSizeTuner.Settings settings) {
+		Properties properties = new Properties();
+		properties.putAll(this.baseProperties);
+		properties.setProperty("max.batch.size", String.valueOf(settings.maxBatchSize()));
+		properties.setProperty("max.queue.size", String.valueOf(settings.maxQueueSize()));
+		properties.setProperty("poll.interval.ms", String.valueOf(settings.pollIntervalMs()));
+
+		DebeziumMessageProducer newProducer = new DebeziumMessageProducer(this.builder.using(properties));
+		newProducer.setOutputChannel(this.outputChannel);
+		if (this.beanFactory != null) {
+			newProducer.setBeanFactory(this.beanFactory);
+		}
+		this.producerCustomizer.accept(newProducer);
+		newProducer.afterPropertiesSet();
+		// Measure the new settings only.
+		this.latencyRecorder.reset();
+		this.handledMessages.set(0);
+		this.handledEvents.set(0);
+		newProducer.start();
+		this.producer = newProducer;
+		this.appliedSettings = settings;
+		this.lastRestart = System.currentTimeMillis();
+	}
+
+	private void stopProducer() {
+		DebeziumMessageProducer current = this.producer;
+		if (current != null) {
+			current.stop();
+			this.producer = null;
+		}
+	}
+
+	private void recordDecision(BatchSizeTuner.Decision decision) {
+		synchronized (this.decisions) {
+			if (this.decisions.size() == MAX_DECISIONS) {
+				this.decisions.removeFirst();
+			}
+			this.decisions.addLast(decision);
+		}
+	}
+
+	/**
+	 * @return The settings of the running engine.
+	 */
+	public BatchSizeTuner.Settings getAppliedSettings() {
+		return this.appliedSettings;
+	}
+
+	/**
+	 * @return The settings decided by the tuner, applied on the next restart.
+	 */
+	public BatchSizeTuner.Settings getTargetSettings() {
+		return this.tuner.getSettings();
+	}
+
+	/**
+	 * @return The recent decisions, oldest first.
+	 */
+	public List<BatchSizeTuner.Decision> getDecisions() {
+		synchronized (this.decisions) {
+			return new ArrayList<>(this.decisions);
+		}
+	}
+
+	/**
+	 * @return Number of the engine restarts caused by settings changes.
+	 */
+	public long getRestarts() {
+		return this.restarts.get();
+	}
+
+}
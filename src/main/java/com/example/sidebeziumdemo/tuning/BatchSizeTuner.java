@@ -0,0 +1,154 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.tuning;
+
+import java.time.Duration;
+
+import org.springframework.util.Assert;
+
+/**
+ * Multiplicative increase / multiplicative decrease controller for the Debezium {@code max.batch.size},
+ * {@code max.queue.size} and {@code poll.interval.ms} settings.
+ * <p>
+ * On every {@link #evaluate} the tuner:
+ * <ul>
+ * <li>halves the batch size when the handler p99 latency exceeds the target.</li>
+ * <li>doubles the batch size, and drops the poll interval to its minimum, when the p99 latency has enough headroom and
+ * the engine is saturated: the queue is mostly full or the batches are mostly full.</li>
+ * <li>holds the settings otherwise.</li>
+ * </ul>
+ * The queue size follows the batch size, as Debezium requires {@code max.queue.size > max.batch.size}.
+ * <p>
+ * The tuner is not thread-safe. It is meant to be called from a single control loop.
+ */
+public class BatchSizeTuner {
+
+	/**
+	 * The tuned Debezium settings.
+	 */
+	public record Settings(int maxBatchSize, int maxQueueSize, long pollIntervalMs) {
+	}
+
+	public enum Action {
+		HOLD, GROW, SHRINK
+	}
+
+	/**
+	 * @param action the taken action.
+	 * @param settings the settings after the action.
+	 * @param reason human readable reason of the action.
+	 * @param p99Micros the observed handler p99 latency.
+	 * @param queueOccupancy the observed queue occupancy in [0, 1] or NaN if unknown.
+	 * @param batchFill the observed average batch size to max batch size ratio or NaN if unknown.
+	 * @param timestamp decision time in epoch millis.
+	 */
+	public record Decision(Action action, Settings settings, String reason, long p99Micros, double queueOccupancy,
+			double batchFill, long timestamp) {
+	}
+
+	static final double SATURATED_QUEUE = 0.8;
+
+	static final double SATURATED_BATCH = 0.9;
+
+	/** Grow only while the p99 latency is below this fraction of the target. */
+	static final double GROW_HEADROOM = 0.5;
+
+	private final long targetP99Nanos;
+
+	private final int minBatchSize;
+
+	private final int maxBatchSize;
+
+	private final int queueToBatchRatio;
+
+	private final long minPollIntervalMs;
+
+	private Settings settings;
+
+	/**
+	 * @param targetP99 target handler p99 latency.
+	 * @param minBatchSize the lower bound of the batch size.
+	 * @param maxBatchSize the upper bound of the batch size.
+	 * @param queueToBatchRatio the queue size to batch size ratio. Must be at least 2.
+	 * @param minPollIntervalMs the poll interval used once the engine gets saturated.
+	 * @param initial the initial settings, e.g. from the properties.
+	 */
+	public BatchSizeTuner(Duration targetP99, int minBatchSize, int maxBatchSize, int queueToBatchRatio,
+			long minPollIntervalMs, Settings initial) {
+		Assert.isTrue(!targetP99.isNegative() && !targetP99.isZero(), "The targetP99 must be positive.");
+		Assert.isTrue(minBatchSize > 0 && minBatchSize <= maxBatchSize, "Invalid batch size bounds.");
+		Assert.isTrue(queueToBatchRatio >= 2, "The queueToBatchRatio must be at least 2.");
+		Assert.notNull(initial, "The initial settings can not be null.");
+		this.targetP99Nanos = targetP99.toNanos();
+		this.minBatchSize = minBatchSize;
+		this.maxBatchSize = maxBatchSize;
+		this.queueToBatchRatio = queueToBatchRatio;
+		this.minPollIntervalMs = minPollIntervalMs;
+		int batchSize = Math.max(minBatchSize, Math.min(maxBatchSize, initial.maxBatchSize()));
+		this.settings = new Settings(batchSize, queueSize(batchSize, initial.maxQueueSize()), initial.pollIntervalMs());
+	}
+
+	/**
+	 * @return The current settings.
+	 */
+	public Settings getSettings() {
+		return this.settings;
+	}
+
+	/**
+	 * @param p99Nanos the handler p99 latency observed since the last evaluation.
+	 * @param queueOccupancy the Debezium queue occupancy in [0, 1] or NaN if unknown.
+	 * @param batchFill the average batch size to max batch size ratio or NaN if unknown (e.g. not in batch mode).
+	 * @return the decision, with the new settings.
+	 */
+	public Decision evaluate(long p99Nanos, double queueOccupancy, double batchFill) {
+		int batchSize = this.settings.maxBatchSize();
+
+		if (p99Nanos > this.targetP99Nanos) {
+			if (batchSize == this.minBatchSize) {
+				return decision(Action.HOLD, "p99 over target at the min batch size", p99Nanos, queueOccupancy,
+						batchFill);
+			}
+			int newBatchSize = Math.max(this.minBatchSize, batchSize / 2);
+			this.settings = new Settings(newBatchSize, queueSize(newBatchSize, 0), this.settings.pollIntervalMs());
+			return decision(Action.SHRINK, "p99 over target", p99Nanos, queueOccupancy, batchFill);
+		}
+
+		boolean saturated = (queueOccupancy >= SATURATED_QUEUE) || (batchFill >= SATURATED_BATCH);
+		if (saturated && p99Nanos < this.targetP99Nanos * GROW_HEADROOM) {
+			if (batchSize == this.maxBatchSize && this.settings.pollIntervalMs() <= this.minPollIntervalMs) {
+				return decision(Action.HOLD, "saturated at the max batch size", p99Nanos, queueOccupancy, batchFill);
+			}
+			int newBatchSize = (int) Math.min(this.maxBatchSize, (long) batchSize * 2);
+			this.settings = new Settings(newBatchSize, queueSize(newBatchSize, 0),
+					Math.min(this.settings.pollIntervalMs(), this.minPollIntervalMs));
+			return decision(Action.GROW, "saturated with p99 headroom", p99Nanos, queueOccupancy, batchFill);
+		}
+
+		return decision(Action.HOLD, "within target", p99Nanos, queueOccupancy, batchFill);
+	}
+
+	private int queueSize(int batchSize, int requested) {
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(requested, (long) batchSize * this.queueToBatchRatio));
+	}
+
+	private Decision decision(Action action, String reason, long p99Nanos, double queueOccupancy, double batchFill) {
+		return new Decision(action, this.settings, reason, p99Nanos / 1000, queueOccupancy, batchFill,
+				System.currentTimeMillis());
+	}
+
+}
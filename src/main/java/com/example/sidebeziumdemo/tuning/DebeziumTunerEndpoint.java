@@ -0,0 +1,49 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.tuning;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * Actuator endpoint reporting the {@link AdaptiveDebeziumInboundAdapter} settings and recent tuner decisions.
+ * Expose it with {@code management.endpoints.jmx.exposure.include=debeziumtuner} (and {@code spring.jmx.enabled=true})
+ * or the web equivalent.
+ */
+@Endpoint(id = "debeziumtuner")
+public class DebeziumTunerEndpoint {
+
+	private final AdaptiveDebeziumInboundAdapter adapter;
+
+	public DebeziumTunerEndpoint(AdaptiveDebeziumInboundAdapter adapter) {
+		this.adapter = adapter;
+	}
+
+	@ReadOperation
+	public Map<String, Object> tuner() {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("appliedSettings", this.adapter.getAppliedSettings());
+		result.put("targetSettings", this.adapter.getTargetSettings());
+		result.put("restarts", this.adapter.getRestarts());
+		result.put("decisions", this.adapter.getDecisions());
+		return result;
+	}
+
+}
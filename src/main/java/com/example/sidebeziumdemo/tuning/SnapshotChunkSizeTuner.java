@@ -0,0 +1,229 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.tuning;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import io.debezium.pipeline.notification.IncrementalSnapshotNotificationService;
+import io.debezium.pipeline.notification.Notification;
+import org.HdrHistogram.Histogram;
+
+import org.springframework.util.Assert;
+
+/**
+ * Tunes the Debezium {@code incremental.snapshot.chunk.size} from the incremental snapshot {@link Notification}s.
+ * <p>
+ * Debezium sends an {@code IN_PROGRESS} notification for every chunk it reads, so the time between two consecutive
+ * notifications is the chunk time: the chunk query plus the watermark round trip over the log. The tuner records
+ * these times, excluding the paused periods, and once the snapshot is {@code COMPLETED} scales the chunk size by the
+ * target to median chunk time ratio. The step is bounded by {@link #MAX_STEP}, since the chunk time is not
+ * proportional to the chunk size (the watermark round trip is fixed), so the size converges over a few snapshots.
+ * <p>
+ * The chunk size can not be changed while a snapshot runs: the new size must be applied on the next engine start
+ * (see {@link #CHUNK_SIZE_PROPERTY}). An aborted snapshot keeps the current size.
+ */
+public class SnapshotChunkSizeTuner {
+
+	/**
+	 * The tuned Debezium property.
+	 */
+	public static final String CHUNK_SIZE_PROPERTY = "incremental.snapshot.chunk.size";
+
+	public enum Action {
+		HOLD, GROW, SHRINK
+	}
+
+	/**
+	 * @param action the taken action.
+	 * @param previousChunkSize the chunk size of the completed snapshot.
+	 * @param chunkSize the chunk size for the next snapshot.
+	 * @param reason human readable reason of the action.
+	 * @param chunks number of the measured chunks.
+	 * @param medianChunkMillis the median chunk time.
+	 * @param rowsScanned number of the rows scanned by the snapshot.
+	 * @param rowsPerSecond the snapshot throughput.
+	 * @param timestamp decision time in epoch millis.
+	 */
+	public record Decision(Action action, int previousChunkSize, int chunkSize, String reason,
+			long chunks, long medianChunkMillis, long rowsScanned, double rowsPerSecond, long timestamp) {
+	}
+
+	/** Bound of the chunk size change per snapshot. */
+	static final int MAX_STEP = 8;
+
+	/** Hold the chunk size while the median chunk time is within this factor of the target. */
+	static final double TOLERANCE = 1.25;
+
+	/** Minimum number of the measured chunks to decide on. */
+	static final int MIN_CHUNKS = 3;
+
+	private final long targetChunkMillis;
+
+	private final int minChunkSize;
+
+	private final int maxChunkSize;
+
+	private final Histogram chunkMillis = new Histogram(TimeUnit.HOURS.toMillis(1), 3);
+
+	private int chunkSize;
+
+	private long snapshotStart = -1;
+
+	private long lastChunk = -1;
+
+	private String lastCollection;
+
+	private String lastKey;
+
+	private long rowsScanned;
+
+	private Decision lastDecision;
+
+	/**
+	 * @param targetChunkDuration target chunk time.
+	 * @param minChunkSize the lower bound of the chunk size.
+	 * @param maxChunkSize the upper bound of the chunk size.
+	 * @param initialChunkSize the initial chunk size, e.g. from the properties.
+	 */
+	public SnapshotChunkSizeTuner(Duration targetChunkDuration, int minChunkSize, int maxChunkSize,
+			int initialChunkSize) {
+
+		Assert.isTrue(targetChunkDuration.toMillis() > 0, "The targetChunkDuration must be at least 1ms.");
+		Assert.isTrue(minChunkSize > 0 && minChunkSize <= maxChunkSize, "Invalid chunk size bounds.");
+		this.targetChunkMillis = targetChunkDuration.toMillis();
+		this.minChunkSize = minChunkSize;
+		this.maxChunkSize = maxChunkSize;
+		this.chunkSize = clamp(initialChunkSize);
+	}
+
+	/**
+	 * @return The chunk size to apply on the next snapshot.
+	 */
+	public synchronized int getChunkSize() {
+		return this.chunkSize;
+	}
+
+	/**
+	 * @return The decision taken on the last completed snapshot or null if none.
+	 */
+	public synchronized Decision getLastDecision() {
+		return this.lastDecision;
+	}
+
+	/**
+	 * @param notification the Debezium notification. Other than the incremental snapshot ones are ignored.
+	 * @return the decision if the notification completed a snapshot, null otherwise.
+	 */
+	public Decision onNotification(Notification notification) {
+		return onNotification(notification, System.nanoTime());
+	}
+
+	synchronized Decision onNotification(Notification notification, long nanoTime) {
+		if (!IncrementalSnapshotNotificationService.INCREMENTAL_SNAPSHOT.equals(notification.getAggregateType())) {
+			return null;
+		}
+		long now = TimeUnit.NANOSECONDS.toMillis(nanoTime);
+		Map<String, String> data = notification.getAdditionalData();
+		switch (notification.getType()) {
+			case "STARTED" -> {
+				this.chunkMillis.reset();
+				this.rowsScanned = 0;
+				this.snapshotStart = now;
+				this.lastChunk = now;
+				this.lastCollection = null;
+				this.lastKey = null;
+			}
+			case "IN_PROGRESS" -> {
+				String collection = data.get(IncrementalSnapshotNotificationService.CURRENT_COLLECTION_IN_PROGRESS);
+				String key = data.get(IncrementalSnapshotNotificationService.LAST_PROCESSED_KEY);
+				// A re-read chunk does not advance the key.
+				boolean advanced = !Objects.equals(collection, this.lastCollection)
+						|| !Objects.equals(key, this.lastKey);
+				if (advanced && this.lastChunk >= 0) {
+					this.chunkMillis.recordValue(
+							Math.min(now - this.lastChunk, this.chunkMillis.getHighestTrackableValue()));
+				}
+				this.lastChunk = now;
+				this.lastCollection = collection;
+				this.lastKey = key;
+			}
+			case "PAUSED" -> this.lastChunk = -1;
+			case "RESUMED" -> this.lastChunk = now;
+			case "TABLE_SCAN_COMPLETED" -> {
+				String rows = data.get(IncrementalSnapshotNotificationService.TOTAL_ROWS_SCANNED);
+				if (rows != null) {
+					this.rowsScanned += Long.parseLong(rows);
+				}
+			}
+			case "ABORTED" -> this.snapshotStart = -1;
+			case "COMPLETED" -> {
+				if (this.snapshotStart >= 0) {
+					this.lastDecision = decide(now - this.snapshotStart);
+					this.snapshotStart = -1;
+					return this.lastDecision;
+				}
+			}
+			default -> {
+			}
+		}
+		return null;
+	}
+
+	private Decision decide(long elapsedMillis) {
+		int previous = this.chunkSize;
+		long chunks = this.chunkMillis.getTotalCount();
+		long median = this.chunkMillis.getValueAtPercentile(50);
+		double rowsPerSecond = (elapsedMillis > 0) ? this.rowsScanned * 1000.0 / elapsedMillis : Double.NaN;
+
+		Action action = Action.HOLD;
+		String reason;
+		if (chunks < MIN_CHUNKS) {
+			reason = "not enough chunks";
+		}
+		else {
+			double ratio = (double) this.targetChunkMillis / Math.max(median, 1);
+			if (ratio <= TOLERANCE && ratio >= 1 / TOLERANCE) {
+				reason = "within target";
+			}
+			else {
+				ratio = Math.max(1.0 / MAX_STEP, Math.min(MAX_STEP, ratio));
+				this.chunkSize = clamp(Math.round(previous * ratio));
+				if (this.chunkSize > previous) {
+					action = Action.GROW;
+					reason = "chunk time under target";
+				}
+				else if (this.chunkSize < previous) {
+					action = Action.SHRINK;
+					reason = "chunk time over target";
+				}
+				else {
+					reason = "at the chunk size bound";
+				}
+			}
+		}
+		return new Decision(action, previous, this.chunkSize, reason, chunks, median, this.rowsScanned, rowsPerSecond,
+				System.currentTimeMillis());
+	}
+
+	private int clamp(long chunkSize) {
+		return (int) Math.max(this.minChunkSize, Math.min(this.maxChunkSize, chunkSize));
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.dispatch;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BoundedVirtualThreadExecutorTests {
+
+	@Test
+	public void concurrencyIsBounded() throws InterruptedException {
+		BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor(4);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(100);
+
+		for (int i = 0; i < 100; i++) {
+			executor.execute(() -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(2);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				running.decrementAndGet();
+				done.countDown();
+			});
+		}
+
+		assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(maxRunning.get()).isBetween(1, 4);
+		assertThat(executor.getBlockedSubmissions()).isPositive();
+	}
+
+	@Test
+	public void executeBlocksWhileSaturated() throws Exception {
+		BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor(1,
+				VirtualThreadSupport.threadFactory("test-"));
+		CountDownLatch release = new CountDownLatch(1);
+		executor.execute(() -> {
+			try {
+				release.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertThat(executor.getActiveCount()).isEqualTo(1);
+
+		CompletableFuture<String> second = new CompletableFuture<>();
+		CompletableFuture<Void> submit = CompletableFuture.runAsync(
+				() -> executor.execute(() -> second.complete(Thread.currentThread().getName())));
+		Thread.sleep(100);
+		assertThat(submit).isNotDone();
+
+		release.countDown();
+		assertThat(second.get(5, TimeUnit.SECONDS)).startsWith("test-");
+		submit.get(5, TimeUnit.SECONDS);
+	}
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.dispatch;
+
+import java.nio.charset.StandardCharsets;
+
+import io.debezium.data.Envelope;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.debezium.support.DebeziumHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+public class ChangeEventRouterTests {
+
+	private final QueueChannel ordersCreated = new QueueChannel();
+
+	private final QueueChannel orders = new QueueChannel();
+
+	private final QueueChannel deleted = new QueueChannel();
+
+	private final QueueChannel others = new QueueChannel();
+
+	@Test
+	public void mostSpecificRouteWins() {
+		ChangeEventRouter router = new ChangeEventRouter()
+			.route("orders", Envelope.Operation.CREATE, this.ordersCreated)
+			.route("orders", null, this.orders)
+			.route(null, Envelope.Operation.DELETE, this.deleted)
+			.route("customers", Envelope.Operation.UPDATE, this.ordersCreated)
+			.route(null, null, this.others);
+
+		router.handleMessage(event("{\"payload\":\"orders\"}", "{\"payload\":\"c\"}"));
+		router.handleMessage(event("{\"payload\":\"orders\"}", "{\"payload\":\"d\"}"));
+		router.handleMessage(event("{\"payload\":\"customers\"}", "{\"payload\":\"d\"}"));
+		router.handleMessage(event("{\"payload\":\"products\"}", "{\"payload\":\"u\"}"));
+		router.handleMessage(event(null, null));
+
+		assertThat(this.ordersCreated.getQueueSize()).isEqualTo(1);
+		assertThat(this.orders.getQueueSize()).isEqualTo(1);
+		assertThat(this.deleted.getQueueSize()).isEqualTo(1);
+		assertThat(this.others.getQueueSize()).isEqualTo(2);
+	}
+
+	@Test
+	public void routeOnDestination() {
+		ChangeEventRouter router = new ChangeEventRouter(DebeziumHeaders.DESTINATION)
+			.route("my-topic.inventory.orders", Envelope.Operation.READ, this.orders);
+		router.setDefaultOutputChannel(this.others);
+
+		Message<?> message = MessageBuilder.fromMessage(event(null, "{\"schema\":{},\"payload\":\"r\"}"))
+			.setHeader(DebeziumHeaders.DESTINATION, "my-topic.inventory.orders")
+			.build();
+		router.handleMessage(message);
+		router.handleMessage(MessageBuilder.fromMessage(message)
+			.setHeader(DebeziumHeaders.DESTINATION, "my-topic.inventory.customers")
+			.build());
+
+		assertThat(this.orders.receive(0)).isSameAs(message);
+		assertThat(this.others.getQueueSize()).isEqualTo(1);
+	}
+
+	@Test
+	public void manyTablesAndRawHeaders() {
+		ChangeEventRouter router = new ChangeEventRouter();
+		QueueChannel[] channels = new QueueChannel[100];
+		for (int i = 0; i < channels.length; i++) {
+			channels[i] = new QueueChannel();
+			router.route("table_" + i, Envelope.Operation.CREATE, channels[i]);
+		}
+		for (int i = 0; i < channels.length; i++) {
+			router.handleMessage(event((i % 2 == 0) ? "table_" + i : "\"table_" + i + "\"", "c"));
+		}
+		for (QueueChannel channel : channels) {
+			assertThat(channel.getQueueSize()).isEqualTo(1);
+		}
+
+		assertThatExceptionOfType(MessageDeliveryException.class)
+			.isThrownBy(() -> router.handleMessage(event("table_1", "u")));
+	}
+
+	private static Message<?> event(String table, String op) {
+		MessageBuilder<byte[]> builder = MessageBuilder.withPayload("{}".getBytes(StandardCharsets.UTF_8));
+		if (table != null) {
+			builder.setHeader("__table", table.getBytes(StandardCharsets.UTF_8));
+		}
+		if (op != null) {
+			builder.setHeader("__op", op.getBytes(StandardCharsets.UTF_8));
+		}
+		return builder.build();
+	}
+
+}
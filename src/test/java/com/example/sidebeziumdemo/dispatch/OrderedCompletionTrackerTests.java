@@ -0,0 +1,210 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.dispatch;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import io.debezium.engine.spi.OffsetCommitPolicy;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.integration.channel.PartitionedChannel;
+import org.springframework.integration.debezium.support.DebeziumHeaders;
+import org.springframework.integration.handler.ServiceActivatingHandler;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+public class OrderedCompletionTrackerTests {
+
+	@Test
+	public void watermarkAdvancesOverContiguousCompletions() throws InterruptedException {
+		OrderedCompletionTracker tracker = new OrderedCompletionTracker(8);
+		for (int i = 0; i < 5; i++) {
+			assertThat(tracker.begin()).isEqualTo(i);
+		}
+		assertThat(tracker.getCompletedWatermark()).isEqualTo(-1);
+
+		tracker.complete(1);
+		tracker.complete(3);
+		assertThat(tracker.getCompletedWatermark()).isEqualTo(-1);
+
+		tracker.complete(0);
+		assertThat(tracker.getCompletedWatermark()).isEqualTo(1);
+
+		tracker.complete(2);
+		assertThat(tracker.getCompletedWatermark()).isEqualTo(3);
+		assertThat(tracker.getInFlight()).isEqualTo(1);
+
+		assertThat(tracker.awaitCompleted(4, Duration.ofMillis(10))).isFalse();
+		tracker.complete(4);
+		assertThat(tracker.awaitCompleted(4, Duration.ZERO)).isTrue();
+		assertThat(tracker.getInFlight()).isZero();
+	}
+
+	@Test
+	public void beginBlocksWhileWindowIsFull() throws Exception {
+		OrderedCompletionTracker tracker = new OrderedCompletionTracker(2);
+		tracker.begin();
+		tracker.begin();
+
+		CompletableFuture<Long> third = CompletableFuture.supplyAsync(() -> {
+			try {
+				return tracker.begin();
+			}
+			catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		Thread.sleep(100);
+		assertThat(third).isNotDone();
+
+		tracker.complete(1);
+		Thread.sleep(100);
+		assertThat(third).isNotDone();
+
+		tracker.complete(0);
+		assertThat(third.get(5, TimeUnit.SECONDS)).isEqualTo(2);
+	}
+
+	@Test
+	public void beginTimesOutWhileWindowIsFull() throws InterruptedException {
+		OrderedCompletionTracker tracker = new OrderedCompletionTracker(2, Duration.ofMillis(50));
+		tracker.begin();
+		tracker.begin();
+
+		assertThatExceptionOfType(MessagingException.class).isThrownBy(tracker::begin)
+			.withMessageContaining("still full");
+	}
+
+	@Test
+	public void failedEventStopsDispatchAndCommit() throws Exception {
+		OrderedCompletionTracker tracker = new OrderedCompletionTracker(4);
+		CompletionAwareOffsetCommitPolicy policy = new CompletionAwareOffsetCommitPolicy(OffsetCommitPolicy.always(),
+				tracker, Duration.ofSeconds(10));
+
+		ExecutorService lane = Executors.newSingleThreadExecutor();
+		ExecutorChannel channel = new ExecutorChannel(lane);
+		channel.addInterceptor(tracker.sequencingInterceptor());
+		channel.setBeanFactory(new DefaultListableBeanFactory());
+		channel.afterPropertiesSet();
+		ServiceActivatingHandler handler = new ServiceActivatingHandler((Message<?> message) -> {
+			if (message.getPayload().equals(1)) {
+				throw new IllegalStateException("expected");
+			}
+			return null;
+		});
+		handler.setAdviceChain(List.of(tracker.completionAdvice()));
+		handler.setBeanFactory(new DefaultListableBeanFactory());
+		handler.afterPropertiesSet();
+		channel.subscribe(handler);
+
+		// The later events keep arriving, the dispatch fails instead of blocking once the window is full.
+		CompletableFuture<Integer> dispatch = CompletableFuture.supplyAsync(() -> {
+			int sent = 0;
+			try {
+				while (sent < 100) {
+					channel.send(MessageBuilder.withPayload(sent).build());
+					sent++;
+				}
+			}
+			catch (MessagingException e) {
+				assertThat(e).hasMessageContaining("failed").hasRootCauseMessage("expected");
+			}
+			return sent;
+		});
+		assertThat(dispatch.get(10, TimeUnit.SECONDS)).isLessThan(100);
+		assertThat(tracker.getFailures()).isEqualTo(1);
+		assertThat(tracker.getCompletedWatermark()).isZero();
+
+		// The commit does not wait for the drain timeout and stops the engine.
+		assertThatIllegalStateException().isThrownBy(() -> policy.performCommit(1, Duration.ZERO))
+			.withRootCauseInstanceOf(IllegalStateException.class);
+		lane.shutdown();
+	}
+
+	@Test
+	public void commitWaitsForDispatchedEvents() throws InterruptedException {
+		OrderedCompletionTracker tracker = new OrderedCompletionTracker(4);
+		CompletionAwareOffsetCommitPolicy policy = new CompletionAwareOffsetCommitPolicy(OffsetCommitPolicy.always(),
+				tracker, Duration.ofMillis(10));
+		assertThat(policy.performCommit(0, Duration.ZERO)).isTrue();
+
+		tracker.begin();
+		tracker.begin();
+		tracker.complete(1);
+		assertThat(policy.performCommit(2, Duration.ZERO)).isFalse();
+
+		tracker.complete(0);
+		assertThat(policy.performCommit(2, Duration.ZERO)).isTrue();
+	}
+
+	@Test
+	public void partitionedDispatchKeepsPerKeyOrder() throws InterruptedException {
+		int keys = 16;
+		int eventsPerKey = 200;
+		OrderedCompletionTracker tracker = new OrderedCompletionTracker(64);
+		Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+
+		PartitionedChannel channel = new PartitionedChannel(4, CdcPartitionKeys.primaryKey());
+		channel.addInterceptor(tracker.sequencingInterceptor());
+		channel.setBeanFactory(new DefaultListableBeanFactory());
+		channel.afterPropertiesSet();
+		ServiceActivatingHandler handler = new ServiceActivatingHandler((Message<?> message) -> {
+			String key = new String((byte[]) message.getHeaders().get(DebeziumHeaders.KEY));
+			received.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add((Integer) message.getPayload());
+			if (ThreadLocalRandom.current().nextInt(10) == 0) {
+				Thread.yield();
+			}
+			return null;
+		});
+		handler.setAdviceChain(List.of(tracker.completionAdvice()));
+		handler.setBeanFactory(new DefaultListableBeanFactory());
+		handler.afterPropertiesSet();
+		channel.subscribe(handler);
+
+		for (int i = 0; i < eventsPerKey; i++) {
+			for (int k = 0; k < keys; k++) {
+				channel.send(MessageBuilder.withPayload(i)
+					.setHeader(DebeziumHeaders.KEY, ("{\"id\":" + k + "}").getBytes())
+					.setHeader(DebeziumHeaders.DESTINATION, "test.public.t")
+					.build());
+			}
+		}
+
+		assertThat(tracker.awaitCompleted(tracker.getLastIssued(), Duration.ofSeconds(10))).isTrue();
+		assertThat(tracker.getLastIssued()).isEqualTo(keys * eventsPerKey - 1);
+		assertThat(received).hasSize(keys);
+		received.values().forEach(values -> assertThat(values).hasSize(eventsPerKey).isSorted());
+		channel.destroy();
+	}
+
+}
@@ -1,27 +1,36 @@
 package com.example.sidebeziumdemo.eosapp;
 
-import java.io.IOException;
-import java.util.Collections;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Properties;
 import java.util.concurrent.BrokenBarrierException;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
 
 import javax.sql.DataSource;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.hash.BloomFilter;
-import com.google.common.hash.Funnels;
+import com.example.sidebeziumdemo.eosapp.dedup.LsnBatchDeduplicationHandler;
+import com.example.sidebeziumdemo.eosapp.dedup.LsnDeduplicationAdvice;
+import com.example.sidebeziumdemo.eosapp.dedup.LsnFilterOffsetCommitPolicy;
+import com.example.sidebeziumdemo.eosapp.dedup.MappedLsnFilter;
+import com.example.sidebeziumdemo.eosapp.dedup.OffHeapLsnFilter.Layout;
+import com.example.sidebeziumdemo.loadgen.BatchedLoadGenerator;
+import com.example.sidebeziumdemo.metrics.DebeziumInboundMetrics;
+import com.example.sidebeziumdemo.metrics.DebeziumInboundMetrics.Deduplication;
+import com.example.sidebeziumdemo.monitoring.ReplicationSlotMonitor;
+import com.example.sidebeziumdemo.support.JsonFieldExtractor;
+import com.example.sidebeziumdemo.support.LazyDebeziumHeaderMapper;
 import com.zaxxer.hikari.HikariDataSource;
 import io.debezium.engine.ChangeEvent;
 import io.debezium.engine.DebeziumEngine;
 import io.debezium.engine.spi.OffsetCommitPolicy;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -44,23 +53,56 @@ public class PostgresCdcDemoApplication implements CommandLineRunner {
 
 	static final LogAccessor logger = new LogAccessor(PostgresCdcDemoApplication.class);
 
+	private static final JsonFieldExtractor VALUE_FIELD = JsonFieldExtractor.forField("val");
+
+	private static final ToLongFunction<ChangeEvent<?, ?>> BATCH_LSN = LsnBatchDeduplicationHandler
+			.headerLsnExtractor("__lsn");
+
 	CyclicBarrier barrier = new CyclicBarrier(2);
 
-	Set<Integer> valueSet = new ConcurrentSkipListSet<>();
+	AtomicLong processedCount = new AtomicLong(0);
+
+	// Exactly-once oracle: the generator inserts the values 1..N once each, so once all the rows are handled the
+	// values sum to N(N+1)/2, unless a duplicate got through (the parallel writers may leave gaps until then).
+	AtomicLong valueSum = new AtomicLong(0);
+
+	AtomicLong maxValue = new AtomicLong(0);
+
+	// Batch mode: the adapter hands over the whole Debezium batch as a single List<ChangeEvent> message.
+	// Raise the debezium.properties.max.batch.size and max.queue.size accordingly.
+	@Value("${app.batch.enabled:false}")
+	boolean batchEnabled;
+
+	// Load generator: parallel writers, prepared batches and an optional target rate in rows/s (0 - unthrottled).
+	@Value("${app.load.writers:4}")
+	int loadWriters;
 
-	BloomFilter<Long> bloomFilter = BloomFilter.create(Funnels.longFunnel(), 1000000, 0.01);
+	@Value("${app.load.batch-size:500}")
+	int loadBatchSize;
 
-	ObjectMapper mapper = new ObjectMapper();
+	@Value("${app.load.rate:0}")
+	double loadRate;
 
-	AtomicLong duplicationCount = new AtomicLong(0);
+	// Memory-mapped LSN filter file, reused on restart along with the persistent offsets.
+	@Value("${app.dedup.filter-file:target/eosapp/lsn.filter}")
+	String lsnFilterFile;
 
-	AtomicLong falsePositiveCount = new AtomicLong(0);
+	@Value("${debezium.properties.offset.flush.interval.ms:60000}")
+	String offsetFlushIntervalMs;
 
-	AtomicLong falseNegativeCount = new AtomicLong(0);
+	// Replication slot monitor: forces the offset commits and pauses the load generator once the slot retains more WAL.
+	@Value("${debezium.properties.slot.name:debezium}")
+	String slotName;
+
+	@Value("${app.slot.retention-threshold-bytes:1073741824}")
+	long slotRetentionThreshold;
 
 	@Autowired
 	private JdbcTemplate jdbcTemplate;
 
+	@Autowired
+	private DataSource dataSource;
+
 	public static void main(String[] args) {
 		new SpringApplicationBuilder(PostgresCdcDemoApplication.class)
 				.web(WebApplicationType.NONE)
@@ -77,31 +119,32 @@ public class PostgresCdcDemoApplication implements CommandLineRunner {
 				e.printStackTrace();
 			}
 
-			for (int i = 1; i < 600000; i++) {
-				insertRow(i);
-
-				if ((i % 20000) == 0) {
-					pgTerminateBackend();
-				}
+			BatchedLoadGenerator generator = BatchedLoadGenerator.preparedBatch(this.dataSource,
+					"INSERT INTO public.eos_test(val) VALUES (?)", (statement, row) -> statement.setInt(1, (int) row));
+			generator.setWriters(this.loadWriters);
+			generator.setBatchSize(this.loadBatchSize);
+			generator.setTargetRate(this.loadRate);
+			generator.setFailureHook(20000, this::pgTerminateBackend);
+			generator.setPause(replicationSlotMonitor()::isRetentionExceeded);
+			try {
+				BatchedLoadGenerator.Result result = generator.run(1, 600000);
+				System.out.println("\nLoad generated: " + result + ", rows/s: " + (long) result.rowsPerSecond());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
 			}
 		});
 	}
 
-	private void insertRow(int i) {
-		if ((i % 1000) == 0)
-			System.out.print("*");
-
-		jdbcTemplate.update(
-				String.format("INSERT INTO public.eos_test(val) VALUES (%s) ", i));
-	}
-
 	private void pgTerminateBackend() {
 		Executors.newSingleThreadExecutor().submit(() -> {
-			System.out.println("\nMIN: " + Collections.min(valueSet));
-			System.out.println("MAX: " + Collections.max(valueSet));
-			System.out.println("Duplication Count: " + duplicationCount.getAndSet(0));
-			System.out.println("False Positive: " + falsePositiveCount.getAndSet(0));
-			System.out.println("False Negative: " + falseNegativeCount.getAndSet(0));
+			System.out.println("\nProcessed Count: " + processedCount.get());
+			long max = maxValue.get();
+			System.out.println("Value Sum: " + valueSum.get() + ", 1.." + max + " Sum: " + (max * (max + 1) / 2));
+			System.out.println("Duplication Count: " + ((batchEnabled)
+					? lsnBatchDeduplicationHandler().getDuplicateCount()
+					: lsnDeduplicationAdvice().getDuplicateCount()));
+			System.out.println(lsnFilter());
 
 			List<Map<String, Object>> result = this.jdbcTemplate.queryForList(
 					"SELECT pg_terminate_backend(pid) FROM pg_stat_activity " +
@@ -111,24 +154,13 @@ public class PostgresCdcDemoApplication implements CommandLineRunner {
 		});
 	}
 
-	private int getPayloadValue(Message<?> m) {
-		try {
-			Map<?, ?> values = mapper.readValue((byte[]) m.getPayload(), Map.class);
-			return (Integer) values.get("val");
-		}
-		catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+	private void handleValue(int value) {
+		this.valueSum.addAndGet(value);
+		this.maxValue.accumulateAndGet(value, Math::max);
 	}
 
 	private long getLsn(Message<?> m) {
-		try {
-			Map<?, ?> values = mapper.readValue((byte[]) m.getHeaders().get("__lsn"), Map.class);
-			return Long.valueOf("" + values.get("payload"));
-		}
-		catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		return LazyDebeziumHeaderMapper.getLong(m.getHeaders(), "__lsn");
 	}
 
 	@Bean
@@ -136,6 +168,16 @@ public class PostgresCdcDemoApplication implements CommandLineRunner {
 
 		// builder = builder.using(OffsetCommitPolicy.always())
 
+		// Retire the LSN filter generations already covered by the committed offsets and force the filter to disk.
+		// In batch mode the offsets are committed once per batch, after the whole batch is handled.
+		// The periodic policy requires the offset.flush.interval.ms property.
+		Properties periodic = new Properties();
+		periodic.setProperty("offset.flush.interval.ms", this.offsetFlushIntervalMs);
+		builder = builder.using(new LsnFilterOffsetCommitPolicy(
+				((this.batchEnabled) ? OffsetCommitPolicy.always() : OffsetCommitPolicy.periodic(periodic))
+						.or(replicationSlotMonitor().flushPolicy()),
+				lsnFilter()));
+
 		builder = builder.using(new DebeziumEngine.ConnectorCallback() {
 			public void taskStarted() {
 				try {
@@ -148,34 +190,86 @@ public class PostgresCdcDemoApplication implements CommandLineRunner {
 			}
 		});
 
+		// Maps only the used headers, decoded once on the first read by the de-duplication and the metrics.
 		DebeziumMessageProducerSpec dsl = Debezium.inboundChannelAdapter(builder)
-				.headerNames("*")
+				.headerMapper(new LazyDebeziumHeaderMapper("__lsn", "__op", DebeziumInboundMetrics.SOURCE_TS))
 				.contentType("application/json")
-				.enableBatch(false)
+				.enableBatch(this.batchEnabled)
 				.enableEmptyPayload(true);
 
+		if (this.batchEnabled) {
+			return IntegrationFlow.from(dsl)
+					// Drops the already seen LSNs of the whole batch and sends the rest as a single message.
+					.handle(lsnBatchDeduplicationHandler(), e -> e.advice(inboundMetrics().handlerAdvice()))
+					.handle(m -> {
+						List<?> events = (List<?>) m.getPayload();
+						long maxLsn = -1;
+						for (Object event : events) {
+							if (event instanceof ChangeEvent<?, ?> changeEvent) {
+								if (changeEvent.value() instanceof byte[] value) {
+									handleValue(VALUE_FIELD.extractInt(value));
+								}
+								maxLsn = Math.max(maxLsn, BATCH_LSN.applyAsLong(changeEvent));
+							}
+						}
+						processedCount.addAndGet(events.size());
+						// As the monitor advice does for the single events.
+						replicationSlotMonitor().recordHandled(maxLsn);
+					})
+					.get();
+		}
+
 		return IntegrationFlow.from(dsl)
 				.handle(m -> {
+					// Only the not yet seen LSNs reach the handler.
+					handleValue(VALUE_FIELD.extractInt((byte[]) m.getPayload()));
+					processedCount.incrementAndGet();
+				}, endpointSpec -> endpointSpec.advice(inboundMetrics().handlerAdvice(),
+						replicationSlotMonitor().handlerAdvice(this::getLsn), lsnDeduplicationAdvice()))
+				.get();
+	}
 
-					Long messageLsn = getLsn(m);
-					Integer messageValue = getPayloadValue(m);
+	// LSN filter with warm restarts. Its bits are in a memory-mapped file outside the java heap and the LSNs are never
+	// boxed. The 4 generations are rotated every 250000 LSNs (or 30 min) and retired and forced to disk on offset commit.
+	@Bean
+	public MappedLsnFilter lsnFilter() {
+		return new MappedLsnFilter(Path.of(this.lsnFilterFile), 4, 250000, 0.01, Layout.BLOCKED,
+				Duration.ofMinutes(30));
+	}
 
-					if (this.bloomFilter.mightContain(messageLsn)) {
-						if (valueSet.contains(messageValue)) {
-							duplicationCount.incrementAndGet();
-						}
-						else {
-							falsePositiveCount.incrementAndGet();
-						}
-					}
-					else if (valueSet.contains(messageValue)) {
-						falseNegativeCount.incrementAndGet();
-					}
-
-					valueSet.add(messageValue);
-					bloomFilter.put(messageLsn);
-				})
-				.get();
+	@Bean
+	public ReplicationSlotMonitor replicationSlotMonitor() {
+		return new ReplicationSlotMonitor(this.dataSource, this.slotName, this.slotRetentionThreshold);
+	}
+
+	// Micrometer meters of the pipeline, e.g. at /actuator/metrics/debezium.events with the web actuator.
+	@Bean
+	public DebeziumInboundMetrics inboundMetrics() {
+		DebeziumInboundMetrics metrics = new DebeziumInboundMetrics();
+		if (this.batchEnabled) {
+			LsnBatchDeduplicationHandler handler = lsnBatchDeduplicationHandler();
+			metrics.bindDeduplication(Deduplication.HIT, handler::getDuplicateCount);
+			metrics.bindDeduplication(Deduplication.FALSE_POSITIVE, handler::getFalsePositiveCount);
+			metrics.bindDeduplication(Deduplication.FALSE_NEGATIVE, handler::getFalseNegativeCount);
+		}
+		else {
+			LsnDeduplicationAdvice advice = lsnDeduplicationAdvice();
+			metrics.bindDeduplication(Deduplication.HIT, advice::getDuplicateCount);
+			metrics.bindDeduplication(Deduplication.FALSE_POSITIVE, advice::getFalsePositiveCount);
+			metrics.bindDeduplication(Deduplication.FALSE_NEGATIVE, advice::getFalseNegativeCount);
+		}
+		return metrics;
+	}
+
+	@Bean
+	public LsnDeduplicationAdvice lsnDeduplicationAdvice() {
+		// The exact window covers a filter generation, i.e. more than the events between two offset commits.
+		return new LsnDeduplicationAdvice(lsnFilter(), this::getLsn, 250000);
+	}
+
+	@Bean
+	public LsnBatchDeduplicationHandler lsnBatchDeduplicationHandler() {
+		return new LsnBatchDeduplicationHandler(lsnFilter(), BATCH_LSN, 250000);
 	}
 
 	//////////////////
@@ -49,13 +49,12 @@ public class BitSet {
     }
 
     /**
-     * Sets the bit at specified index.
+     * Sets the bit at specified index. The index is not validated on this hot path, the caller
+     * must keep it in the [0, bitSize) range. The MemorySegment access is still bounds checked.
      *
      * @param index - position
      */
     public void set(int index) {
-        Assert.isTrue(index < bitLength && index >= 0, "");
-
         int byteIndex = index >>> 3;
         byte current = memorySegment.get(offset + byteIndex);
         current |= (1 << (index & BYTE_INDEX_MASK));
@@ -63,24 +62,86 @@ public class BitSet {
     }
 
     /**
-     * Returns true if the bit is set in the specified index.
+     * Returns true if the bit is set in the specified index. The index is not validated on this
+     * hot path, the caller must keep it in the [0, bitSize) range.
      *
      * @param index - position
      * @return - value at the bit position
      */
     public boolean get(int index) {
-        Assert.isTrue(index < bitLength && index >= 0, "");
-
         int byteIndex = index >>> 3;
         byte current = memorySegment.get(offset + byteIndex);
         return (current & (1 << (index & BYTE_INDEX_MASK))) != 0;
     }
 
+    /**
+     * Returns the 64-bit word at the specified word index, in the native byte order. Note that
+     * the word bit positions match the {@link #get(int)} positions on little endian platforms only.
+     *
+     * @param wordIndex - word position, in the [0, wordSize) range
+     * @return - the word value
+     */
+    public long getWord(int wordIndex) {
+        return memorySegment.getLong(offset + (wordIndex << 3));
+    }
+
+    /**
+     * Sets the mask bits in the 64-bit word at the specified word index.
+     *
+     * @param wordIndex - word position, in the [0, wordSize) range
+     * @param mask - bits to set
+     */
+    public void orWord(int wordIndex, long mask) {
+        int index = offset + (wordIndex << 3);
+        memorySegment.putLong(index, memorySegment.getLong(index) | mask);
+    }
+
+    /**
+     * Returns the 64-bit word at the specified word index, with volatile semantics.
+     *
+     * @param wordIndex - word position, in the [0, wordSize) range
+     * @return - the word value
+     */
+    public long getWordVolatile(int wordIndex) {
+        return memorySegment.getLongVolatile(offset + (wordIndex << 3));
+    }
+
+    /**
+     * Atomically sets the mask bits in the 64-bit word at the specified word index. Concurrent
+     * callers never lose each other's bits. The BitSet offset must be 8-byte aligned.
+     *
+     * @param wordIndex - word position, in the [0, wordSize) range
+     * @param mask - bits to set
+     * @return - true if any of the mask bits was not set before
+     */
+    public boolean casOrWord(int wordIndex, long mask) {
+        int index = offset + (wordIndex << 3);
+        long current;
+        do {
+            current = memorySegment.getLongVolatile(index);
+            if ((current & mask) == mask) {
+                return false;
+            }
+        }
+        while (!memorySegment.compareAndSwapLong(index, current, current | mask));
+        return true;
+    }
+
+    /** Returns true if the BitSet memory is aligned for the atomic word operations. */
+    public boolean isWordAligned() {
+        return memorySegment.isAligned(offset, 8);
+    }
+
     /** Number of bits */
     public int bitSize() {
         return bitLength;
     }
 
+    /** Number of whole 64-bit words */
+    public int wordSize() {
+        return byteLength >>> 3;
+    }
+
     /** Clear the bit set. */
     public void clear() {
         int index = 0;
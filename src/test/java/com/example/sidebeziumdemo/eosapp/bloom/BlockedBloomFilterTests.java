@@ -0,0 +1,62 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.bloom;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+public class BlockedBloomFilterTests {
+
+	@Test
+	public void noFalseNegativesAndBoundedFpp() {
+		int entries = 200000;
+		int byteSize = BlockedBloomFilter.alignedByteSize(BloomFilter.optimalNumOfBits(entries, 0.01) / 8);
+
+		MemorySegment segment = MemorySegmentFactory.allocateUnpooledOffHeapMemory(byteSize);
+		BlockedBloomFilter bloomFilter = new BlockedBloomFilter(entries, byteSize);
+		bloomFilter.setBitsLocation(segment, 0);
+		bloomFilter.reset();
+
+		for (long key = 0; key < entries; key++) {
+			bloomFilter.addHash(Murmur3.hash64(key));
+		}
+		for (long key = 0; key < entries; key++) {
+			assertThat(bloomFilter.testHash(Murmur3.hash64(key))).isTrue();
+		}
+
+		int falsePositives = 0;
+		for (long key = entries; key < 2 * entries; key++) {
+			if (bloomFilter.testHash(Murmur3.hash64(key))) {
+				falsePositives++;
+			}
+		}
+		// ~1% for the standard layout, the blocked one is expected to be a bit worse.
+		assertThat(falsePositives).isLessThan(entries / 50);
+
+		bloomFilter.reset();
+		assertThat(bloomFilter.testHash(Murmur3.hash64(0L))).isFalse();
+	}
+
+	@Test
+	public void byteSizeMustBeBlockAligned() {
+		assertThatIllegalArgumentException().isThrownBy(() -> new BlockedBloomFilter(100, 100));
+		assertThat(BlockedBloomFilter.alignedByteSize(100)).isEqualTo(128);
+	}
+
+}
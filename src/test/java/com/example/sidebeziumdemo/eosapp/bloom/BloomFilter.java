@@ -127,6 +127,51 @@ public class BloomFilter {
         return true;
     }
 
+    /**
+     * Adds a 64-bit hash. The lower and the upper 32 bits are used as the two independent hashes
+     * of the double hashing scheme, so primitive keys (e.g. LSNs) never need to be boxed.
+     *
+     * @param hash64 well mixed 64-bit hash of the key
+     */
+    public void addHash(long hash64) {
+        int hash1 = (int) hash64;
+        int hash2 = (int) (hash64 >>> 32);
+
+        for (int i = 1; i <= numHashFunctions; i++) {
+            int combinedHash = hash1 + (i * hash2);
+            // hashcode should be positive, flip all the bits if it's negative
+            if (combinedHash < 0) {
+                combinedHash = ~combinedHash;
+            }
+            int pos = combinedHash % bitSet.bitSize();
+            bitSet.set(pos);
+        }
+    }
+
+    /**
+     * Tests a 64-bit hash previously added with {@link #addHash(long)}.
+     *
+     * @param hash64 well mixed 64-bit hash of the key
+     * @return false if the key is definitely not in the filter, true if it might be.
+     */
+    public boolean testHash(long hash64) {
+        int hash1 = (int) hash64;
+        int hash2 = (int) (hash64 >>> 32);
+
+        for (int i = 1; i <= numHashFunctions; i++) {
+            int combinedHash = hash1 + (i * hash2);
+            // hashcode should be positive, flip all the bits if it's negative
+            if (combinedHash < 0) {
+                combinedHash = ~combinedHash;
+            }
+            int pos = combinedHash % bitSet.bitSize();
+            if (!bitSet.get(pos)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void reset() {
         this.bitSet.clear();
     }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.bloom;
+
+import org.springframework.util.Assert;
+
+/**
+ * Thread-safe variant of the {@link BloomFilter}. The bits are set with a lock-free compare-and-swap
+ * on the 64-bit words of the {@link MemorySegment} and read with volatile semantics, so the
+ * concurrent {@link #addHash(long)} calls never lose each other's bits and the filter never
+ * returns false negatives.
+ *
+ * <p>Note that the filter is still not a set: two threads adding the same key at the same time can
+ * both observe it as new (see {@link #putHash(long)}).
+ *
+ * <p>The bit positions are computed as in the {@link BloomFilter}, but are addressed as word
+ * bits. Do not share the same memory between concurrent and non-concurrent filter instances.
+ */
+public class ConcurrentBloomFilter extends BloomFilter {
+
+    /**
+     * @param expectedEntries expected number of entries
+     * @param byteSize bit set size in bytes, must be a multiple of 8
+     */
+    public ConcurrentBloomFilter(int expectedEntries, int byteSize) {
+        super(expectedEntries, byteSize);
+        Assert.isTrue(byteSize % 8 == 0, "byteSize should be a multiple of 8 bytes.");
+    }
+
+    @Override
+    public void setBitsLocation(MemorySegment memorySegment, int offset) {
+        super.setBitsLocation(memorySegment, offset);
+        Assert.isTrue(bitSet.isWordAligned(), "The bits location should be 8-byte aligned.");
+    }
+
+    @Override
+    public void addHash(int hash32) {
+        putHash(hash32, hash32 >>> 16);
+    }
+
+    @Override
+    public boolean testHash(int hash32) {
+        return testHash(hash32, hash32 >>> 16);
+    }
+
+    @Override
+    public void addHash(long hash64) {
+        putHash(hash64);
+    }
+
+    @Override
+    public boolean testHash(long hash64) {
+        return testHash((int) hash64, (int) (hash64 >>> 32));
+    }
+
+    /**
+     * Atomically adds a 64-bit hash.
+     *
+     * @param hash64 well mixed 64-bit hash of the key
+     * @return true if any of the key bits was not set before, e.g. the key was definitely new.
+     */
+    public boolean putHash(long hash64) {
+        return putHash((int) hash64, (int) (hash64 >>> 32));
+    }
+
+    private boolean putHash(int hash1, int hash2) {
+        boolean changed = false;
+        for (int i = 1; i <= numHashFunctions; i++) {
+            int combinedHash = hash1 + (i * hash2);
+            // hashcode should be positive, flip all the bits if it's negative
+            if (combinedHash < 0) {
+                combinedHash = ~combinedHash;
+            }
+            int pos = combinedHash % bitSet.bitSize();
+            changed |= bitSet.casOrWord(pos >>> 6, 1L << pos);
+        }
+        return changed;
+    }
+
+    private boolean testHash(int hash1, int hash2) {
+        for (int i = 1; i <= numHashFunctions; i++) {
+            int combinedHash = hash1 + (i * hash2);
+            // hashcode should be positive, flip all the bits if it's negative
+            if (combinedHash < 0) {
+                combinedHash = ~combinedHash;
+            }
+            int pos = combinedHash % bitSet.bitSize();
+            if ((bitSet.getWordVolatile(pos >>> 6) & (1L << pos)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Concurrent" + super.toString();
+    }
+}
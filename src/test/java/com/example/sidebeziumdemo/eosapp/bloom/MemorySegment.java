@@ -1037,6 +1037,65 @@ public final class MemorySegment {
 		}
 	}
 
+	/**
+	 * Reads a long value (64bit, 8 bytes) from the given position, in the system's native byte order, with volatile
+	 * semantics. The position should be 8-byte aligned (see {@link #isAligned(int, int)}).
+	 *
+	 * @param index The position from which the value will be read.
+	 * @return The long value at the given position.
+	 * @throws IndexOutOfBoundsException Thrown, if the index is negative, or larger than the segment size minus 8.
+	 */
+	public long getLongVolatile(int index) {
+		final long pos = address + index;
+		if (index >= 0 && pos <= addressLimit - 8) {
+			return UNSAFE.getLongVolatile(heapMemory, pos);
+		}
+		else if (address > addressLimit) {
+			throw new IllegalStateException("segment has been freed");
+		}
+		else {
+			// index is in fact invalid
+			throw new IndexOutOfBoundsException();
+		}
+	}
+
+	/**
+	 * Atomically sets the long value (64bit, 8 bytes) at the given position to the given value, if the current value
+	 * equals the expected one. The position must be 8-byte aligned (see {@link #isAligned(int, int)}), otherwise the
+	 * operation is not guaranteed to be atomic and may fail on some platforms.
+	 *
+	 * @param index The position of the value.
+	 * @param expected The expected current value.
+	 * @param value The new value.
+	 * @return <tt>true</tt> if successful, <tt>false</tt> if the current value was not equal to the expected one.
+	 * @throws IndexOutOfBoundsException Thrown, if the index is negative, or larger than the segment size minus 8.
+	 */
+	public boolean compareAndSwapLong(int index, long expected, long value) {
+		final long pos = address + index;
+		if (index >= 0 && pos <= addressLimit - 8) {
+			return UNSAFE.compareAndSwapLong(heapMemory, pos, expected, value);
+		}
+		else if (address > addressLimit) {
+			throw new IllegalStateException("segment has been freed");
+		}
+		else {
+			// index is in fact invalid
+			throw new IndexOutOfBoundsException();
+		}
+	}
+
+	/**
+	 * Checks whether the given position is aligned to the given power of two boundary. For heap segments the alignment
+	 * is relative to the byte array object, which is 8-byte aligned by the JVM.
+	 *
+	 * @param index The position to check.
+	 * @param alignment The power of two alignment, in bytes.
+	 * @return <tt>true</tt> if the position is aligned.
+	 */
+	public boolean isAligned(int index, int alignment) {
+		return ((address + index) & (alignment - 1)) == 0;
+	}
+
 	/**
 	 * Reads a single-precision floating point value (32bit, 4 bytes) from the given position, in the system's native
 	 * byte order. This method offers the best speed for float reading and should be used unless a specific byte order
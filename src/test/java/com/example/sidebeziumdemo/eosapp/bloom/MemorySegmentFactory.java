@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.bloom;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nullable;
+
+import org.springframework.util.Assert;
+
+/**
+ * A factory for memory segments ({@link MemorySegment}).
+ *
+ * <p>
+ * The factory is the only way to create segments outside of the <tt>bloom</tt> package, as the
+ * {@link MemorySegment} constructors are package private.
+ */
+public final class MemorySegmentFactory {
+
+	/**
+	 * Creates a new memory segment that targets the given heap memory region.
+	 *
+	 * @param buffer The heap memory region.
+	 * @return A new memory segment that targets the given heap memory region.
+	 */
+	public static MemorySegment wrap(byte[] buffer) {
+		return new MemorySegment(buffer, null);
+	}
+
+	/**
+	 * Allocates some unpooled memory and creates a new memory segment that represents that memory.
+	 *
+	 * @param size The size of the memory segment to allocate.
+	 * @return A new memory segment, backed by unpooled heap memory.
+	 */
+	public static MemorySegment allocateUnpooledSegment(int size) {
+		return new MemorySegment(new byte[size], null);
+	}
+
+	/**
+	 * Allocates some unpooled off-heap memory and creates a new memory segment that represents that memory. The memory
+	 * is released when the segment (and the backing direct buffer) is garbage collected.
+	 *
+	 * @param size The size of the off-heap memory segment to allocate.
+	 * @return A new memory segment, backed by unpooled off-heap memory.
+	 */
+	public static MemorySegment allocateUnpooledOffHeapMemory(int size) {
+		return new MemorySegment(ByteBuffer.allocateDirect(size), null);
+	}
+
+	/**
+	 * Allocates an off-heap unsafe memory and creates a new memory segment to represent that memory. The memory is
+	 * released explicitly on {@link MemorySegment#free()}, it is not tracked by the garbage collector.
+	 *
+	 * @param size The size of the off-heap unsafe memory segment to allocate.
+	 * @param owner The owner to associate with the off-heap unsafe memory segment.
+	 * @param customCleanupAction A custom action to run after the memory is released.
+	 * @return A new memory segment, backed by off-heap unsafe memory.
+	 */
+	public static MemorySegment allocateOffHeapUnsafeMemory(int size, @Nullable Object owner,
+			Runnable customCleanupAction) {
+		Assert.notNull(customCleanupAction, "customCleanupAction can not be null.");
+		long address = MemoryUtils.allocateUnsafe(size);
+		ByteBuffer offHeapBuffer = MemoryUtils.wrapUnsafeMemoryWithByteBuffer(address, size);
+		Runnable cleaner = MemoryUtils.createMemoryCleaner(address, customCleanupAction);
+		return new MemorySegment(offHeapBuffer, owner, false, cleaner);
+	}
+
+	/**
+	 * Creates a memory segment that wraps the off-heap memory backing the given direct (or memory mapped)
+	 * {@link ByteBuffer}. The buffer memory is not released on {@link MemorySegment#free()}.
+	 *
+	 * @param memory The direct byte buffer to wrap.
+	 * @return A new memory segment representing the given off-heap memory.
+	 */
+	public static MemorySegment wrapOffHeapMemory(ByteBuffer memory) {
+		return new MemorySegment(memory, null);
+	}
+
+	/** Should not be instantiated. */
+	private MemorySegmentFactory() {
+	}
+
+}
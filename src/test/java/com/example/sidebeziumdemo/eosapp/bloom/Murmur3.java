@@ -0,0 +1,147 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.bloom;
+
+/**
+ * Allocation free, 64-bit variant of the Murmur3 hash (the first half of the x64 128-bit variant body, with the 64-bit
+ * finalizer). Provides a primitive long overload so that numeric keys never go through byte arrays.
+ *
+ * <p>Part of this class refers to the implementation from Apache Hive project
+ * https://github.com/apache/hive/blob/master/storage-api/src/java/org/apache/hive/common/util/Murmur3.java
+ */
+public final class Murmur3 {
+
+	public static final int DEFAULT_SEED = 104729;
+
+	private static final long C1 = 0x87c37b91114253d5L;
+
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private static final int R1 = 31;
+
+	private static final int R2 = 27;
+
+	private static final int M = 5;
+
+	private static final int N1 = 0x52dce729;
+
+	/**
+	 * Murmur3 64-bit hash of the 8 bytes (little endian) of the given long.
+	 *
+	 * @param data the key to hash
+	 * @return 64-bit hash
+	 */
+	public static long hash64(long data) {
+		long hash = DEFAULT_SEED;
+		long k = data;
+
+		k *= C1;
+		k = Long.rotateLeft(k, R1);
+		k *= C2;
+		hash ^= k;
+		hash = Long.rotateLeft(hash, R2) * M + N1;
+
+		hash ^= Long.BYTES;
+		return fmix64(hash);
+	}
+
+	/**
+	 * Murmur3 64-bit hash of the given byte array.
+	 *
+	 * @param data the bytes to hash
+	 * @return 64-bit hash
+	 */
+	public static long hash64(byte[] data) {
+		return hash64(data, 0, data.length, DEFAULT_SEED);
+	}
+
+	/**
+	 * Murmur3 64-bit hash of a byte array region.
+	 *
+	 * @param data the bytes to hash
+	 * @param offset offset of the first byte to hash
+	 * @param length number of bytes to hash
+	 * @param seed hash seed
+	 * @return 64-bit hash
+	 */
+	@SuppressWarnings("fallthrough")
+	public static long hash64(byte[] data, int offset, int length, int seed) {
+		long hash = seed;
+		final int nblocks = length >> 3;
+
+		// body
+		for (int i = 0; i < nblocks; i++) {
+			final int i8 = offset + (i << 3);
+			long k = ((long) data[i8] & 0xff)
+					| (((long) data[i8 + 1] & 0xff) << 8)
+					| (((long) data[i8 + 2] & 0xff) << 16)
+					| (((long) data[i8 + 3] & 0xff) << 24)
+					| (((long) data[i8 + 4] & 0xff) << 32)
+					| (((long) data[i8 + 5] & 0xff) << 40)
+					| (((long) data[i8 + 6] & 0xff) << 48)
+					| (((long) data[i8 + 7] & 0xff) << 56);
+
+			k *= C1;
+			k = Long.rotateLeft(k, R1);
+			k *= C2;
+			hash ^= k;
+			hash = Long.rotateLeft(hash, R2) * M + N1;
+		}
+
+		// tail
+		long k1 = 0;
+		int tailStart = offset + (nblocks << 3);
+		switch (length - (nblocks << 3)) {
+			case 7:
+				k1 ^= ((long) data[tailStart + 6] & 0xff) << 48;
+			case 6:
+				k1 ^= ((long) data[tailStart + 5] & 0xff) << 40;
+			case 5:
+				k1 ^= ((long) data[tailStart + 4] & 0xff) << 32;
+			case 4:
+				k1 ^= ((long) data[tailStart + 3] & 0xff) << 24;
+			case 3:
+				k1 ^= ((long) data[tailStart + 2] & 0xff) << 16;
+			case 2:
+				k1 ^= ((long) data[tailStart + 1] & 0xff) << 8;
+			case 1:
+				k1 ^= ((long) data[tailStart] & 0xff);
+				k1 *= C1;
+				k1 = Long.rotateLeft(k1, R1);
+				k1 *= C2;
+				hash ^= k1;
+		}
+
+		// finalization
+		hash ^= length;
+		return fmix64(hash);
+	}
+
+	private static long fmix64(long h) {
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+		return h;
+	}
+
+	/** Should not be instantiated. */
+	private Murmur3() {
+	}
+
+}
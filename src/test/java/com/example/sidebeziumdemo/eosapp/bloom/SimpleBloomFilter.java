@@ -25,21 +25,44 @@ import java.security.NoSuchAlgorithmException;
 /**
  * From https://medium.com/@abhishekranjandev/demystifying-bloom-filters-with-real-life-examples-b66db7e37b37
  * BloomFilterSimple.java
+ * <p>
+ * The default {@link HashMode#MURMUR3} mode computes a single 64-bit Murmur3 hash per key and derives the k bit
+ * positions with double hashing, without any allocation. The original {@link HashMode#MD5} mode, computing an MD5
+ * digest per hash function, is kept for comparison.
+ *
  * @author Christian Tzolov
  */
 public class SimpleBloomFilter {
+
+	public enum HashMode {
+		/** One MD5 digest per hash function. Allocates on every call. */
+		MD5,
+		/** One 64-bit Murmur3 hash per key, k positions by double hashing. Allocation free. */
+		MURMUR3
+	}
+
 	private BitSet bitSet;
 	private int bitSetSize;
 	private int numOfHashFunctions;
+	private HashMode hashMode;
 
 	public SimpleBloomFilter(int size, int numOfHashFunctions) {
+		this(size, numOfHashFunctions, HashMode.MURMUR3);
+	}
+
+	public SimpleBloomFilter(int size, int numOfHashFunctions, HashMode hashMode) {
 		this.bitSetSize = size;
 		this.numOfHashFunctions = numOfHashFunctions;
+		this.hashMode = hashMode;
 		this.bitSet = new BitSet(bitSetSize);
 	}
 
 	// Add element to Bloom Filter
 	public void put(byte[] value) {
+		if (hashMode == HashMode.MURMUR3) {
+			putHash(Murmur3.hash64(value));
+			return;
+		}
 		for (int i = 0; i < numOfHashFunctions; i++) {
 			int hashCode = getHash(value, i);
 			bitSet.set(Math.abs(hashCode % bitSetSize));
@@ -47,11 +70,26 @@ public class SimpleBloomFilter {
 	}
 
 	public void put(int value) {
+		if (hashMode == HashMode.MURMUR3) {
+			putHash(Murmur3.hash64(value));
+			return;
+		}
 		put(intToBytes(value));
 	}
 
+	public void put(long value) {
+		if (hashMode == HashMode.MURMUR3) {
+			putHash(Murmur3.hash64(value));
+			return;
+		}
+		put(longToBytes(value));
+	}
+
 	// Check if element is present in Bloom Filter
 	public boolean mightContain(byte[] value) {
+		if (hashMode == HashMode.MURMUR3) {
+			return testHash(Murmur3.hash64(value));
+		}
 		for (int i = 0; i < numOfHashFunctions; i++) {
 			int hashCode = getHash(value, i);
 			if (!bitSet.get(Math.abs(hashCode % bitSetSize))) {
@@ -62,9 +100,43 @@ public class SimpleBloomFilter {
 	}
 
 	public boolean mightContain(int value) {
+		if (hashMode == HashMode.MURMUR3) {
+			return testHash(Murmur3.hash64(value));
+		}
 		return mightContain(intToBytes(value));
 	}
 
+	public boolean mightContain(long value) {
+		if (hashMode == HashMode.MURMUR3) {
+			return testHash(Murmur3.hash64(value));
+		}
+		return mightContain(longToBytes(value));
+	}
+
+	// Double hashing (Kirsch-Mitzenmacher): the i-th position is h1 + i * h2.
+	private void putHash(long hash64) {
+		long hash1 = hash64;
+		long hash2 = hash64 >>> 32 | hash64 << 32;
+		long combinedHash = hash1;
+		for (int i = 0; i < numOfHashFunctions; i++) {
+			bitSet.set((int) ((combinedHash & Long.MAX_VALUE) % bitSetSize));
+			combinedHash += hash2;
+		}
+	}
+
+	private boolean testHash(long hash64) {
+		long hash1 = hash64;
+		long hash2 = hash64 >>> 32 | hash64 << 32;
+		long combinedHash = hash1;
+		for (int i = 0; i < numOfHashFunctions; i++) {
+			if (!bitSet.get((int) ((combinedHash & Long.MAX_VALUE) % bitSetSize))) {
+				return false;
+			}
+			combinedHash += hash2;
+		}
+		return true;
+	}
+
 	// Computes the i-th hash function for the given URL
 	private int getHash(byte[] value, int i) {
 		try {
@@ -87,6 +159,12 @@ public class SimpleBloomFilter {
 		return bb.array();
 	}
 
+	public static byte[] longToBytes(final long l) {
+		ByteBuffer bb = ByteBuffer.allocate(8);
+		bb.putLong(l);
+		return bb.array();
+	}
+
 	public static void main(String[] args) throws NoSuchAlgorithmException {
 		SimpleBloomFilter bloomFilter = new SimpleBloomFilter(1000000, 3);
 
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.bloom;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.example.sidebeziumdemo.eosapp.bloom.SimpleBloomFilter.HashMode;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SimpleBloomFilterTests {
+
+	@Test
+	public void longHashMatchesLittleEndianBytes() {
+		for (long value : new long[] { 0, 1, -1, 23847623L, Long.MAX_VALUE, Long.MIN_VALUE }) {
+			byte[] bytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(value).array();
+			assertThat(Murmur3.hash64(value)).isEqualTo(Murmur3.hash64(bytes));
+		}
+	}
+
+	@Test
+	public void murmur3Mode() {
+		SimpleBloomFilter bloomFilter = new SimpleBloomFilter(1000000, 7, HashMode.MURMUR3);
+		verifyFilter(bloomFilter);
+	}
+
+	@Test
+	public void md5Mode() {
+		SimpleBloomFilter bloomFilter = new SimpleBloomFilter(1000000, 7, HashMode.MD5);
+		verifyFilter(bloomFilter);
+	}
+
+	private void verifyFilter(SimpleBloomFilter bloomFilter) {
+		for (long lsn = 0; lsn < 50000; lsn++) {
+			bloomFilter.put(lsn);
+		}
+		bloomFilter.put("http://example1.com".getBytes());
+
+		for (long lsn = 0; lsn < 50000; lsn++) {
+			assertThat(bloomFilter.mightContain(lsn)).isTrue();
+		}
+		assertThat(bloomFilter.mightContain("http://example1.com".getBytes())).isTrue();
+
+		int falsePositives = 0;
+		for (long lsn = 50000; lsn < 100000; lsn++) {
+			if (bloomFilter.mightContain(lsn)) {
+				falsePositives++;
+			}
+		}
+		// 7 hashes, 20 bits per entry: ~0.1% expected.
+		assertThat(falsePositives).isLessThan(250);
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+/**
+ * Exact record of the recently handled LSNs, used to confirm the {@link LsnFilter} matches before an event is dropped
+ * as a duplicate. A probabilistic filter match of a not yet handled LSN (a false positive) would otherwise lose a new
+ * event.
+ * <p>
+ * The LSNs are kept in a bounded {@link LongHashSet}, so the window covers the LSNs above both its evicted watermark
+ * and the lowest LSN added since the start. Below it a filter match can not be confirmed and is trusted (see
+ * {@link Outcome#UNCONFIRMED}), e.g. for the events replayed after a restart and matched by a persistent filter. Size
+ * the window to cover the events handled between two offset commits, as only those are replayed.
+ * <p>
+ * The window is thread-safe.
+ */
+public class ExactLsnWindow {
+
+	/**
+	 * Outcome of the dedup check of a single LSN.
+	 */
+	public enum Outcome {
+
+		/** Not seen: the filter does not match and the LSN is not in the window. */
+		NEW,
+
+		/** Confirmed duplicate: the filter matches and the LSN is in the window. */
+		DUPLICATE,
+
+		/** The filter matches a LSN that is not in the window, while the window covers it: a new event. */
+		FALSE_POSITIVE,
+
+		/** The LSN is in the window but the filter does not match it, e.g. retired too early: a duplicate. */
+		FALSE_NEGATIVE,
+
+		/** The filter matches a LSN below the window, so the match can not be confirmed: treated as a duplicate. */
+		UNCONFIRMED;
+
+		/**
+		 * @return true if the event should be dropped.
+		 */
+		public boolean isDuplicate() {
+			return this == DUPLICATE || this == FALSE_NEGATIVE || this == UNCONFIRMED;
+		}
+
+	}
+
+	private final LongHashSet lsns;
+
+	private long lowestLsn = Long.MAX_VALUE;
+
+	/**
+	 * @param capacity number of the most recent LSNs kept.
+	 */
+	public ExactLsnWindow(int capacity) {
+		this.lsns = new LongHashSet(capacity);
+	}
+
+	/**
+	 * @param lsn the LSN to check.
+	 * @param filterMatch the {@link LsnFilter#mightContain(long)} result for the LSN.
+	 * @return the dedup outcome.
+	 */
+	public synchronized Outcome check(long lsn, boolean filterMatch) {
+		if (this.lsns.contains(lsn)) {
+			return (filterMatch) ? Outcome.DUPLICATE : Outcome.FALSE_NEGATIVE;
+		}
+		if (!filterMatch) {
+			return Outcome.NEW;
+		}
+		return (covers(lsn)) ? Outcome.FALSE_POSITIVE : Outcome.UNCONFIRMED;
+	}
+
+	/**
+	 * Records the handled LSN.
+	 * @param lsn the LSN to add.
+	 */
+	public synchronized void add(long lsn) {
+		this.lsns.add(lsn);
+		this.lowestLsn = Math.min(this.lowestLsn, lsn);
+	}
+
+	/**
+	 * Bulk {@link #add(long)}.
+	 * @param lsns the LSNs to add.
+	 * @param length number of the LSNs to add, from the start of the array.
+	 */
+	public synchronized void add(long[] lsns, int length) {
+		for (int i = 0; i < length; i++) {
+			add(lsns[i]);
+		}
+	}
+
+	private boolean covers(long lsn) {
+		return lsn >= this.lowestLsn && lsn > this.lsns.getEvictedWatermark();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ExactLsnWindow: " + this.lsns + ", lowestLsn=" + this.lowestLsn;
+	}
+
+}
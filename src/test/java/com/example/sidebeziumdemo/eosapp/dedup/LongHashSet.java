@@ -0,0 +1,188 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import org.springframework.util.Assert;
+
+/**
+ * Bounded set of primitive longs. Open addressing with linear probing over a power of two table, kept at most half
+ * full. The keys are neither boxed nor wrapped in map nodes, so adding a key does not allocate.
+ * <p>
+ * When the set reaches its capacity the oldest inserted key is evicted. For a stream of CDC positions the insertion
+ * order is the position order, so the evicted keys are the ones below the replay window. The highest evicted key is
+ * tracked as the evicted watermark (see {@link #getEvictedWatermark()}).
+ * <p>
+ * The set is not thread-safe.
+ */
+public class LongHashSet {
+
+	private static final long EMPTY = 0L;
+
+	private final long[] keys;
+
+	private final int mask;
+
+	private final int shift;
+
+	/** Insertion order ring used for the eviction. */
+	private final long[] insertionOrder;
+
+	private int oldest = 0;
+
+	private int size = 0;
+
+	/** The EMPTY marker value is a valid key, tracked out of the table. */
+	private boolean containsEmptyKey = false;
+
+	private long evictedWatermark = Long.MIN_VALUE;
+
+	private long evictions = 0;
+
+	/**
+	 * @param capacity maximum number of the keys kept.
+	 */
+	public LongHashSet(int capacity) {
+		Assert.isTrue(capacity > 0 && capacity <= (1 << 29), "The capacity must be in the (0, 2^29] range.");
+		int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+		this.keys = new long[tableSize];
+		this.mask = tableSize - 1;
+		this.shift = 64 - Integer.numberOfTrailingZeros(tableSize);
+		this.insertionOrder = new long[capacity];
+	}
+
+	/**
+	 * @param key the key to add.
+	 * @return true if the key was not present.
+	 */
+	public boolean add(long key) {
+		if (contains(key)) {
+			return false;
+		}
+		if (this.size == this.insertionOrder.length) {
+			long evicted = this.insertionOrder[this.oldest];
+			remove(evicted);
+			this.evictedWatermark = Math.max(this.evictedWatermark, evicted);
+			this.evictions++;
+			this.oldest = next(this.oldest);
+		}
+
+		if (key == EMPTY) {
+			this.containsEmptyKey = true;
+		}
+		else {
+			int slot = slot(key);
+			while (this.keys[slot] != EMPTY) {
+				slot = (slot + 1) & this.mask;
+			}
+			this.keys[slot] = key;
+		}
+
+		int newest = this.oldest + this.size;
+		this.insertionOrder[(newest >= this.insertionOrder.length) ? newest - this.insertionOrder.length : newest] = key;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * @param key the key to look for.
+	 * @return true if the key is present.
+	 */
+	public boolean contains(long key) {
+		if (key == EMPTY) {
+			return this.containsEmptyKey;
+		}
+		int slot = slot(key);
+		long current;
+		while ((current = this.keys[slot]) != EMPTY) {
+			if (current == key) {
+				return true;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		return false;
+	}
+
+	/**
+	 * @return Number of the keys in the set.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return The highest key evicted so far or {@link Long#MIN_VALUE} if none.
+	 */
+	public long getEvictedWatermark() {
+		return this.evictedWatermark;
+	}
+
+	/**
+	 * @return Number of the keys evicted so far.
+	 */
+	public long getEvictions() {
+		return this.evictions;
+	}
+
+	/**
+	 * Removes the key from the table only, the eviction ring is maintained by the caller. Uses the backward shift
+	 * deletion so that the probe sequences stay contiguous without tombstones.
+	 */
+	private void remove(long key) {
+		this.size--;
+		if (key == EMPTY) {
+			this.containsEmptyKey = false;
+			return;
+		}
+		int hole = slot(key);
+		while (this.keys[hole] != key) {
+			hole = (hole + 1) & this.mask;
+		}
+		int slot = hole;
+		while (true) {
+			slot = (slot + 1) & this.mask;
+			long current = this.keys[slot];
+			if (current == EMPTY) {
+				break;
+			}
+			int ideal = slot(current);
+			// Move the key back if its ideal slot is not within (hole, slot], cyclically.
+			if (((slot - ideal) & this.mask) >= ((slot - hole) & this.mask)) {
+				this.keys[hole] = current;
+				hole = slot;
+			}
+		}
+		this.keys[hole] = EMPTY;
+	}
+
+	/**
+	 * Fibonacci hashing: the upper bits of the key multiplied by the 64 bit golden ratio.
+	 */
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> this.shift);
+	}
+
+	private int next(int index) {
+		return (index + 1 == this.insertionOrder.length) ? 0 : index + 1;
+	}
+
+	@Override
+	public String toString() {
+		return "LongHashSet: size=" + this.size + "/" + this.insertionOrder.length + ", evictions=" + this.evictions
+				+ ", evictedWatermark=" + this.evictedWatermark;
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LongHashSetTests {
+
+	@Test
+	public void addAndContains() {
+		LongHashSet set = new LongHashSet(1000);
+		Set<Long> expected = new HashSet<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			long key = (i % 10 == 0) ? i : random.nextLong();
+			assertThat(set.add(key)).isEqualTo(expected.add(key));
+		}
+		assertThat(set.add(0)).isFalse();
+		for (long key : expected) {
+			assertThat(set.contains(key)).isTrue();
+		}
+		assertThat(set.size()).isEqualTo(expected.size());
+		assertThat(set.getEvictions()).isZero();
+	}
+
+	@Test
+	public void evictOldest() {
+		LongHashSet set = new LongHashSet(100);
+		for (long key = 0; key < 1000; key++) {
+			assertThat(set.add(key)).isTrue();
+		}
+		assertThat(set.size()).isEqualTo(100);
+		assertThat(set.getEvictions()).isEqualTo(900);
+		assertThat(set.getEvictedWatermark()).isEqualTo(899);
+		for (long key = 0; key < 900; key++) {
+			assertThat(set.contains(key)).isFalse();
+		}
+		for (long key = 900; key < 1000; key++) {
+			assertThat(set.contains(key)).isTrue();
+		}
+	}
+
+	@Test
+	public void selectorRejectsReplayedLsns() {
+		LsnMessageSelector selector = new LsnMessageSelector(m -> (Long) m.getPayload(), 10);
+		selector.setRejectBelowEvictedWatermark(true);
+		for (long lsn = 1; lsn <= 100; lsn++) {
+			assertThat(selector.accept(MessageBuilder.withPayload(lsn).build())).isTrue();
+		}
+		for (long lsn = 1; lsn <= 100; lsn++) {
+			assertThat(selector.accept(MessageBuilder.withPayload(lsn).build())).isFalse();
+		}
+		assertThat(selector.accept(MessageBuilder.withPayload(101L).build())).isTrue();
+	}
+
+}
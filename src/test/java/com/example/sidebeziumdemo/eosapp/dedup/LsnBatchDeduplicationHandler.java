@@ -0,0 +1,262 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+import com.example.sidebeziumdemo.support.JsonFieldExtractor;
+import io.debezium.engine.ChangeEvent;
+import io.debezium.engine.Header;
+
+import org.springframework.integration.handler.AbstractMessageProducingHandler;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * Deduplicates the batches produced by the Debezium inbound channel adapter in batch mode
+ * ({@code enableBatch(true)}), where the message payload is the {@code List<ChangeEvent>} handed over by the engine.
+ * <p>
+ * The LSNs of the whole batch are extracted into a primitive array and probed against the {@link LsnFilter} in a single
+ * loop, and the filter matches are confirmed against an {@link ExactLsnWindow} (see {@link LsnDeduplicationAdvice}).
+ * The duplicates within the batch are detected on a sorted copy of the LSNs, skipped when the batch is already
+ * in the LSN order. The not yet seen events are sent downstream as a single batch message, with the request headers.
+ * Their LSNs are recorded only after the downstream send completes successfully, so with a direct output channel a
+ * failed batch is re-delivered on replay.
+ * <p>
+ * The engine list itself is never modified, as the adapter marks its records as processed after the send. The handler
+ * is meant to be called from the single Debezium engine thread.
+ */
+public class LsnBatchDeduplicationHandler extends AbstractMessageProducingHandler {
+
+	private final LsnFilter lsnFilter;
+
+	private final ToLongFunction<ChangeEvent<?, ?>> lsnExtractor;
+
+	private final ExactLsnWindow window;
+
+	private long[] lsns = new long[0];
+
+	private long[] sortedLsns = new long[0];
+
+	private boolean[] seen = new boolean[0];
+
+	private final AtomicLong batchCount = new AtomicLong(0);
+
+	private final AtomicLong eventCount = new AtomicLong(0);
+
+	private final AtomicLong duplicateCount = new AtomicLong(0);
+
+	private final AtomicLong falsePositiveCount = new AtomicLong(0);
+
+	private final AtomicLong falseNegativeCount = new AtomicLong(0);
+
+	/**
+	 * @param lsnFilter filter used to keep track of the processed LSNs.
+	 * @param lsnExtractor extracts the LSN from the change event.
+	 * @param windowCapacity number of the recent LSNs kept exactly to confirm the filter matches.
+	 */
+	public LsnBatchDeduplicationHandler(LsnFilter lsnFilter, ToLongFunction<ChangeEvent<?, ?>> lsnExtractor,
+			int windowCapacity) {
+
+		Assert.notNull(lsnFilter, "The lsnFilter can not be null.");
+		Assert.notNull(lsnExtractor, "The lsnExtractor can not be null.");
+		this.lsnFilter = lsnFilter;
+		this.lsnExtractor = lsnExtractor;
+		this.window = new ExactLsnWindow(windowCapacity);
+	}
+
+	/**
+	 * @param headerName the change event header holding the LSN in the {@code {"payload":...}} envelope, e.g.
+	 * {@code __lsn}.
+	 * @return LSN extractor reading the header bytes in place.
+	 */
+	public static ToLongFunction<ChangeEvent<?, ?>> headerLsnExtractor(String headerName) {
+		Assert.hasText(headerName, "The headerName can not be empty.");
+		return event -> {
+			List<Header<Object>> headers = event.headers();
+			for (int i = 0; i < headers.size(); i++) {
+				Header<Object> header = headers.get(i);
+				if (headerName.equals(header.getKey())) {
+					return JsonFieldExtractor.PAYLOAD.extractLong((byte[]) header.getValue());
+				}
+			}
+			throw new IllegalArgumentException("Missing [" + headerName + "] header.");
+		};
+	}
+
+	/**
+	 * @return Number of the batches handled so far.
+	 */
+	public long getBatchCount() {
+		return this.batchCount.get();
+	}
+
+	/**
+	 * @return Number of the change events handled so far, duplicates included.
+	 */
+	public long getEventCount() {
+		return this.eventCount.get();
+	}
+
+	/**
+	 * @return Number of the change events dropped as duplicates so far.
+	 */
+	public long getDuplicateCount() {
+		return this.duplicateCount.get();
+	}
+
+	/**
+	 * @return Number of the filter matches not confirmed by the exact window, sent downstream as new events.
+	 */
+	public long getFalsePositiveCount() {
+		return this.falsePositiveCount.get();
+	}
+
+	/**
+	 * @return Number of the duplicates found in the exact window but missed by the filter.
+	 */
+	public long getFalseNegativeCount() {
+		return this.falseNegativeCount.get();
+	}
+
+	@Override
+	public String getComponentType() {
+		return "lsn-batch-deduplicator";
+	}
+
+	@Override
+	protected void handleMessageInternal(Message<?> message) {
+		Assert.isInstanceOf(List.class, message.getPayload(), "The batch mode payload is expected.");
+		List<?> events = (List<?>) message.getPayload();
+		int size = events.size();
+		this.batchCount.incrementAndGet();
+		this.eventCount.addAndGet(size);
+		if (size == 0) {
+			return;
+		}
+
+		ensureCapacity(size);
+		long[] batchLsns = this.lsns;
+		for (int i = 0; i < size; i++) {
+			batchLsns[i] = this.lsnExtractor.applyAsLong((ChangeEvent<?, ?>) events.get(i));
+		}
+
+		this.lsnFilter.mightContain(batchLsns, size, this.seen);
+		for (int i = 0; i < size; i++) {
+			ExactLsnWindow.Outcome outcome = this.window.check(batchLsns[i], this.seen[i]);
+			if (outcome == ExactLsnWindow.Outcome.FALSE_POSITIVE) {
+				this.falsePositiveCount.incrementAndGet();
+			}
+			else if (outcome == ExactLsnWindow.Outcome.FALSE_NEGATIVE) {
+				this.falseNegativeCount.incrementAndGet();
+			}
+			this.seen[i] = outcome.isDuplicate();
+		}
+		markBatchDuplicates(size);
+
+		List<Object> unseenEvents = new ArrayList<>(size);
+		int unseen = 0;
+		for (int i = 0; i < size; i++) {
+			if (!this.seen[i]) {
+				unseenEvents.add(events.get(i));
+				// Compact the new LSNs at the head of the array, for the bulk put.
+				batchLsns[unseen++] = batchLsns[i];
+			}
+		}
+		this.duplicateCount.addAndGet(size - unseen);
+		if (unseen == 0) {
+			return;
+		}
+
+		produceOutput(getMessageBuilderFactory().withPayload(unseenEvents)
+				.copyHeaders(message.getHeaders())
+				.build(), message);
+
+		this.lsnFilter.put(batchLsns, unseen);
+		this.window.add(batchLsns, unseen);
+	}
+
+	/**
+	 * Marks the repeated LSNs within the batch as seen, keeping the first occurrence.
+	 */
+	private void markBatchDuplicates(int size) {
+		long[] batchLsns = this.lsns;
+		boolean ascending = true;
+		for (int i = 1; i < size; i++) {
+			ascending &= batchLsns[i] > batchLsns[i - 1];
+		}
+		if (ascending) {
+			return;
+		}
+
+		long[] sorted = this.sortedLsns;
+		System.arraycopy(batchLsns, 0, sorted, 0, size);
+		Arrays.sort(sorted, 0, size);
+		boolean repeated = false;
+		for (int i = 1; i < size; i++) {
+			repeated |= sorted[i] == sorted[i - 1];
+		}
+		if (!repeated) {
+			return;
+		}
+
+		// The first occurrence claims the lowest index of its value in the sorted copy.
+		boolean[] claimed = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			int index = lowerBound(sorted, size, batchLsns[i]);
+			if (claimed[index]) {
+				this.seen[i] = true;
+			}
+			claimed[index] = true;
+		}
+	}
+
+	private static int lowerBound(long[] sorted, int size, long value) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] < value) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private void ensureCapacity(int size) {
+		if (this.lsns.length < size) {
+			int capacity = Math.max(size, this.lsns.length * 2);
+			this.lsns = new long[capacity];
+			this.sortedLsns = new long[capacity];
+			this.seen = new boolean[capacity];
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "LsnBatchDeduplicationHandler: batches=" + this.batchCount.get() + ", events=" + this.eventCount.get()
+				+ ", duplicates=" + this.duplicateCount.get();
+	}
+
+}
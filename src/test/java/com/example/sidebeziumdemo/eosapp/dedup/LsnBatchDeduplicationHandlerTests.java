@@ -0,0 +1,137 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import io.debezium.engine.ChangeEvent;
+import io.debezium.engine.Header;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LsnBatchDeduplicationHandlerTests {
+
+	@Test
+	public void dedupBatches() {
+		LsnBatchDeduplicationHandler handler = new LsnBatchDeduplicationHandler(new WatermarkLsnFilter(1024),
+				LsnBatchDeduplicationHandler.headerLsnExtractor("__lsn"), 1024);
+		QueueChannel output = new QueueChannel();
+		handler.setOutputChannel(output);
+		handler.setBeanFactory(new DefaultListableBeanFactory());
+		handler.afterPropertiesSet();
+
+		handler.handleMessage(batch(1, 2, 3, 4));
+		assertThat(lsns(output.receive(0))).containsExactly(1L, 2L, 3L, 4L);
+
+		// Replayed tail and a duplicate within the batch.
+		handler.handleMessage(batch(3, 4, 6, 5, 6, 7));
+		assertThat(lsns(output.receive(0))).containsExactly(6L, 5L, 7L);
+
+		// Fully replayed batch is not sent downstream.
+		handler.handleMessage(batch(1, 2, 3));
+		assertThat(output.receive(0)).isNull();
+
+		assertThat(handler.getBatchCount()).isEqualTo(3);
+		assertThat(handler.getEventCount()).isEqualTo(13);
+		assertThat(handler.getDuplicateCount()).isEqualTo(6);
+		assertThat(handler.getFalsePositiveCount()).isZero();
+	}
+
+	@Test
+	public void confirmFilterMatches() {
+		// False positive matches of the LSN 5, probed twice.
+		WatermarkLsnFilter filter = new WatermarkLsnFilter(1024) {
+
+			@Override
+			public boolean mightContain(long lsn) {
+				return lsn == 5 || super.mightContain(lsn);
+			}
+
+		};
+		LsnBatchDeduplicationHandler handler = new LsnBatchDeduplicationHandler(filter,
+				LsnBatchDeduplicationHandler.headerLsnExtractor("__lsn"), 1024);
+		QueueChannel output = new QueueChannel();
+		handler.setOutputChannel(output);
+		handler.setBeanFactory(new DefaultListableBeanFactory());
+		handler.afterPropertiesSet();
+
+		handler.handleMessage(batch(1, 2, 3));
+		handler.handleMessage(batch(3, 4, 5, 5, 6));
+		assertThat(lsns(output.receive(0))).containsExactly(1L, 2L, 3L);
+		assertThat(lsns(output.receive(0))).containsExactly(4L, 5L, 6L);
+		assertThat(handler.getDuplicateCount()).isEqualTo(2);
+		assertThat(handler.getFalsePositiveCount()).isEqualTo(2);
+	}
+
+	private static Message<?> batch(long... lsns) {
+		List<ChangeEvent<byte[], byte[]>> events = LongStream.of(lsns).mapToObj(TestChangeEvent::new)
+				.map(e -> (ChangeEvent<byte[], byte[]>) e)
+				.toList();
+		return MessageBuilder.withPayload(events).build();
+	}
+
+	private static List<Long> lsns(Message<?> message) {
+		return ((List<?>) message.getPayload()).stream().map(e -> ((TestChangeEvent) e).lsn).toList();
+	}
+
+	private record TestChangeEvent(long lsn) implements ChangeEvent<byte[], byte[]> {
+
+		@Override
+		public byte[] key() {
+			return null;
+		}
+
+		@Override
+		public byte[] value() {
+			return ("{\"val\":" + this.lsn + "}").getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <H> List<Header<H>> headers() {
+			Header<byte[]> header = new Header<>() {
+
+				@Override
+				public String getKey() {
+					return "__lsn";
+				}
+
+				@Override
+				public byte[] getValue() {
+					return ("{\"payload\":" + lsn + "}").getBytes(StandardCharsets.UTF_8);
+				}
+
+			};
+			return List.of((Header<H>) header);
+		}
+
+		@Override
+		public String destination() {
+			return "my-topic.public.eos_test";
+		}
+
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+import org.springframework.integration.handler.advice.AbstractRequestHandlerAdvice;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.util.Assert;
+
+/**
+ * Handler advice that drops the Debezium change events whose transaction position (LSN) has already been handled.
+ * <p>
+ * The LSN is extracted as a primitive long and tested against a {@link LsnFilter}. Unseen events are passed to the
+ * handler and their LSN is recorded only after the handler completes successfully, so a failed event is re-delivered
+ * on replay. The duplicates are sent to the discard channel, if configured, or silently dropped otherwise.
+ * <p>
+ * A filter match is confirmed against the {@link ExactLsnWindow} of the recently handled LSNs before the event is
+ * dropped: a probabilistic {@link LsnFilter} false positive is handled as a new event and counted apart (see
+ * {@link #getFalsePositiveCount()}). When the handler runs on several threads the filter must be thread-safe, e.g.
+ * {@link OffHeapLsnFilter.Layout#CONCURRENT}.
+ */
+public class LsnDeduplicationAdvice extends AbstractRequestHandlerAdvice {
+
+	private final LsnFilter lsnFilter;
+
+	private final ToLongFunction<Message<?>> lsnExtractor;
+
+	private final ExactLsnWindow window;
+
+	private MessageChannel discardChannel;
+
+	private final AtomicLong duplicateCount = new AtomicLong(0);
+
+	private final AtomicLong falsePositiveCount = new AtomicLong(0);
+
+	private final AtomicLong falseNegativeCount = new AtomicLong(0);
+
+	/**
+	 * @param lsnFilter filter used to keep track of the processed LSNs.
+	 * @param lsnExtractor extracts the LSN from the change event message.
+	 * @param windowCapacity number of the recent LSNs kept exactly to confirm the filter matches.
+	 */
+	public LsnDeduplicationAdvice(LsnFilter lsnFilter, ToLongFunction<Message<?>> lsnExtractor, int windowCapacity) {
+		Assert.notNull(lsnFilter, "The lsnFilter can not be null.");
+		Assert.notNull(lsnExtractor, "The lsnExtractor can not be null.");
+		this.lsnFilter = lsnFilter;
+		this.lsnExtractor = lsnExtractor;
+		this.window = new ExactLsnWindow(windowCapacity);
+	}
+
+	/**
+	 * @param discardChannel channel to send the duplicated events to.
+	 */
+	public void setDiscardChannel(MessageChannel discardChannel) {
+		this.discardChannel = discardChannel;
+	}
+
+	/**
+	 * @return Number of the events dropped as duplicates so far.
+	 */
+	public long getDuplicateCount() {
+		return this.duplicateCount.get();
+	}
+
+	/**
+	 * @return Number of the filter matches not confirmed by the exact window, handled as new events.
+	 */
+	public long getFalsePositiveCount() {
+		return this.falsePositiveCount.get();
+	}
+
+	/**
+	 * @return Number of the duplicates found in the exact window but missed by the filter.
+	 */
+	public long getFalseNegativeCount() {
+		return this.falseNegativeCount.get();
+	}
+
+	@Override
+	protected Object doInvoke(ExecutionCallback callback, Object target, Message<?> message) {
+		long lsn = this.lsnExtractor.applyAsLong(message);
+
+		ExactLsnWindow.Outcome outcome = this.window.check(lsn, this.lsnFilter.mightContain(lsn));
+		if (outcome == ExactLsnWindow.Outcome.FALSE_POSITIVE) {
+			this.falsePositiveCount.incrementAndGet();
+		}
+		else if (outcome.isDuplicate()) {
+			if (outcome == ExactLsnWindow.Outcome.FALSE_NEGATIVE) {
+				this.falseNegativeCount.incrementAndGet();
+			}
+			this.duplicateCount.incrementAndGet();
+			if (this.discardChannel != null) {
+				this.discardChannel.send(message);
+			}
+			return null;
+		}
+
+		Object result = callback.execute();
+		this.lsnFilter.put(lsn);
+		this.window.add(lsn);
+		return result;
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.example.sidebeziumdemo.eosapp.dedup.ExactLsnWindow.Outcome;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.integration.handler.ServiceActivatingHandler;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LsnDeduplicationAdviceTests {
+
+	@Test
+	public void confirmFilterMatches() {
+		// Matches every LSN below 100 and 105, as a saturated bloom filter would.
+		LsnFilter filter = new LsnFilter() {
+
+			private final Set<Long> lsns = new HashSet<>();
+
+			@Override
+			public boolean mightContain(long lsn) {
+				return lsn < 100 || lsn == 105 || this.lsns.contains(lsn);
+			}
+
+			@Override
+			public void put(long lsn) {
+				this.lsns.add(lsn);
+			}
+
+		};
+		LsnDeduplicationAdvice advice = new LsnDeduplicationAdvice(filter, m -> (Long) m.getPayload(), 1000);
+		List<Long> handled = new ArrayList<>();
+		ServiceActivatingHandler handler = new ServiceActivatingHandler((Message<?> message) -> {
+			handled.add((Long) message.getPayload());
+			return null;
+		});
+		handler.setAdviceChain(List.of(advice));
+		handler.setBeanFactory(new DefaultListableBeanFactory());
+		handler.afterPropertiesSet();
+
+		for (long lsn : new long[] { 100, 50, 110, 105, 105, 100 }) {
+			handler.handleMessage(MessageBuilder.withPayload(lsn).build());
+		}
+
+		// 50 is below the window, so its match can not be confirmed. 105 is within the window.
+		assertThat(handled).containsExactly(100L, 110L, 105L);
+		assertThat(advice.getDuplicateCount()).isEqualTo(3);
+		assertThat(advice.getFalsePositiveCount()).isEqualTo(1);
+		assertThat(advice.getFalseNegativeCount()).isZero();
+	}
+
+	@Test
+	public void windowOutcomes() {
+		ExactLsnWindow window = new ExactLsnWindow(2);
+		assertThat(window.check(10, true)).isEqualTo(Outcome.UNCONFIRMED);
+		assertThat(window.check(10, false)).isEqualTo(Outcome.NEW);
+		window.add(new long[] { 10, 20 }, 2);
+		assertThat(window.check(10, true)).isEqualTo(Outcome.DUPLICATE);
+		assertThat(window.check(20, false)).isEqualTo(Outcome.FALSE_NEGATIVE);
+		assertThat(window.check(15, true)).isEqualTo(Outcome.FALSE_POSITIVE);
+		assertThat(window.check(5, true)).isEqualTo(Outcome.UNCONFIRMED);
+
+		window.add(30);
+		assertThat(window.check(10, true)).isEqualTo(Outcome.UNCONFIRMED);
+		assertThat(window.check(15, true)).isEqualTo(Outcome.FALSE_POSITIVE);
+		assertThat(Outcome.FALSE_POSITIVE.isDuplicate()).isFalse();
+	}
+
+}
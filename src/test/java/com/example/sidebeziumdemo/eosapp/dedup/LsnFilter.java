@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+/**
+ * Membership filter for CDC transaction positions (e.g. the Postgres LSN). Positions are passed as primitive longs so
+ * that the per-event dedup check does not box.
+ * <p>
+ * Implementations must never return false negatives: once {@link #put(long)} has been called for a position,
+ * {@link #mightContain(long)} must return true for it.
+ */
+public interface LsnFilter {
+
+	/**
+	 * @param lsn the transaction position to test.
+	 * @return false if the position has definitely not been seen, true if it might have been.
+	 */
+	boolean mightContain(long lsn);
+
+	/**
+	 * Records the transaction position as seen.
+	 * @param lsn the transaction position to add.
+	 */
+	void put(long lsn);
+
+	/**
+	 * Bulk {@link #mightContain(long)}, used to probe a whole batch of change events in a single loop.
+	 * @param lsns the transaction positions to test.
+	 * @param length number of the positions to test, from the start of the array.
+	 * @param results set to the {@link #mightContain(long)} result of the position at the same index.
+	 */
+	default void mightContain(long[] lsns, int length, boolean[] results) {
+		for (int i = 0; i < length; i++) {
+			results[i] = mightContain(lsns[i]);
+		}
+	}
+
+	/**
+	 * Bulk {@link #put(long)}.
+	 * @param lsns the transaction positions to add.
+	 * @param length number of the positions to add, from the start of the array.
+	 */
+	default void put(long[] lsns, int length) {
+		for (int i = 0; i < length; i++) {
+			put(lsns[i]);
+		}
+	}
+
+	/**
+	 * Called when the Debezium engine is about to commit the offsets of all events handled so far
+	 * (see {@link LsnFilterOffsetCommitPolicy}). Does nothing by default.
+	 */
+	default void onOffsetCommit() {
+	}
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import java.time.Duration;
+
+import io.debezium.engine.spi.OffsetCommitPolicy;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link OffsetCommitPolicy} decorator that notifies the {@link LsnFilter} (see {@link LsnFilter#onOffsetCommit()})
+ * every time the delegate policy decides to commit. The engine commits the offsets of all events handled so far.
+ * <p>
+ * Note that the notification happens before the offset is actually flushed. For example the {@link MappedLsnFilter}
+ * retires its generations below the last handled LSN and, if the flush fails, the replayed events of the retired
+ * generations are let through as duplicates.
+ */
+public class LsnFilterOffsetCommitPolicy implements OffsetCommitPolicy {
+
+	private final OffsetCommitPolicy delegate;
+
+	private final LsnFilter lsnFilter;
+
+	public LsnFilterOffsetCommitPolicy(OffsetCommitPolicy delegate, LsnFilter lsnFilter) {
+		Assert.notNull(delegate, "The delegate policy can not be null.");
+		Assert.notNull(lsnFilter, "The lsnFilter can not be null.");
+		this.delegate = delegate;
+		this.lsnFilter = lsnFilter;
+	}
+
+	@Override
+	public boolean performCommit(long numberOfMessagesSinceLastCommit, Duration timeSinceLastCommit) {
+		boolean commit = this.delegate.performCommit(numberOfMessagesSinceLastCommit, timeSinceLastCommit);
+		if (commit) {
+			this.lsnFilter.onOffsetCommit();
+		}
+		return commit;
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+import org.springframework.integration.core.MessageSelector;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * {@link MessageSelector} for the {@code IdempotentReceiverInterceptor}, keyed by the primitive long LSN of the change
+ * event. A drop-in replacement for the {@code MetadataStoreSelector} over a {@code SimpleMetadataStore}, which builds
+ * a String key and a map node per event and never evicts them.
+ * <p>
+ * The seen LSNs are kept in a bounded {@link LongHashSet}. Optionally (see {@link #setRejectBelowEvictedWatermark})
+ * the LSNs lower than or equal to the highest evicted one are rejected as well, which is safe for connectors with
+ * monotonic positions and keeps rejecting the old replayed events after their eviction.
+ */
+public class LsnMessageSelector implements MessageSelector {
+
+	private final ToLongFunction<Message<?>> lsnExtractor;
+
+	private final LongHashSet seenLsns;
+
+	private final Lock lock = new ReentrantLock();
+
+	private boolean rejectBelowEvictedWatermark;
+
+	/**
+	 * @param lsnExtractor extracts the LSN from the change event message.
+	 * @param capacity maximum number of the LSNs kept.
+	 */
+	public LsnMessageSelector(ToLongFunction<Message<?>> lsnExtractor, int capacity) {
+		Assert.notNull(lsnExtractor, "The lsnExtractor can not be null.");
+		this.lsnExtractor = lsnExtractor;
+		this.seenLsns = new LongHashSet(capacity);
+	}
+
+	/**
+	 * @param rejectBelowEvictedWatermark reject the LSNs lower than or equal to the highest evicted LSN. Defaults to
+	 * false.
+	 */
+	public void setRejectBelowEvictedWatermark(boolean rejectBelowEvictedWatermark) {
+		this.rejectBelowEvictedWatermark = rejectBelowEvictedWatermark;
+	}
+
+	/**
+	 * @return true if the LSN of the message has not been seen yet.
+	 */
+	@Override
+	public boolean accept(Message<?> message) {
+		long lsn = this.lsnExtractor.applyAsLong(message);
+		this.lock.lock();
+		try {
+			if (this.rejectBelowEvictedWatermark && lsn <= this.seenLsns.getEvictedWatermark()) {
+				return false;
+			}
+			return this.seenLsns.add(lsn);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "LsnMessageSelector: " + this.seenLsns;
+	}
+
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import com.example.sidebeziumdemo.eosapp.bloom.BloomFilter;
+import com.example.sidebeziumdemo.eosapp.bloom.MemorySegment;
+import com.example.sidebeziumdemo.eosapp.bloom.MemorySegmentFactory;
+import com.example.sidebeziumdemo.eosapp.bloom.MemoryUtils;
+import com.example.sidebeziumdemo.eosapp.dedup.OffHeapLsnFilter.Layout;
+
+import org.springframework.core.log.LogAccessor;
+import org.springframework.util.Assert;
+
+/**
+ * Persistent {@link LsnFilter}. The bloom filter bits are held in a {@link MemorySegment} backed by a memory-mapped
+ * file, so that a restarted application resumes the deduplication with a warm state, exactly when Debezium replays the
+ * events after the last committed offset.
+ * <p>
+ * For unbounded CDC streams the bits are split into a fixed number of generations and the new LSNs are written into
+ * the head generation only. The head is rotated when it reaches the expected number of entries or when it gets older
+ * than the generation timeout. Every generation keeps the min/max range of its LSNs, used both to skip the generations
+ * that can not contain the tested LSN and to retire, on offset commit, the generations completely below the committed
+ * offset: Debezium does not replay them. If the rotation reaches a generation that has not been retired yet, that
+ * generation is cleared anyway (see {@link #getForcedRetirements()}), which keeps the false positive probability
+ * bounded at the cost of possibly letting a replayed duplicate through. The generation table (entry count, min/max LSN
+ * and opening time) lives in the mapped file too and is updated along with the bits, so the rotation state survives a
+ * restart. A single generation is never rotated.
+ * <p>
+ * The file is forced to the disk on every offset commit (see {@link LsnFilterOffsetCommitPolicy}), before the offsets
+ * are flushed. So the snapshot always covers the committed offsets. The bits set after the last snapshot survive a
+ * process crash as well, as the mapped pages belong to the OS page cache.
+ * <p>
+ * The file starts with a 64 bytes header, followed by a 32 bytes entry per generation and the bloom filter bits of
+ * every generation, each aligned to 64 bytes:
+ * <pre>
+ * 0  int  magic
+ * 4  int  version
+ * 8  int  layout
+ * 12 int  expected entries per generation
+ * 16 int  bits byte size per generation
+ * 20 int  number of generations
+ * 24 long LSN of the last event handled before the snapshot
+ * 32 long snapshot timestamp
+ * 40 int  head generation
+ * 48 long forced retirements
+ *
+ * generation entry:
+ * 0  int  entry count
+ * 8  long opening timestamp
+ * 16 long min LSN
+ * 24 long max LSN
+ * </pre>
+ * An existing file is reused only if its header matches the filter configuration, otherwise it is reset.
+ * <p>
+ * The filter is not thread-safe. It is meant to be used from the single Debezium engine thread.
+ */
+public class MappedLsnFilter implements LsnFilter, AutoCloseable {
+
+	private static final LogAccessor logger = new LogAccessor(MappedLsnFilter.class);
+
+	static final int MAGIC = 0x4C534E46; // "LSNF"
+
+	static final int VERSION = 2;
+
+	static final int HEADER_SIZE = 64;
+
+	static final int GENERATION_ENTRY_SIZE = 32;
+
+	private static final int MAGIC_OFFSET = 0;
+
+	private static final int VERSION_OFFSET = 4;
+
+	private static final int LAYOUT_OFFSET = 8;
+
+	private static final int ENTRIES_OFFSET = 12;
+
+	private static final int BYTE_SIZE_OFFSET = 16;
+
+	private static final int GENERATIONS_OFFSET = 20;
+
+	private static final int SNAPSHOT_LSN_OFFSET = 24;
+
+	private static final int SNAPSHOT_TIMESTAMP_OFFSET = 32;
+
+	private static final int HEAD_OFFSET = 40;
+
+	private static final int FORCED_RETIREMENTS_OFFSET = 48;
+
+	private static final int COUNT_OFFSET = 0;
+
+	private static final int OPENED_AT_OFFSET = 8;
+
+	private static final int MIN_LSN_OFFSET = 16;
+
+	private static final int MAX_LSN_OFFSET = 24;
+
+	private final Path file;
+
+	private final MappedByteBuffer mappedBuffer;
+
+	private final MemorySegment memorySegment;
+
+	private final BloomFilter[] generations;
+
+	private final int entriesPerGeneration;
+
+	private final long generationTimeoutMillis;
+
+	private final boolean warm;
+
+	private int head;
+
+	private long lastLsn;
+
+	/**
+	 * Single generation filter, never rotated.
+	 * @param file the file to map. Created if missing.
+	 * @param expectedEntries expected number of the distinct LSNs.
+	 * @param fpp the desired false positive probability.
+	 * @param layout the bloom filter bits layout.
+	 */
+	public MappedLsnFilter(Path file, int expectedEntries, double fpp, Layout layout) {
+		this(file, 1, expectedEntries, fpp, layout, Duration.ZERO);
+	}
+
+	/**
+	 * @param file the file to map. Created if missing.
+	 * @param numGenerations number of the bloom filter generations.
+	 * @param entriesPerGeneration expected number of LSNs per generation.
+	 * @param fpp false positive probability of a single generation.
+	 * @param layout the bloom filter bits layout.
+	 * @param generationTimeout maximum time a generation is kept as head. Zero disables the time based rotation.
+	 */
+	public MappedLsnFilter(Path file, int numGenerations, int entriesPerGeneration, double fpp, Layout layout,
+			Duration generationTimeout) {
+		Assert.notNull(file, "The file can not be null.");
+		Assert.isTrue(numGenerations >= 1, "At least 1 generation is required.");
+		Assert.isTrue(fpp > 0 && fpp < 1, "fpp should be in the (0, 1) range.");
+		Assert.notNull(layout, "The layout can not be null.");
+		Assert.notNull(generationTimeout, "generationTimeout can not be null.");
+
+		this.file = file;
+		this.entriesPerGeneration = entriesPerGeneration;
+		this.generationTimeoutMillis = generationTimeout.toMillis();
+
+		int byteSize = OffHeapLsnFilter.byteSize(entriesPerGeneration, fpp, layout);
+		long stride = align64(byteSize);
+		long bitsOffset = align64(HEADER_SIZE + (long) numGenerations * GENERATION_ENTRY_SIZE);
+		long fileSize = bitsOffset + stride * numGenerations;
+		Assert.isTrue(fileSize <= Integer.MAX_VALUE, "The filter does not fit in a single MemorySegment.");
+
+		try {
+			Path parent = file.toAbsolutePath().getParent();
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				boolean sizeMatch = channel.size() == fileSize;
+				// The mapping stays valid after the channel is closed.
+				this.mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+				this.memorySegment = MemorySegmentFactory.wrapOffHeapMemory(this.mappedBuffer);
+				this.warm = sizeMatch && headerMatches(layout, entriesPerGeneration, byteSize, numGenerations);
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Failed to map the LSN filter file: " + file, e);
+		}
+
+		// The header and the generation table are padded to 64 bytes, so the bits of every generation are cache-line
+		// aligned in the page aligned mapping.
+		this.generations = new BloomFilter[numGenerations];
+		for (int i = 0; i < numGenerations; i++) {
+			this.generations[i] = OffHeapLsnFilter.createBloomFilter(entriesPerGeneration, byteSize, layout);
+			this.generations[i].setBitsLocation(this.memorySegment, (int) (bitsOffset + stride * i));
+		}
+
+		if (this.warm) {
+			this.lastLsn = this.memorySegment.getLongLittleEndian(SNAPSHOT_LSN_OFFSET);
+			this.head = this.memorySegment.getIntLittleEndian(HEAD_OFFSET);
+			logger.info(() -> "Resuming the LSN deduplication from " + file + ", snapshot LSN: " + this.lastLsn
+					+ ", live generations: " + getLiveGenerations());
+		}
+		else {
+			this.memorySegment.putIntLittleEndian(MAGIC_OFFSET, MAGIC);
+			this.memorySegment.putIntLittleEndian(VERSION_OFFSET, VERSION);
+			this.memorySegment.putIntLittleEndian(LAYOUT_OFFSET, layout.ordinal());
+			this.memorySegment.putIntLittleEndian(ENTRIES_OFFSET, entriesPerGeneration);
+			this.memorySegment.putIntLittleEndian(BYTE_SIZE_OFFSET, byteSize);
+			this.memorySegment.putIntLittleEndian(GENERATIONS_OFFSET, numGenerations);
+			this.memorySegment.putLongLittleEndian(FORCED_RETIREMENTS_OFFSET, 0);
+			for (int i = 0; i < numGenerations; i++) {
+				clear(i);
+			}
+			setHead(0, System.currentTimeMillis());
+			this.lastLsn = Long.MIN_VALUE;
+			snapshot();
+		}
+	}
+
+	private static long align64(long size) {
+		return (size + 63) & ~63L;
+	}
+
+	private boolean headerMatches(Layout layout, int expectedEntries, int byteSize, int numGenerations) {
+		return this.memorySegment.getIntLittleEndian(MAGIC_OFFSET) == MAGIC
+				&& this.memorySegment.getIntLittleEndian(VERSION_OFFSET) == VERSION
+				&& this.memorySegment.getIntLittleEndian(LAYOUT_OFFSET) == layout.ordinal()
+				&& this.memorySegment.getIntLittleEndian(ENTRIES_OFFSET) == expectedEntries
+				&& this.memorySegment.getIntLittleEndian(BYTE_SIZE_OFFSET) == byteSize
+				&& this.memorySegment.getIntLittleEndian(GENERATIONS_OFFSET) == numGenerations
+				&& this.memorySegment.getIntLittleEndian(HEAD_OFFSET) < numGenerations;
+	}
+
+	@Override
+	public boolean mightContain(long lsn) {
+		long hash64 = OffHeapLsnFilter.hash64(lsn);
+		for (int i = 0; i < this.generations.length; i++) {
+			int entry = entryOffset(i);
+			if (this.memorySegment.getIntLittleEndian(entry + COUNT_OFFSET) > 0
+					&& lsn >= this.memorySegment.getLongLittleEndian(entry + MIN_LSN_OFFSET)
+					&& lsn <= this.memorySegment.getLongLittleEndian(entry + MAX_LSN_OFFSET)
+					&& this.generations[i].testHash(hash64)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void put(long lsn) {
+		int entry = entryOffset(this.head);
+		int count = this.memorySegment.getIntLittleEndian(entry + COUNT_OFFSET);
+		if (count > 0 && rotateIfNeeded(count)) {
+			entry = entryOffset(this.head);
+			count = 0;
+		}
+		this.generations[this.head].addHash(OffHeapLsnFilter.hash64(lsn));
+		// The bits are set before the range is widened, so a crash never leaves a range without its bits.
+		this.memorySegment.putLongLittleEndian(entry + MIN_LSN_OFFSET,
+				Math.min(this.memorySegment.getLongLittleEndian(entry + MIN_LSN_OFFSET), lsn));
+		this.memorySegment.putLongLittleEndian(entry + MAX_LSN_OFFSET,
+				Math.max(this.memorySegment.getLongLittleEndian(entry + MAX_LSN_OFFSET), lsn));
+		this.memorySegment.putIntLittleEndian(entry + COUNT_OFFSET, count + 1);
+		this.lastLsn = lsn;
+	}
+
+	/**
+	 * Retires all but the head generations whose LSN range is completely below or equal to the committed LSN.
+	 * @param committedLsn LSN of the last event covered by the committed offset.
+	 */
+	public void retire(long committedLsn) {
+		for (int i = 0; i < this.generations.length; i++) {
+			int entry = entryOffset(i);
+			if (i != this.head && this.memorySegment.getIntLittleEndian(entry + COUNT_OFFSET) > 0
+					&& this.memorySegment.getLongLittleEndian(entry + MAX_LSN_OFFSET) <= committedLsn) {
+				clear(i);
+			}
+		}
+	}
+
+	/**
+	 * Retires the generations covered by the offsets about to be committed and snapshots the filter.
+	 */
+	@Override
+	public void onOffsetCommit() {
+		retire(this.lastLsn);
+		snapshot();
+	}
+
+	/**
+	 * Records the last handled LSN in the header and forces the mapped file content to the disk.
+	 */
+	public void snapshot() {
+		this.memorySegment.putLongLittleEndian(SNAPSHOT_LSN_OFFSET, this.lastLsn);
+		this.memorySegment.putLongLittleEndian(SNAPSHOT_TIMESTAMP_OFFSET, System.currentTimeMillis());
+		this.mappedBuffer.force();
+	}
+
+	/**
+	 * @return true if the filter state was loaded from an existing file.
+	 */
+	public boolean isWarm() {
+		return this.warm;
+	}
+
+	/**
+	 * @return The LSN of the last handled event, restored from the snapshot on a warm start.
+	 */
+	public long getLastLsn() {
+		return this.lastLsn;
+	}
+
+	/**
+	 * @return Number of the generations cleared by the rotation before the committed offset passed them.
+	 */
+	public long getForcedRetirements() {
+		return this.memorySegment.getLongLittleEndian(FORCED_RETIREMENTS_OFFSET);
+	}
+
+	/**
+	 * @return Number of the generations that currently hold LSNs.
+	 */
+	public int getLiveGenerations() {
+		int live = 0;
+		for (int i = 0; i < this.generations.length; i++) {
+			if (this.memorySegment.getIntLittleEndian(entryOffset(i) + COUNT_OFFSET) > 0) {
+				live++;
+			}
+		}
+		return live;
+	}
+
+	private boolean rotateIfNeeded(int headCount) {
+		if (this.generations.length == 1) {
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		boolean full = headCount >= this.entriesPerGeneration;
+		boolean expired = this.generationTimeoutMillis > 0
+				&& (now - this.memorySegment.getLongLittleEndian(entryOffset(this.head) + OPENED_AT_OFFSET))
+						>= this.generationTimeoutMillis;
+
+		if (full || expired) {
+			int next = (this.head + 1) % this.generations.length;
+			if (this.memorySegment.getIntLittleEndian(entryOffset(next) + COUNT_OFFSET) > 0) {
+				this.memorySegment.putLongLittleEndian(FORCED_RETIREMENTS_OFFSET, getForcedRetirements() + 1);
+				clear(next);
+			}
+			setHead(next, now);
+			return true;
+		}
+		return false;
+	}
+
+	private void setHead(int generation, long now) {
+		this.head = generation;
+		this.memorySegment.putLongLittleEndian(entryOffset(generation) + OPENED_AT_OFFSET, now);
+		this.memorySegment.putIntLittleEndian(HEAD_OFFSET, generation);
+	}
+
+	private void clear(int generation) {
+		int entry = entryOffset(generation);
+		// The range is emptied before the bits are reset, so a crash never leaves a range without its bits.
+		this.memorySegment.putIntLittleEndian(entry + COUNT_OFFSET, 0);
+		this.memorySegment.putLongLittleEndian(entry + MIN_LSN_OFFSET, Long.MAX_VALUE);
+		this.memorySegment.putLongLittleEndian(entry + MAX_LSN_OFFSET, Long.MIN_VALUE);
+		this.generations[generation].reset();
+	}
+
+	private static int entryOffset(int generation) {
+		return HEADER_SIZE + generation * GENERATION_ENTRY_SIZE;
+	}
+
+	/**
+	 * Snapshots the filter and unmaps the file.
+	 */
+	@Override
+	public void close() {
+		snapshot();
+		this.memorySegment.free();
+		MemoryUtils.UNSAFE.invokeCleaner(this.mappedBuffer);
+	}
+
+	@Override
+	public String toString() {
+		return "MappedLsnFilter: file=" + this.file + ", warm=" + this.warm + ", generations=" + this.generations.length
+				+ ", live=" + getLiveGenerations() + ", head=" + this.head + ", forcedRetirements="
+				+ getForcedRetirements();
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import com.example.sidebeziumdemo.eosapp.dedup.OffHeapLsnFilter.Layout;
+import io.debezium.engine.spi.OffsetCommitPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedLsnFilterTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void warmRestart() {
+		Path file = tempDir.resolve("lsn.filter");
+
+		try (MappedLsnFilter filter = new MappedLsnFilter(file, 10000, 0.01, Layout.BLOCKED)) {
+			assertThat(filter.isWarm()).isFalse();
+			OffsetCommitPolicy policy = new LsnFilterOffsetCommitPolicy(OffsetCommitPolicy.always(), filter);
+			for (long lsn = 1; lsn <= 5000; lsn++) {
+				filter.put(lsn);
+			}
+			policy.performCommit(5000, Duration.ZERO);
+		}
+
+		// Restart with the same configuration.
+		try (MappedLsnFilter filter = new MappedLsnFilter(file, 10000, 0.01, Layout.BLOCKED)) {
+			assertThat(filter.isWarm()).isTrue();
+			assertThat(filter.getLastLsn()).isEqualTo(5000);
+			for (long lsn = 1; lsn <= 5000; lsn++) {
+				assertThat(filter.mightContain(lsn)).isTrue();
+			}
+		}
+
+		// Restart with a different configuration resets the state.
+		try (MappedLsnFilter filter = new MappedLsnFilter(file, 20000, 0.01, Layout.BLOCKED)) {
+			assertThat(filter.isWarm()).isFalse();
+			assertThat(filter.mightContain(1)).isFalse();
+		}
+	}
+
+	@Test
+	public void rotationSurvivesRestart() {
+		Path file = tempDir.resolve("lsn-generations.filter");
+
+		try (MappedLsnFilter filter = new MappedLsnFilter(file, 3, 1000, 0.01, Layout.BLOCKED, Duration.ZERO)) {
+			OffsetCommitPolicy policy = new LsnFilterOffsetCommitPolicy(OffsetCommitPolicy.always(), filter);
+			for (long lsn = 1; lsn <= 2500; lsn++) {
+				filter.put(lsn);
+			}
+			assertThat(filter.getLiveGenerations()).isEqualTo(3);
+
+			policy.performCommit(2500, Duration.ZERO);
+
+			// Only the head generation survives the commit.
+			assertThat(filter.getLiveGenerations()).isEqualTo(1);
+			for (long lsn = 2501; lsn <= 3500; lsn++) {
+				filter.put(lsn);
+			}
+		}
+
+		try (MappedLsnFilter filter = new MappedLsnFilter(file, 3, 1000, 0.01, Layout.BLOCKED, Duration.ZERO)) {
+			assertThat(filter.isWarm()).isTrue();
+			assertThat(filter.getLiveGenerations()).isEqualTo(2);
+			assertThat(filter.mightContain(1)).isFalse();
+			for (long lsn = 2001; lsn <= 3500; lsn++) {
+				assertThat(filter.mightContain(lsn)).isTrue();
+			}
+
+			// The rotation resumes from the restored head and clears the oldest not yet retired generation.
+			for (long lsn = 3501; lsn <= 6000; lsn++) {
+				filter.put(lsn);
+			}
+			assertThat(filter.getForcedRetirements()).isEqualTo(1);
+			assertThat(filter.mightContain(2001)).isFalse();
+			for (long lsn = 3001; lsn <= 6000; lsn++) {
+				assertThat(filter.mightContain(lsn)).isTrue();
+			}
+		}
+	}
+
+	@Test
+	public void forcedRetirementWithoutCommits() {
+		try (MappedLsnFilter filter = new MappedLsnFilter(tempDir.resolve("lsn-forced.filter"), 2, 1000, 0.01,
+				Layout.STANDARD, Duration.ZERO)) {
+			for (long lsn = 1; lsn <= 3000; lsn++) {
+				filter.put(lsn);
+			}
+			assertThat(filter.getForcedRetirements()).isEqualTo(1);
+			assertThat(filter.mightContain(1)).isFalse();
+			for (long lsn = 1001; lsn <= 3000; lsn++) {
+				assertThat(filter.mightContain(lsn)).isTrue();
+			}
+		}
+	}
+
+	@Test
+	public void timeBasedRotation() throws InterruptedException {
+		try (MappedLsnFilter filter = new MappedLsnFilter(tempDir.resolve("lsn-timed.filter"), 2, 1000, 0.01,
+				Layout.STANDARD, Duration.ofMillis(10))) {
+			filter.put(1);
+			Thread.sleep(20);
+			filter.put(2);
+			assertThat(filter.getLiveGenerations()).isEqualTo(2);
+		}
+	}
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import com.example.sidebeziumdemo.eosapp.bloom.BlockedBloomFilter;
+import com.example.sidebeziumdemo.eosapp.bloom.BloomFilter;
+import com.example.sidebeziumdemo.eosapp.bloom.ConcurrentBloomFilter;
+import com.example.sidebeziumdemo.eosapp.bloom.MemorySegment;
+import com.example.sidebeziumdemo.eosapp.bloom.MemorySegmentFactory;
+import com.example.sidebeziumdemo.eosapp.bloom.Murmur3;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link LsnFilter} backed by the {@link BloomFilter} with its bits held off-heap in a single {@link MemorySegment}.
+ * The heap footprint is constant and independent of the number of the processed events.
+ * <p>
+ * Only the {@link Layout#CONCURRENT} layout is thread-safe. The other layouts are meant to be used from the single
+ * Debezium engine thread.
+ */
+public class OffHeapLsnFilter implements LsnFilter, AutoCloseable {
+
+	/**
+	 * Bloom filter bits layout.
+	 */
+	public enum Layout {
+		/** The {@link BloomFilter} layout. */
+		STANDARD,
+		/** The cache-line {@link BlockedBloomFilter} layout, for filters much larger than the CPU caches. */
+		BLOCKED,
+		/** The thread-safe {@link ConcurrentBloomFilter}, for filters shared by several handler threads. */
+		CONCURRENT
+	}
+
+	private final MemorySegment memorySegment;
+
+	private final BloomFilter bloomFilter;
+
+	/**
+	 * Creates filter backed by a direct {@link java.nio.ByteBuffer}.
+	 * @param expectedEntries expected number of the distinct LSNs.
+	 * @param fpp the desired false positive probability.
+	 */
+	public OffHeapLsnFilter(int expectedEntries, double fpp) {
+		this(expectedEntries, fpp, false);
+	}
+
+	/**
+	 * @param expectedEntries expected number of the distinct LSNs.
+	 * @param fpp the desired false positive probability.
+	 * @param unsafe if true the bits are stored in unsafe memory released explicitly on {@link #close()}, otherwise in
+	 * a direct {@link java.nio.ByteBuffer} released by the GC.
+	 */
+	public OffHeapLsnFilter(int expectedEntries, double fpp, boolean unsafe) {
+		this(expectedEntries, fpp, unsafe, Layout.STANDARD);
+	}
+
+	/**
+	 * @param expectedEntries expected number of the distinct LSNs.
+	 * @param fpp the desired false positive probability.
+	 * @param unsafe if true the bits are stored in unsafe memory released explicitly on {@link #close()}, otherwise in
+	 * a direct {@link java.nio.ByteBuffer} released by the GC.
+	 * @param layout the bloom filter bits layout.
+	 */
+	public OffHeapLsnFilter(int expectedEntries, double fpp, boolean unsafe, Layout layout) {
+		Assert.isTrue(fpp > 0 && fpp < 1, "fpp should be in the (0, 1) range.");
+		Assert.notNull(layout, "The layout can not be null.");
+		boolean blocked = layout == Layout.BLOCKED;
+		int byteSize = byteSize(expectedEntries, fpp, layout);
+		// Extra block to be able to align the bits to the cache line.
+		int segmentSize = (blocked) ? byteSize + BlockedBloomFilter.BLOCK_BYTES : byteSize;
+		this.memorySegment = (unsafe)
+				? MemorySegmentFactory.allocateOffHeapUnsafeMemory(segmentSize, this, () -> {
+				})
+				: MemorySegmentFactory.allocateUnpooledOffHeapMemory(segmentSize);
+		this.bloomFilter = createBloomFilter(expectedEntries, byteSize, layout);
+		int offset = (blocked)
+				? (int) (-this.memorySegment.getAddress() & (BlockedBloomFilter.BLOCK_BYTES - 1))
+				: 0;
+		this.bloomFilter.setBitsLocation(this.memorySegment, offset);
+		this.bloomFilter.reset();
+	}
+
+	/**
+	 * Bloom filter byte size for the expected entries and fpp, rounded up to a whole number of longs.
+	 */
+	static int byteSize(int expectedEntries, double fpp) {
+		int numBits = BloomFilter.optimalNumOfBits(expectedEntries, fpp);
+		return Math.max(8, ((numBits + 63) >>> 6) << 3);
+	}
+
+	/**
+	 * Bloom filter byte size for the expected entries and fpp, aligned as required by the layout.
+	 */
+	static int byteSize(int expectedEntries, double fpp, Layout layout) {
+		int byteSize = byteSize(expectedEntries, fpp);
+		return (layout == Layout.BLOCKED) ? BlockedBloomFilter.alignedByteSize(byteSize) : byteSize;
+	}
+
+	static BloomFilter createBloomFilter(int expectedEntries, int byteSize, Layout layout) {
+		return switch (layout) {
+			case BLOCKED -> new BlockedBloomFilter(expectedEntries, byteSize);
+			case CONCURRENT -> new ConcurrentBloomFilter(expectedEntries, byteSize);
+			default -> new BloomFilter(expectedEntries, byteSize);
+		};
+	}
+
+	@Override
+	public boolean mightContain(long lsn) {
+		return this.bloomFilter.testHash(hash64(lsn));
+	}
+
+	@Override
+	public void put(long lsn) {
+		this.bloomFilter.addHash(hash64(lsn));
+	}
+
+	public void clear() {
+		this.bloomFilter.reset();
+	}
+
+	/**
+	 * @return Off-heap memory used by the filter, in bytes.
+	 */
+	public int byteSize() {
+		return this.memorySegment.size();
+	}
+
+	@Override
+	public void close() {
+		this.memorySegment.free();
+	}
+
+	/**
+	 * Consecutive LSNs differ only in the low bits, so they must be mixed before the double hashing split.
+	 */
+	static long hash64(long key) {
+		return Murmur3.hash64(key);
+	}
+
+	@Override
+	public String toString() {
+		return "OffHeapLsnFilter:\n" + this.bloomFilter;
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.example.sidebeziumdemo.eosapp.dedup.OffHeapLsnFilter.Layout;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OffHeapLsnFilterTests {
+
+	@Test
+	public void noFalseNegatives() {
+		try (OffHeapLsnFilter filter = new OffHeapLsnFilter(100000, 0.01, true)) {
+			for (long lsn = 0; lsn < 100000; lsn++) {
+				filter.put(lsn * 56);
+			}
+			for (long lsn = 0; lsn < 100000; lsn++) {
+				assertThat(filter.mightContain(lsn * 56)).isTrue();
+			}
+		}
+	}
+
+	@Test
+	public void blockedLayout() {
+		try (OffHeapLsnFilter filter = new OffHeapLsnFilter(100000, 0.01, true, Layout.BLOCKED)) {
+			for (long lsn = 0; lsn < 100000; lsn++) {
+				filter.put(lsn * 56);
+			}
+			for (long lsn = 0; lsn < 100000; lsn++) {
+				assertThat(filter.mightContain(lsn * 56)).isTrue();
+			}
+		}
+	}
+
+	@Test
+	public void concurrentLayout() throws Exception {
+		try (OffHeapLsnFilter filter = new OffHeapLsnFilter(400000, 0.01, false, Layout.CONCURRENT)) {
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				long start = t * 100000L;
+				futures.add(executor.submit(() -> {
+					for (long lsn = start; lsn < start + 100000; lsn++) {
+						filter.put(lsn);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			executor.shutdown();
+
+			for (long lsn = 0; lsn < 400000; lsn++) {
+				assertThat(filter.mightContain(lsn)).as("Lost bit for LSN: " + lsn).isTrue();
+			}
+		}
+	}
+
+	@Test
+	public void falsePositiveRate() {
+		try (OffHeapLsnFilter filter = new OffHeapLsnFilter(100000, 0.01)) {
+			for (long lsn = 0; lsn < 100000; lsn++) {
+				filter.put(lsn);
+			}
+			int falsePositives = 0;
+			for (long lsn = 100000; lsn < 200000; lsn++) {
+				if (filter.mightContain(lsn)) {
+					falsePositives++;
+				}
+			}
+			assertThat(falsePositives).as("Expected ~1% false positives").isLessThan(2000);
+
+			filter.clear();
+			assertThat(filter.mightContain(1)).isFalse();
+		}
+	}
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import org.springframework.util.Assert;
+
+/**
+ * Exact {@link LsnFilter} for positions that are unique per event and (mostly) monotonic in the stream order.
+ * <p>
+ * Keeps a high watermark and a small sorted ring of the positions above it. Every position lower than or equal to the
+ * watermark is treated as seen, so the replayed events are rejected in O(1). The ring holds the in-flight window of
+ * positions that arrived out of order and is searched in O(log window). The memory is bounded by the window capacity,
+ * regardless of the stream length.
+ * <p>
+ * The watermark is advanced only when the ring is full: its lowest position is folded into the watermark. A position
+ * that arrives after the watermark has passed it is wrongly reported as seen and its event is lost, so the capacity
+ * must cover how far the positions of the source go back in the stream order. The positions streamed in the commit
+ * order, such as the SQL Server {@code __commit_lsn}, go back only within a transaction. The Postgres {@code __lsn} is
+ * the position of the change, not of the commit: the transactions are streamed in the commit order, so a transaction
+ * that interleaved with an already streamed one and committed after it has lower positions. With concurrent writers the
+ * capacity must then cover the changes of all the transactions open at the same time.
+ * <p>
+ * On offset commit (see {@link #onOffsetCommit()}) the ring is cleared without advancing the watermark: the events
+ * covered by the committed offsets are not replayed, while the events of the transactions still in flight in the
+ * source can have lower positions.
+ * <p>
+ * The filter is not thread-safe. It is meant to be used from the single Debezium engine thread.
+ */
+public class WatermarkLsnFilter implements LsnFilter {
+
+	private final long[] window;
+
+	private int start = 0;
+
+	private int size = 0;
+
+	private long watermark;
+
+	private long foldedOnOverflow = 0;
+
+	/**
+	 * @param windowCapacity maximum number of the positions kept above the watermark.
+	 */
+	public WatermarkLsnFilter(int windowCapacity) {
+		this(windowCapacity, Long.MIN_VALUE);
+	}
+
+	/**
+	 * @param windowCapacity maximum number of the positions kept above the watermark.
+	 * @param initialWatermark positions lower than or equal to this one are treated as seen, e.g. restored from the
+	 * committed offsets of a source streamed in the position order.
+	 */
+	public WatermarkLsnFilter(int windowCapacity, long initialWatermark) {
+		Assert.isTrue(windowCapacity > 0, "The windowCapacity must be positive.");
+		this.window = new long[windowCapacity];
+		this.watermark = initialWatermark;
+	}
+
+	@Override
+	public boolean mightContain(long lsn) {
+		return lsn <= this.watermark || (this.size > 0 && lsn <= at(this.size - 1) && indexOf(lsn) >= 0);
+	}
+
+	@Override
+	public void put(long lsn) {
+		if (lsn <= this.watermark) {
+			return;
+		}
+
+		// Monotonic fast path: append to the tail.
+		if (this.size == 0 || lsn > at(this.size - 1)) {
+			if (this.size == this.window.length) {
+				foldLowest();
+			}
+			this.window[slot(this.size)] = lsn;
+			this.size++;
+			return;
+		}
+
+		int index = indexOf(lsn);
+		if (index >= 0) {
+			return;
+		}
+		int insertion = -(index + 1);
+
+		if (this.size == this.window.length) {
+			foldLowest();
+			insertion--;
+			if (insertion < 0) {
+				// The position is now covered by the watermark.
+				return;
+			}
+		}
+
+		for (int i = this.size; i > insertion; i--) {
+			this.window[slot(i)] = this.window[slot(i - 1)];
+		}
+		this.window[slot(insertion)] = lsn;
+		this.size++;
+	}
+
+	/**
+	 * Retires all the positions handled so far, as they are covered by the committed offsets. The watermark is not
+	 * advanced, since it could pass the positions still in flight.
+	 */
+	@Override
+	public void onOffsetCommit() {
+		this.start = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * @return Positions lower than or equal to the watermark are treated as seen.
+	 */
+	public long getWatermark() {
+		return this.watermark;
+	}
+
+	/**
+	 * @return Number of the positions currently kept above the watermark.
+	 */
+	public int getWindowSize() {
+		return this.size;
+	}
+
+	/**
+	 * @return Number of the positions folded into the watermark because the window was full.
+	 */
+	public long getFoldedOnOverflow() {
+		return this.foldedOnOverflow;
+	}
+
+	private void foldLowest() {
+		this.watermark = at(0);
+		this.start = slot(1);
+		this.size--;
+		this.foldedOnOverflow++;
+	}
+
+	/**
+	 * Binary search over the logical (sorted) window indexes.
+	 * @return the index of the position or (-(insertion point) - 1) if not found.
+	 */
+	private int indexOf(long lsn) {
+		int low = 0;
+		int high = this.size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long value = at(mid);
+			if (value < lsn) {
+				low = mid + 1;
+			}
+			else if (value > lsn) {
+				high = mid - 1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private long at(int index) {
+		return this.window[slot(index)];
+	}
+
+	private int slot(int index) {
+		int slot = this.start + index;
+		return (slot >= this.window.length) ? slot - this.window.length : slot;
+	}
+
+	@Override
+	public String toString() {
+		return "WatermarkLsnFilter: watermark=" + this.watermark + ", window=" + this.size + "/" + this.window.length
+				+ ", foldedOnOverflow=" + this.foldedOnOverflow;
+	}
+
+}
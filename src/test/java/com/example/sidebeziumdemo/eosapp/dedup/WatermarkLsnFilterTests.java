@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.eosapp.dedup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WatermarkLsnFilterTests {
+
+	@Test
+	public void monotonicPositions() {
+		WatermarkLsnFilter filter = new WatermarkLsnFilter(16);
+		for (long lsn = 10; lsn <= 1000; lsn += 10) {
+			assertThat(filter.mightContain(lsn)).isFalse();
+			filter.put(lsn);
+			assertThat(filter.mightContain(lsn)).isTrue();
+		}
+		assertThat(filter.getWindowSize()).isEqualTo(16);
+		assertThat(filter.getWatermark()).isEqualTo(840);
+
+		// Replay
+		for (long lsn = 10; lsn <= 1000; lsn += 10) {
+			assertThat(filter.mightContain(lsn)).isTrue();
+		}
+		assertThat(filter.mightContain(995)).isFalse();
+		assertThat(filter.mightContain(1010)).isFalse();
+	}
+
+	@Test
+	public void outOfOrderWithinWindow() {
+		WatermarkLsnFilter filter = new WatermarkLsnFilter(64);
+		List<Long> lsns = new ArrayList<>();
+		for (long lsn = 1; lsn <= 10240; lsn++) {
+			lsns.add(lsn);
+		}
+		// Shuffle within blocks of 32 positions, smaller than the window.
+		Random random = new Random(42);
+		for (int i = 0; i < lsns.size(); i += 32) {
+			Collections.shuffle(lsns.subList(i, i + 32), random);
+		}
+
+		for (long lsn : lsns) {
+			assertThat(filter.mightContain(lsn)).isFalse();
+			filter.put(lsn);
+		}
+		for (long lsn = 1; lsn <= 10240; lsn++) {
+			assertThat(filter.mightContain(lsn)).isTrue();
+		}
+		assertThat(filter.mightContain(10241)).isFalse();
+	}
+
+	@Test
+	public void retireOnOffsetCommit() {
+		WatermarkLsnFilter filter = new WatermarkLsnFilter(8);
+		filter.put(5);
+		filter.put(3);
+		filter.put(9);
+		assertThat(filter.mightContain(4)).isFalse();
+
+		filter.onOffsetCommit();
+
+		assertThat(filter.getWindowSize()).isZero();
+		assertThat(filter.getWatermark()).isEqualTo(Long.MIN_VALUE);
+		// A later committed, interleaved transaction with lower positions.
+		assertThat(filter.mightContain(4)).isFalse();
+		filter.put(4);
+		filter.put(6);
+		assertThat(filter.mightContain(4)).isTrue();
+		assertThat(filter.mightContain(10)).isFalse();
+		assertThat(filter.getFoldedOnOverflow()).isZero();
+	}
+
+}
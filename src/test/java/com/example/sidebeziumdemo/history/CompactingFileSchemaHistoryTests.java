@@ -0,0 +1,195 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.history;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.debezium.config.Configuration;
+import io.debezium.document.Document;
+import io.debezium.relational.Column;
+import io.debezium.relational.Table;
+import io.debezium.relational.TableId;
+import io.debezium.relational.Tables;
+import io.debezium.relational.history.HistoryRecord;
+import io.debezium.relational.history.HistoryRecordComparator;
+import io.debezium.relational.history.SchemaHistoryListener;
+import io.debezium.relational.history.TableChanges;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompactingFileSchemaHistoryTests {
+
+	private static final Map<String, String> SOURCE = Map.of("server", "my-topic");
+
+	private static final HistoryRecordComparator LSN_COMPARATOR = new HistoryRecordComparator() {
+
+		@Override
+		protected boolean isPositionAtOrBefore(Document recorded, Document desired) {
+			return recorded.getLong("lsn") <= desired.getLong("lsn");
+		}
+
+	};
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void recoveryLoadsCompactedSnapshotAndTail() throws Exception {
+		Path file = this.tempDir.resolve("schema.history");
+		CompactingFileSchemaHistory history = start(file, new AtomicInteger());
+		record(history, 1, "CREATE TABLE t1 (id INT)", new TableChanges().create(table("t1", "id")));
+		record(history, 2, "CREATE TABLE t2 (id INT)", new TableChanges().create(table("t2", "id")));
+		record(history, 3, "ALTER TABLE t1 ADD val INT", new TableChanges().alter(table("t1", "id", "val")));
+		record(history, 10, "CREATE TABLE t3 (id INT)", new TableChanges().create(table("t3", "id")));
+		history.stop();
+
+		AtomicInteger recovered = new AtomicInteger();
+		history = start(file, recovered);
+		Tables tables = new Tables();
+		history.recover(Map.of(SOURCE, Map.of("lsn", 5L)), tables, null);
+		assertThat(recovered.get()).isEqualTo(4);
+		assertThat(tables.tableIds()).extracting(TableId::table).containsExactlyInAnyOrder("t1", "t2");
+		assertThat(tables.forTable(tableId("t1")).retrieveColumnNames()).containsExactly("id", "val");
+		history.stop();
+
+		// The next recovery reads the snapshot and the tail only.
+		recovered.set(0);
+		history = start(file, recovered);
+		tables = new Tables();
+		history.recover(Map.of(SOURCE, Map.of("lsn", 20L)), tables, null);
+		assertThat(recovered.get()).isEqualTo(2);
+		assertThat(tables.tableIds()).extracting(TableId::table).containsExactlyInAnyOrder("t1", "t2", "t3");
+		assertThat(tables.forTable(tableId("t1")).retrieveColumnNames()).containsExactly("id", "val");
+		history.stop();
+
+		recovered.set(0);
+		history = start(file, recovered);
+		history.recover(Map.of(SOURCE, Map.of("lsn", 20L)), new Tables(), null);
+		assertThat(recovered.get()).isEqualTo(1);
+		history.stop();
+	}
+
+	@Test
+	public void largeSchemaIsDeflated() throws Exception {
+		Path file = this.tempDir.resolve("schema.history");
+		CompactingFileSchemaHistory history = start(file, new AtomicInteger());
+		for (int i = 0; i < 1000; i++) {
+			record(history, i, "CREATE TABLE t" + i + " (id INT, val INT)",
+					new TableChanges().create(table("t" + i, "id", "val")));
+		}
+		history.stop();
+		long historySize = Files.size(file);
+
+		history = start(file, new AtomicInteger());
+		Tables tables = new Tables();
+		history.recover(Map.of(SOURCE, Map.of("lsn", 1000L)), tables, null);
+		assertThat(tables.size()).isEqualTo(1000);
+		history.stop();
+
+		// The snapshot of the 1000 tables is much smaller than their history, so the file is rewritten.
+		assertThat(Files.size(file)).isLessThan(historySize / 4);
+		history = start(file, new AtomicInteger());
+		tables = new Tables();
+		history.recover(Map.of(SOURCE, Map.of("lsn", 1000L)), tables, null);
+		assertThat(tables.size()).isEqualTo(1000);
+		history.stop();
+	}
+
+	@Test
+	public void tornTailIsTruncated() throws Exception {
+		Path file = this.tempDir.resolve("schema.history");
+		CompactingFileSchemaHistory history = start(file, new AtomicInteger());
+		record(history, 1, "CREATE TABLE t1 (id INT)", new TableChanges().create(table("t1", "id")));
+		history.stop();
+		long size = Files.size(file);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 100, 0, 0, 0, 1, 2, 3 }));
+		}
+
+		history = start(file, new AtomicInteger());
+		assertThat(Files.size(file)).isEqualTo(size);
+		record(history, 2, "CREATE TABLE t2 (id INT)", new TableChanges().create(table("t2", "id")));
+		Tables tables = new Tables();
+		history.recover(Map.of(SOURCE, Map.of("lsn", 2L)), tables, null);
+		assertThat(tables.size()).isEqualTo(2);
+		history.stop();
+	}
+
+	private static CompactingFileSchemaHistory start(Path file, AtomicInteger recovered) {
+		CompactingFileSchemaHistory history = new CompactingFileSchemaHistory();
+		history.configure(Configuration.create().with(CompactingFileSchemaHistory.FILE_PATH, file.toString()).build(),
+				LSN_COMPARATOR, new CountingListener(recovered), false);
+		history.start();
+		return history;
+	}
+
+	private static void record(CompactingFileSchemaHistory history, long lsn, String ddl, TableChanges changes) {
+		history.record(SOURCE, Map.of("lsn", lsn), "postgres", "public", ddl, changes, Instant.now());
+	}
+
+	private static TableId tableId(String name) {
+		return new TableId("postgres", "public", name);
+	}
+
+	private static Table table(String name, String... columns) {
+		var editor = Table.editor().tableId(tableId(name));
+		for (String column : columns) {
+			editor.addColumn(Column.editor().name(column).type("INT").jdbcType(Types.INTEGER).create());
+		}
+		return editor.setPrimaryKeyNames(columns[0]).create();
+	}
+
+	private record CountingListener(AtomicInteger recovered) implements SchemaHistoryListener {
+
+		@Override
+		public void started() {
+		}
+
+		@Override
+		public void stopped() {
+		}
+
+		@Override
+		public void recoveryStarted() {
+		}
+
+		@Override
+		public void recoveryStopped() {
+		}
+
+		@Override
+		public void onChangeFromHistory(HistoryRecord record) {
+			this.recovered.incrementAndGet();
+		}
+
+		@Override
+		public void onChangeApplied(HistoryRecord record) {
+		}
+
+	}
+
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.it.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import com.example.sidebeziumdemo.loadgen.BatchedLoadGenerator;
+import com.example.sidebeziumdemo.support.JsonFieldExtractor;
+import com.zaxxer.hikari.HikariDataSource;
+import io.debezium.engine.ChangeEvent;
+import io.debezium.engine.DebeziumEngine;
+import io.debezium.engine.spi.OffsetCommitPolicy;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.integration.config.EnableIntegration;
+import org.springframework.integration.debezium.dsl.Debezium;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * End-to-end CDC throughput and latency benchmark: the rows are written at fixed rates, each stamped with its
+ * transaction timestamp (the {@code t} column), and the handler records the commit-to-handler latency of every
+ * change event. One run is made per config (batch size, queue size, commit policy) and rate, with a fresh engine.
+ * <p>
+ * The latency includes the batch write time, as the {@code t} column defaults to the transaction start, so the writer
+ * batches hold about 10ms of rows. The database and the JVM share the host clock.
+ * <p>
+ * Disabled by default. Run with {@code -Dbench=true}, and optionally {@code -Dbench.rates=1000,5000} (rows/s) and
+ * {@code -Dbench.seconds=20} (per run). The reports are logged and written to {@code target/cdc-benchmark}.
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+public abstract class AbstractCdcBenchmarkTests {
+
+	static final LogAccessor logger = new LogAccessor(AbstractCdcBenchmarkTests.class);
+
+	public enum CommitPolicy {
+		PERIODIC, ALWAYS
+	}
+
+	public record MatrixEntry(int maxBatchSize, int maxQueueSize, CommitPolicy commitPolicy) {
+	}
+
+	/**
+	 * @param connector the connector name.
+	 * @param config the engine config.
+	 * @param targetRate the writer rate in rows/s.
+	 * @param writerRate the achieved writer rate in rows/s, below the target rate if the writers fall behind.
+	 * @param events number of the received change events.
+	 * @param eventsPerSecond the sustained capture rate, from the first to the last received event.
+	 * @param latency the commit-to-handler latency in microseconds.
+	 */
+	public record Report(String connector, MatrixEntry config, int targetRate, double writerRate, long events,
+			double eventsPerSecond, Histogram latency) {
+
+		static final String CSV_HEADER = "connector,max.batch.size,max.queue.size,commit.policy,target.rate,"
+				+ "writer.rows.per.second,events,events.per.second,p50.ms,p90.ms,p99.ms,p99.9.ms,max.ms";
+
+		String toCsv() {
+			return String.join(",", this.connector, String.valueOf(this.config.maxBatchSize()),
+					String.valueOf(this.config.maxQueueSize()), this.config.commitPolicy().name(),
+					String.valueOf(this.targetRate), String.format("%.1f", this.writerRate),
+					String.valueOf(this.events), String.format("%.1f", this.eventsPerSecond), millis(50), millis(90),
+					millis(99), millis(99.9), String.format("%.3f", this.latency.getMaxValue() / 1000.0));
+		}
+
+		private String millis(double percentile) {
+			return String.format("%.3f", this.latency.getValueAtPercentile(percentile) / 1000.0);
+		}
+
+	}
+
+	static final String[] COMMON_PROPERTIES = {
+			"debezium.properties.transforms=flatten",
+			"debezium.properties.transforms.flatten.type=io.debezium.transforms.ExtractNewRecordState",
+			"debezium.properties.transforms.flatten.drop.tombstones=true",
+			"debezium.properties.transforms.flatten.delete.handling.mode=rewrite",
+
+			"debezium.properties.schema.history.internal=io.debezium.relational.history.MemorySchemaHistory",
+			"debezium.properties.offset.storage=org.apache.kafka.connect.storage.MemoryOffsetBackingStore",
+			"debezium.properties.offset.flush.interval.ms=10000",
+
+			"debezium.properties.key.converter.schemas.enable=false",
+			"debezium.properties.value.converter.schemas.enable=false",
+
+			"debezium.properties.topic.prefix=my-topic",
+			"debezium.properties.name=my-connector",
+			"debezium.properties.database.server.id=85744" };
+
+	/**
+	 * @return The connector name used in the reports.
+	 */
+	protected abstract String connector();
+
+	/**
+	 * @return The connector specific {@code debezium.properties.*}, capturing the benchmark table only.
+	 */
+	protected abstract String[] connectorProperties();
+
+	/**
+	 * @return New pooled data source for the writers.
+	 */
+	protected abstract HikariDataSource dataSource();
+
+	/**
+	 * @return The statements creating the benchmark table, with an int {@code val} and a microsecond timestamp
+	 * {@code t} column defaulting to the current time in UTC, if not yet created.
+	 */
+	protected abstract List<String> setupStatements();
+
+	/**
+	 * @return The insert statement, with the {@code val} as single parameter.
+	 */
+	protected abstract String insertSql();
+
+	/**
+	 * @return The config matrix.
+	 */
+	protected List<MatrixEntry> matrix() {
+		return List.of(
+				new MatrixEntry(2048, 8192, CommitPolicy.PERIODIC),
+				new MatrixEntry(256, 1024, CommitPolicy.PERIODIC),
+				new MatrixEntry(2048, 8192, CommitPolicy.ALWAYS));
+	}
+
+	@Test
+	public void benchmark() throws Exception {
+		int[] rates = Arrays.stream(System.getProperty("bench.rates", "1000,5000").split(","))
+				.mapToInt(rate -> Integer.parseInt(rate.trim())).toArray();
+		Duration runDuration = Duration.ofSeconds(Long.getLong("bench.seconds", 20));
+
+		List<Report> reports = new ArrayList<>();
+		try (HikariDataSource dataSource = dataSource()) {
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+			setupStatements().forEach(jdbcTemplate::execute);
+
+			// Every run writes its own value range, to tell its events from the replays of the previous runs.
+			long firstRow = 1;
+			for (MatrixEntry config : matrix()) {
+				for (int rate : rates) {
+					long rows = rate * runDuration.toSeconds();
+					Report report = run(dataSource, config, rate, firstRow, rows, runDuration);
+					logger.info(() -> "[BENCHMARK] " + report.toCsv());
+					reports.add(report);
+					firstRow += rows;
+				}
+			}
+		}
+		writeReport(reports);
+	}
+
+	private Report run(HikariDataSource dataSource, MatrixEntry config, int rate, long firstRow, long rows,
+			Duration runDuration) {
+
+		AtomicReference<Report> report = new AtomicReference<>();
+		new ApplicationContextRunner()
+				.withUserConfiguration(BenchmarkConfiguration.class)
+				.withPropertyValues(COMMON_PROPERTIES)
+				.withPropertyValues(connectorProperties())
+				.withPropertyValues(
+						"debezium.properties.max.batch.size=" + config.maxBatchSize(),
+						"debezium.properties.max.queue.size=" + config.maxQueueSize(),
+						"bench.commit-policy=" + config.commitPolicy())
+				.run(context -> {
+					BenchmarkConfiguration benchmark = context.getBean(BenchmarkConfiguration.class);
+					assertThat(benchmark.started.await(2, TimeUnit.MINUTES))
+							.as("The connector should start").isTrue();
+					benchmark.expect(firstRow, rows);
+
+					BatchedLoadGenerator generator = BatchedLoadGenerator.preparedBatch(dataSource, insertSql(),
+							(statement, row) -> statement.setInt(1, (int) row));
+					generator.setWriters(2);
+					generator.setBatchSize(Math.max(1, rate / 100));
+					generator.setTargetRate(rate);
+					BatchedLoadGenerator.Result written = generator.run(firstRow, rows);
+
+					long timeout = runDuration.plusMinutes(2).toMillis();
+					if (!benchmark.received.await(timeout, TimeUnit.MILLISECONDS)) {
+						logger.warn(() -> "Received " + benchmark.events.get() + " of " + rows + " events");
+					}
+					report.set(benchmark.report(connector(), config, rate, written.rowsPerSecond()));
+				});
+		return report.get();
+	}
+
+	private void writeReport(List<Report> reports) throws IOException {
+		String csv = reports.stream().map(Report::toCsv)
+				.collect(Collectors.joining(System.lineSeparator(), Report.CSV_HEADER + System.lineSeparator(),
+						System.lineSeparator()));
+		logger.info(() -> "[BENCHMARK " + connector() + "]" + System.lineSeparator() + csv);
+		Path file = Path.of("target", "cdc-benchmark", connector() + ".csv");
+		Files.createDirectories(file.getParent());
+		Files.writeString(file, csv);
+	}
+
+	@SpringBootConfiguration
+	@EnableIntegration
+	@EnableAutoConfiguration(exclude = { MongoAutoConfiguration.class, DataSourceAutoConfiguration.class })
+	public static class BenchmarkConfiguration {
+
+		private static final JsonFieldExtractor VALUE_FIELD = JsonFieldExtractor.forField("val");
+
+		private static final JsonFieldExtractor TIMESTAMP_FIELD = JsonFieldExtractor.forField("t");
+
+		final CountDownLatch started = new CountDownLatch(1);
+
+		// Auto-resizing, in microseconds.
+		final Recorder latencyRecorder = new Recorder(3);
+
+		final AtomicLong events = new AtomicLong(0);
+
+		volatile CountDownLatch received = new CountDownLatch(0);
+
+		volatile long firstRow;
+
+		volatile long lastRow;
+
+		volatile long firstReceived;
+
+		volatile long lastReceived;
+
+		@Value("${bench.commit-policy:PERIODIC}")
+		CommitPolicy commitPolicy;
+
+		@Bean
+		public IntegrationFlow benchmarkFlow(DebeziumEngine.Builder<ChangeEvent<byte[], byte[]>> builder) {
+
+			if (this.commitPolicy == CommitPolicy.ALWAYS) {
+				builder = builder.using(OffsetCommitPolicy.always());
+			}
+
+			builder = builder.using(new DebeziumEngine.ConnectorCallback() {
+				@Override
+				public void taskStarted() {
+					started.countDown();
+				}
+			});
+
+			return IntegrationFlow.from(Debezium.inboundChannelAdapter(builder)
+					.contentType("application/json")
+					.enableBatch(false))
+					.handle(m -> record((byte[]) m.getPayload()))
+					.get();
+		}
+
+		void expect(long firstRow, long rows) {
+			this.firstRow = firstRow;
+			this.lastRow = firstRow + rows;
+			this.received = new CountDownLatch((int) rows);
+		}
+
+		private void record(byte[] payload) {
+			long now = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+			long value = VALUE_FIELD.extractLong(payload);
+			if (value < this.firstRow || value >= this.lastRow) {
+				return;
+			}
+			this.latencyRecorder.recordValue(Math.max(0, now - TIMESTAMP_FIELD.extractLong(payload)));
+			long nanos = System.nanoTime();
+			if (this.events.getAndIncrement() == 0) {
+				this.firstReceived = nanos;
+			}
+			this.lastReceived = nanos;
+			this.received.countDown();
+		}
+
+		Report report(String connector, MatrixEntry config, int targetRate, double writerRate) {
+			long events = this.events.get();
+			long elapsed = this.lastReceived - this.firstReceived;
+			double eventsPerSecond = (elapsed > 0) ? (events - 1) * 1e9 / elapsed : 0;
+			return new Report(connector, config, targetRate, writerRate, events, eventsPerSecond,
+					this.latencyRecorder.getIntervalHistogram());
+		}
+
+	}
+
+}
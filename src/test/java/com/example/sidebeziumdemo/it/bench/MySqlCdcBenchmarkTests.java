@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.it.bench;
+
+import java.util.List;
+
+import com.example.sidebeziumdemo.it.snapshots2.MySqlTestContainer;
+import com.zaxxer.hikari.HikariDataSource;
+
+public class MySqlCdcBenchmarkTests extends AbstractCdcBenchmarkTests implements MySqlTestContainer {
+
+	@Override
+	protected String connector() {
+		return "mysql";
+	}
+
+	@Override
+	protected String[] connectorProperties() {
+		return new String[] {
+				"debezium.properties.connector.class=io.debezium.connector.mysql.MySqlConnector",
+				"debezium.properties.database.user=root",
+				"debezium.properties.database.password=debezium",
+				"debezium.properties.database.hostname=localhost",
+				"debezium.properties.database.port=" + MySqlTestContainer.mappedPort(),
+				"debezium.properties.table.include.list=inventory.eos_test",
+				// Starts at the current binlog position.
+				"debezium.properties.snapshot.mode=schema_only" };
+	}
+
+	@Override
+	protected HikariDataSource dataSource() {
+		HikariDataSource dataSource = new HikariDataSource();
+		dataSource.setJdbcUrl(String.format(
+				"jdbc:mysql://localhost:%d/inventory?enabledTLSProtocols=TLSv1.2&rewriteBatchedStatements=true",
+				MySqlTestContainer.mappedPort()));
+		dataSource.setUsername("root");
+		dataSource.setPassword("debezium");
+		return dataSource;
+	}
+
+	@Override
+	protected List<String> setupStatements() {
+		return List.of("CREATE TABLE IF NOT EXISTS inventory.eos_test(id INT AUTO_INCREMENT PRIMARY KEY, val INT, "
+				+ "t DATETIME(6) DEFAULT (UTC_TIMESTAMP(6)))");
+	}
+
+	@Override
+	protected String insertSql() {
+		return "INSERT INTO inventory.eos_test(val) VALUES (?)";
+	}
+
+}
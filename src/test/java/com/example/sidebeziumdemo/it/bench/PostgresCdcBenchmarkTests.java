@@ -0,0 +1,68 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.it.bench;
+
+import java.util.List;
+
+import com.example.sidebeziumdemo.it.eos.PostgresEosTestContainer;
+import com.zaxxer.hikari.HikariDataSource;
+
+public class PostgresCdcBenchmarkTests extends AbstractCdcBenchmarkTests implements PostgresEosTestContainer {
+
+	@Override
+	protected String connector() {
+		return "postgres";
+	}
+
+	@Override
+	protected String[] connectorProperties() {
+		return new String[] {
+				"debezium.properties.connector.class=io.debezium.connector.postgresql.PostgresConnector",
+				"debezium.properties.database.user=postgres",
+				"debezium.properties.database.password=postgres",
+				// A fresh slot per run, starting at the current LSN.
+				"debezium.properties.slot.name=benchmark",
+				"debezium.properties.slot.drop.on.stop=true",
+				"debezium.properties.database.dbname=postgres",
+				"debezium.properties.database.hostname=localhost",
+				"debezium.properties.database.port=" + PostgresEosTestContainer.mappedPort(),
+				"debezium.properties.table.include.list=public.eos_test",
+				"debezium.properties.snapshot.mode=never" };
+	}
+
+	@Override
+	protected HikariDataSource dataSource() {
+		HikariDataSource dataSource = new HikariDataSource();
+		dataSource.setJdbcUrl(String.format("jdbc:postgresql://localhost:%d/postgres?reWriteBatchedInserts=true",
+				PostgresEosTestContainer.mappedPort()));
+		dataSource.setUsername("postgres");
+		dataSource.setPassword("postgres");
+		return dataSource;
+	}
+
+	@Override
+	protected List<String> setupStatements() {
+		// The eos_test table, with its t TIMESTAMP DEFAULT now() column, is created by the image, in the UTC zone.
+		return List.of();
+	}
+
+	@Override
+	protected String insertSql() {
+		return "INSERT INTO public.eos_test(val) VALUES (?)";
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.it.bench;
+
+import java.util.List;
+
+import com.example.sidebeziumdemo.it.snapshots2.SqlServerTestContainer;
+import com.zaxxer.hikari.HikariDataSource;
+
+public class SqlServerCdcBenchmarkTests extends AbstractCdcBenchmarkTests implements SqlServerTestContainer {
+
+	@Override
+	protected String connector() {
+		return "sqlserver";
+	}
+
+	@Override
+	protected String[] connectorProperties() {
+		return new String[] {
+				"debezium.properties.connector.class=io.debezium.connector.sqlserver.SqlServerConnector",
+				"debezium.properties.database.user=sa",
+				"debezium.properties.database.password=MyFancyPassword123",
+				"debezium.properties.database.hostname=localhost",
+				"debezium.properties.database.port=" + SqlServerTestContainer.mappedPort(),
+				"debezium.properties.database.names=testDB",
+				"debezium.properties.database.encrypt=false",
+				"debezium.properties.table.include.list=dbo.eos_test",
+				"debezium.properties.snapshot.mode=schema_only" };
+	}
+
+	@Override
+	protected HikariDataSource dataSource() {
+		HikariDataSource dataSource = new HikariDataSource();
+		dataSource.setJdbcUrl(String.format("jdbc:sqlserver://localhost:%d;encrypt=false;databaseName=testDB",
+				SqlServerTestContainer.mappedPort()));
+		dataSource.setUsername("sa");
+		dataSource.setPassword("MyFancyPassword123");
+		return dataSource;
+	}
+
+	@Override
+	protected List<String> setupStatements() {
+		// The capture instance polling interval (5s by default) dominates the SQL Server latency.
+		return List.of("IF OBJECT_ID('dbo.eos_test', 'U') IS NULL BEGIN "
+				+ "CREATE TABLE dbo.eos_test(id INT IDENTITY(1,1) NOT NULL PRIMARY KEY, val INT, "
+				+ "t DATETIME2(6) DEFAULT SYSUTCDATETIME()); "
+				+ "EXEC sys.sp_cdc_enable_table @source_schema = 'dbo', @source_name = 'eos_test', "
+				+ "@role_name = NULL, @supports_net_changes = 0; END");
+	}
+
+	@Override
+	protected String insertSql() {
+		return "INSERT INTO dbo.eos_test(val) VALUES (?)";
+	}
+
+}
@@ -16,12 +16,11 @@
 
 package com.example.sidebeziumdemo.it.eos;
 
-import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -30,16 +29,24 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.hash.BloomFilter;
-import com.google.common.hash.Funnels;
+import com.example.sidebeziumdemo.eosapp.dedup.OffHeapLsnFilter;
+import com.example.sidebeziumdemo.eosapp.dedup.WatermarkLsnFilter;
+import com.example.sidebeziumdemo.loadgen.BatchedLoadGenerator;
+import com.example.sidebeziumdemo.offset.GroupCommitOffsetCommitPolicy;
+import com.example.sidebeziumdemo.offset.MappedOffsetLogBackingStore;
+import com.example.sidebeziumdemo.support.JsonFieldExtractor;
 import com.zaxxer.hikari.HikariDataSource;
 import io.debezium.engine.ChangeEvent;
 import io.debezium.engine.DebeziumEngine;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.awaitility.Awaitility;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
@@ -96,8 +103,11 @@ public class PostgresEosTest implements PostgresEosTestContainer {
 					"debezium.properties.database.hostname=localhost",
 					"debezium.properties.database.port=" + PostgresEosTestContainer.mappedPort(),
 
+					"debezium.properties.max.batch.size=" + MAX_BATCH_SIZE,
 					"debezium.properties.snapshot.mode=never");
 
+	static final int MAX_BATCH_SIZE = 2048;
+
 	static CyclicBarrier barrier = new CyclicBarrier(2);
 
 	AtomicBoolean dataGenerationStopped = new AtomicBoolean(false);
@@ -153,6 +163,97 @@ public class PostgresEosTest implements PostgresEosTestContainer {
 
 	}
 
+	@Test
+	public void testOffsetCommitPolicyALWAYSWithMappedOffsetLog(@TempDir Path tempDir) {
+
+		// Per-event commits appended to the memory-mapped offset log, forced every 100ms and compacted in the background.
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		Metrics.addRegistry(registry);
+		try {
+			contextRunner.withPropertyValues("debezium.offsetCommitPolicy=ALWAYS",
+					"debezium.properties.offset.storage=" + MappedOffsetLogBackingStore.class.getName(),
+					"debezium.properties." + MappedOffsetLogBackingStore.FILENAME_CONFIG + "="
+							+ tempDir.resolve("offsets.log"),
+					"debezium.properties." + MappedOffsetLogBackingStore.CAPACITY_CONFIG + "=65536",
+					"debezium.properties." + MappedOffsetLogBackingStore.SYNC_INTERVAL_CONFIG + "=100")
+					.run(context -> {
+
+						long startTime = System.nanoTime();
+						runDataGenerationWithEmulatedFailures(context, 90001, 30000);
+
+						StreamTestConfiguration config = context.getBean(StreamTestConfiguration.class);
+						Awaitility.await().until(() -> config.maxValue.get() >= 90001 + 30000 - 1);
+						double throughput = 30000 * 1e9 / (System.nanoTime() - startTime);
+
+						Timer commits = registry.get(MappedOffsetLogBackingStore.COMMIT_TIMER).timer();
+						logger.info(String.format("[TOTAL ALWAYS MAPPED] Duplications: %d, FN: %d, Events/s: %.0f, "
+								+ "Commits: %d, mean: %.1fus, max: %.1fus", config.totalDuplications.get(),
+								config.totalFalseNegative.get(), throughput, commits.count(),
+								commits.mean(TimeUnit.MICROSECONDS), commits.max(TimeUnit.MICROSECONDS)));
+
+						assertThat(config.totalDuplications.getAndSet(0))
+								.as("The ALWAYS commit policy is expected to prevent duplications")
+								.isEqualTo(0);
+						assertThat(config.totalFalseNegative.getAndSet(0))
+								.as("The Bloom Filter should never return false negative matches")
+								.isEqualTo(0);
+						assertThat(commits.count())
+								.as("Every commit is appended to the mapped offset log")
+								.isGreaterThan(0);
+					});
+		}
+		finally {
+			Metrics.removeRegistry(registry);
+		}
+	}
+
+	@Test
+	public void testOffsetCommitPolicyGROUP() {
+
+		// Trade-off curve: the larger the group the higher the throughput and the wider the duplicate window.
+		int size = 10000;
+		int startIndex = 60001;
+		StringBuilder curve = new StringBuilder();
+
+		for (long groupSize : new long[] { 10, 100, 1000 }) {
+
+			GroupCommitOffsetCommitPolicy policy = new GroupCommitOffsetCommitPolicy(groupSize, Duration.ofSeconds(10));
+			int start = startIndex;
+
+			contextRunner.withBean(GroupCommitOffsetCommitPolicy.class, () -> policy)
+					.run(context -> {
+
+						long startTime = System.nanoTime();
+						runDataGenerationWithEmulatedFailures(context, start, size);
+
+						StreamTestConfiguration config = context.getBean(StreamTestConfiguration.class);
+						Awaitility.await().until(() -> config.maxValue.get() >= start + size - 1);
+						double throughput = size * 1e9 / (System.nanoTime() - startTime);
+
+						String point = String.format("[TOTAL GROUP %d] Duplications: %d, FN: %d, Events/s: %.0f, %s",
+								groupSize, config.totalDuplications.get(), config.totalFalseNegative.get(), throughput,
+								policy);
+						logger.info(point);
+						curve.append(point).append(System.lineSeparator());
+
+						// A failure replays at most the events handled since the last commit: the group and the
+						// overshoot of the last Debezium batch.
+						long failures = (start + size - 1) / 5000 - (start - 1) / 5000;
+						assertThat(config.totalDuplications.getAndSet(0))
+								.as("The GROUP commit policy bounds the duplications by the group size")
+								.isLessThanOrEqualTo(failures * (groupSize + MAX_BATCH_SIZE));
+						assertThat(config.totalFalseNegative.getAndSet(0))
+								.as("The Bloom Filter should never return false negative matches")
+								.isEqualTo(0);
+						assertThat(policy.getCommits()).isGreaterThan(0);
+					});
+
+			startIndex += size;
+		}
+
+		logger.info("[GROUP CURVE]" + System.lineSeparator() + curve);
+	}
+
 	private void runDataGenerationWithEmulatedFailures(ApplicationContext context, int startIndex, int size) {
 
 		JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
@@ -161,27 +262,25 @@ public class PostgresEosTest implements PostgresEosTestContainer {
 
 		dataGenerationStopped.set(false);
 
+		BatchedLoadGenerator generator = config.loadGenerator(context.getBean(DataSource.class));
+		// On every 5000 new inserts emulate a connector breakdown.
+		generator.setFailureHook(5000, () -> config.pgTerminateBackend(jdbcTemplate));
+
 		Executors.newSingleThreadExecutor().submit(() -> {
 
 			try {
 				// wait until the Debezium connector is up and running.
 				barrier.await();
+
+				// Continuously insert new data entries.
+				generator.run(startIndex, size);
 			}
 			catch (InterruptedException | BrokenBarrierException e) {
 				logger.error(e, "Failed to reach data generation start phase.");
 			}
-
-			for (int i = startIndex; i < startIndex + size; i++) {
-				// Continuously insert new data entries.
-				config.insertRow(jdbcTemplate, i);
-
-				// On every 1000 new inserts emulate a connector breakdown.
-				if ((i % 5000) == 0) {
-					config.pgTerminateBackend(jdbcTemplate);
-				}
+			finally {
+				dataGenerationStopped.set(true);
 			}
-
-			dataGenerationStopped.set(true);
 		});
 
 		Awaitility.await().until(() -> dataGenerationStopped.get());
@@ -192,11 +291,13 @@ public class PostgresEosTest implements PostgresEosTestContainer {
 	@EnableAutoConfiguration(exclude = { MongoAutoConfiguration.class })
 	public static class StreamTestConfiguration {
 
-		Set<Integer> valueSet = new ConcurrentSkipListSet<>();
+		private static final JsonFieldExtractor VALUE_FIELD = JsonFieldExtractor.forField("val");
 
-		BloomFilter<Long> bloomFilter = BloomFilter.create(Funnels.longFunnel(), 30000, 0.05);
+		// Exact test oracle used to tell the duplicates from the false positives. The values are inserted sequentially,
+		// so they arrive in order and the replays fall below the watermark. The memory stays bounded by the window.
+		WatermarkLsnFilter valueFilter = new WatermarkLsnFilter(1024);
 
-		ObjectMapper mapper = new ObjectMapper();
+		OffHeapLsnFilter bloomFilter = new OffHeapLsnFilter(30000, 0.05);
 
 		AtomicLong duplications = new AtomicLong(0);
 		AtomicLong falsePositive = new AtomicLong(0);
@@ -206,9 +307,18 @@ public class PostgresEosTest implements PostgresEosTestContainer {
 		AtomicLong totalFalsePositive = new AtomicLong(0);
 		AtomicLong totalFalseNegative = new AtomicLong(0);
 
+		AtomicLong maxValue = new AtomicLong(0);
+
+		@Autowired(required = false)
+		GroupCommitOffsetCommitPolicy groupCommitPolicy;
+
 		@Bean
 		public IntegrationFlow streamFlowFromBuilder(DebeziumEngine.Builder<ChangeEvent<byte[], byte[]>> builder) {
 
+			if (this.groupCommitPolicy != null) {
+				builder = builder.using(this.groupCommitPolicy);
+			}
+
 			builder = builder.using(new DebeziumEngine.ConnectorCallback() {
 				@Override
 				public void taskStarted() {
@@ -230,29 +340,34 @@ public class PostgresEosTest implements PostgresEosTestContainer {
 			return IntegrationFlow.from(dsl)
 					.handle(m -> {
 
-						Long messageLsn = getMessageLsn(m);
-						Integer messageValue = getMessageValue(m);
+						long messageLsn = getMessageLsn(m);
+						int messageValue = getMessageValue(m);
 
 						if (this.bloomFilter.mightContain(messageLsn)) {
-							if (valueSet.contains(messageValue)) {
+							if (valueFilter.mightContain(messageValue)) {
 								duplications.incrementAndGet();
 							}
 							else {
 								falsePositive.incrementAndGet();
 							}
 						}
-						else if (valueSet.contains(messageValue)) {
+						else if (valueFilter.mightContain(messageValue)) {
 							falseNegative.incrementAndGet();
 						}
 
-						valueSet.add(messageValue);
+						valueFilter.put(messageValue);
 						bloomFilter.put(messageLsn);
+						maxValue.accumulateAndGet(messageValue, Math::max);
 					})
 					.get();
 		}
 
-		private void insertRow(JdbcTemplate jdbcTemplate, int i) {
-			jdbcTemplate.update(String.format("INSERT INTO public.eos_test(val) VALUES (%s) ", i));
+		private BatchedLoadGenerator loadGenerator(DataSource dataSource) {
+			// A single writer keeps the values in order, as expected by the watermark oracle.
+			BatchedLoadGenerator generator = BatchedLoadGenerator.preparedBatch(dataSource,
+					"INSERT INTO public.eos_test(val) VALUES (?)", (statement, row) -> statement.setInt(1, (int) row));
+			generator.setBatchSize(100);
+			return generator;
 		}
 
 		private void pgTerminateBackend(JdbcTemplate jdbcTemplate) {
@@ -273,23 +388,11 @@ public class PostgresEosTest implements PostgresEosTestContainer {
 		}
 
 		private int getMessageValue(Message<?> m) {
-			try {
-				Map<?, ?> values = mapper.readValue((byte[]) m.getPayload(), Map.class);
-				return (Integer) values.get("val");
-			}
-			catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+			return VALUE_FIELD.extractInt((byte[]) m.getPayload());
 		}
 
 		private long getMessageLsn(Message<?> m) {
-			try {
-				Map<?, ?> values = mapper.readValue((byte[]) m.getHeaders().get("__lsn"), Map.class);
-				return Long.valueOf("" + values.get("payload"));
-			}
-			catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+			return JsonFieldExtractor.PAYLOAD.extractLong((byte[]) m.getHeaders().get("__lsn"));
 		}
 
 		@Bean
@@ -16,7 +16,6 @@
 
 package com.example.sidebeziumdemo.it.eos2;
 
-import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,7 +29,9 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.sidebeziumdemo.eosapp.dedup.LsnMessageSelector;
+import com.example.sidebeziumdemo.loadgen.BatchedLoadGenerator;
+import com.example.sidebeziumdemo.support.JsonFieldExtractor;
 import com.zaxxer.hikari.HikariDataSource;
 import io.debezium.engine.ChangeEvent;
 import io.debezium.engine.DebeziumEngine;
@@ -52,7 +53,6 @@ import org.springframework.integration.debezium.dsl.Debezium;
 import org.springframework.integration.debezium.dsl.DebeziumMessageProducerSpec;
 import org.springframework.integration.dsl.IntegrationFlow;
 import org.springframework.integration.handler.advice.IdempotentReceiverInterceptor;
-import org.springframework.integration.selector.MetadataStoreSelector;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.messaging.Message;
 import org.springframework.test.annotation.DirtiesContext;
@@ -133,22 +133,25 @@ public class PostgresEos2Test implements PostgresEosTestContainer {
 
 		dataGenerationStopped.set(false);
 
+		BatchedLoadGenerator generator = config.loadGenerator(context.getBean(DataSource.class));
+		// On every 1000 new inserts emulate a connector breakdown.
+		generator.setFailureHook(1000, () -> config.pgTerminateBackend(jdbcTemplate));
+
 		Executors.newSingleThreadExecutor().submit(() -> {
 
 			// wait until the Debezium connector is up and running.
 			barrierAwait();
 
-			for (int i = startIndex; i < startIndex + size; i++) {
+			try {
 				// Continuously insert new data entries.
-				config.insertRow(jdbcTemplate, i);
-
-				// On every 1000 new inserts emulate a connector breakdown.
-				if ((i % 1000) == 0) {
-					config.pgTerminateBackend(jdbcTemplate);
-				}
+				generator.run(startIndex, size);
+			}
+			catch (InterruptedException e) {
+				logger.error(e, "Data generation interrupted.");
+			}
+			finally {
+				dataGenerationStopped.set(true);
 			}
-
-			dataGenerationStopped.set(true);
 		});
 
 		Awaitility.await().until(() -> dataGenerationStopped.get());
@@ -170,9 +173,9 @@ public class PostgresEos2Test implements PostgresEosTestContainer {
 	@EnableAutoConfiguration(exclude = { MongoAutoConfiguration.class })
 	public static class StreamTestConfiguration {
 
-		Set<Integer> valueSet = new ConcurrentSkipListSet<>();
+		private static final JsonFieldExtractor VALUE_FIELD = JsonFieldExtractor.forField("val");
 
-		ObjectMapper mapper = new ObjectMapper();
+		Set<Integer> valueSet = new ConcurrentSkipListSet<>();
 
 		AtomicLong singleFailureDuplicationCount = new AtomicLong(0);
 
@@ -206,8 +209,12 @@ public class PostgresEos2Test implements PostgresEosTestContainer {
 					.get();
 		}
 
-		private void insertRow(JdbcTemplate jdbcTemplate, int i) {
-			jdbcTemplate.update(String.format("INSERT INTO public.eos_test(val) VALUES (%s) ", i));
+		private BatchedLoadGenerator loadGenerator(DataSource dataSource) {
+			BatchedLoadGenerator generator = BatchedLoadGenerator.preparedBatch(dataSource,
+					"INSERT INTO public.eos_test(val) VALUES (?)", (statement, row) -> statement.setInt(1, (int) row));
+			generator.setBatchSize(100);
+			generator.setWriters(4);
+			return generator;
 		}
 
 		private void pgTerminateBackend(JdbcTemplate jdbcTemplate) {
@@ -225,23 +232,11 @@ public class PostgresEos2Test implements PostgresEosTestContainer {
 		}
 
 		private int getMessageValue(Message<?> m) {
-			try {
-				Map<?, ?> values = mapper.readValue((byte[]) m.getPayload(), Map.class);
-				return (Integer) values.get("val");
-			}
-			catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+			return VALUE_FIELD.extractInt((byte[]) m.getPayload());
 		}
 
 		private long getMessageLsn(Message<?> m) {
-			try {
-				Map<?, ?> values = mapper.readValue((byte[]) m.getHeaders().get("__lsn"), Map.class);
-				return Long.valueOf("" + values.get("payload"));
-			}
-			catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+			return JsonFieldExtractor.PAYLOAD.extractLong((byte[]) m.getHeaders().get("__lsn"));
 		}
 
 		@Bean
@@ -263,8 +258,10 @@ public class PostgresEos2Test implements PostgresEosTestContainer {
 
 		@Bean
 		public IdempotentReceiverInterceptor idempotentReceiverInterceptor() {
-			IdempotentReceiverInterceptor idempotentReceiver = new IdempotentReceiverInterceptor(
-					new MetadataStoreSelector(message -> "" + getMessageLsn(message)));
+			// Keyed by the primitive LSN. Keeps the last 100000 LSNs, the older replays are rejected by the watermark.
+			LsnMessageSelector lsnSelector = new LsnMessageSelector(this::getMessageLsn, 100000);
+			lsnSelector.setRejectBelowEvictedWatermark(true);
+			IdempotentReceiverInterceptor idempotentReceiver = new IdempotentReceiverInterceptor(lsnSelector);
 			idempotentReceiver.setDiscardChannel(new NullChannel()); // discards the duplicates.
 			return idempotentReceiver;
 		}
@@ -27,9 +27,11 @@ import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
+import com.example.sidebeziumdemo.support.ChangeEventHeaders;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.zaxxer.hikari.HikariDataSource;
+import io.debezium.data.Envelope;
 import io.debezium.engine.ChangeEvent;
 import io.debezium.engine.DebeziumEngine;
 import org.awaitility.Awaitility;
@@ -271,7 +273,8 @@ public abstract class AbstractIncrementalSnapshotTest {
 	}
 
 	protected static String operationType(Message<?> message) {
-		return "" + toMap(message.getHeaders().get("__op")).get("payload");
+		Envelope.Operation operation = ChangeEventHeaders.operation(message);
+		return (operation != null) ? operation.code() : "null";
 	}
 
 	protected String getLsn(Message<?> message) {
@@ -28,8 +28,10 @@ import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
+import com.example.sidebeziumdemo.support.ChangeEventHeaders;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.debezium.data.Envelope;
 import io.debezium.engine.ChangeEvent;
 import io.debezium.engine.DebeziumEngine;
 import org.awaitility.Awaitility;
@@ -266,7 +268,8 @@ public abstract class AbstractIncrementalSnapshotTests {
 	}
 
 	protected static String operationType(Message<?> message) {
-		return "" + toMap(message.getHeaders().get("__op")).get("payload");
+		Envelope.Operation operation = ChangeEventHeaders.operation(message);
+		return (operation != null) ? operation.code() : "null";
 	}
 
 	protected static Properties toDebeziumConfig(String... properties) {
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.loadgen;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Load generator inserting the rows in batches, one transaction per batch, from several writer threads.
+ * <p>
+ * The rows are numbered from the first row on and claimed by the writers batch by batch, so every row is written
+ * exactly once but the batches of different writers commit in any order. Use a single writer when the consumer
+ * expects the rows in order.
+ * <p>
+ * A batch is written either as a prepared statement batch (see {@link #preparedBatch}) or, for Postgres, with the
+ * {@code COPY ... FROM STDIN} protocol (see {@link #postgresCopy}). The writers are paced to the target rate, if set,
+ * and the failure hook, e.g. a {@code pg_terminate_backend} of the replication connection, is called after the batch
+ * holding every n-th row is committed. The writers can be paused, e.g. while the replication slot retains too much
+ * WAL, and the pacing restarts from the resume, without a catch-up burst.
+ */
+public class BatchedLoadGenerator {
+
+	/**
+	 * Writes the rows [from, to) over the connection, within the batch transaction.
+	 */
+	@FunctionalInterface
+	public interface BatchWriter {
+
+		void write(Connection connection, long from, long to) throws SQLException;
+
+	}
+
+	/**
+	 * Binds the row parameters of the prepared insert statement.
+	 */
+	@FunctionalInterface
+	public interface RowBinder {
+
+		void bind(PreparedStatement statement, long row) throws SQLException;
+
+	}
+
+	/**
+	 * Appends the row, in the {@code COPY} text format, without the line terminator.
+	 */
+	@FunctionalInterface
+	public interface RowFormatter {
+
+		void format(long row, StringBuilder line);
+
+	}
+
+	/**
+	 * @param rows number of the written rows.
+	 * @param batches number of the committed batches.
+	 * @param failures number of the failure hook calls.
+	 * @param elapsed the generation time.
+	 */
+	public record Result(long rows, long batches, long failures, Duration elapsed) {
+
+		/**
+		 * @return The achieved rate in rows per second.
+		 */
+		public double rowsPerSecond() {
+			return (this.elapsed.isZero()) ? 0 : this.rows * 1e9 / this.elapsed.toNanos();
+		}
+
+	}
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final BatchWriter writer;
+
+	private int batchSize = 500;
+
+	private int writers = 1;
+
+	private double targetRate = 0;
+
+	private long failureInterval = 0;
+
+	private Runnable failureHook = () -> {
+	};
+
+	private BooleanSupplier pause = () -> false;
+
+	private volatile boolean stopped;
+
+	private long paceStart;
+
+	private long paceOffset;
+
+	/**
+	 * @param dataSource the data source to write to. Must pool at least as many connections as writers.
+	 * @param writer the batch writer.
+	 */
+	public BatchedLoadGenerator(DataSource dataSource, BatchWriter writer) {
+		Assert.notNull(dataSource, "The dataSource can not be null.");
+		Assert.notNull(writer, "The writer can not be null.");
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.writer = writer;
+	}
+
+	/**
+	 * Writes the batches with {@link PreparedStatement#executeBatch()}. For Postgres, add the
+	 * {@code reWriteBatchedInserts=true} to the JDBC url to have the driver rewrite the batch into multi-row
+	 * {@code VALUES} inserts.
+	 * @param dataSource the data source to write to.
+	 * @param insertSql the insert statement, e.g. {@code INSERT INTO public.eos_test(val) VALUES (?)}.
+	 * @param binder binds the row parameters.
+	 * @return the load generator.
+	 */
+	public static BatchedLoadGenerator preparedBatch(DataSource dataSource, String insertSql, RowBinder binder) {
+		Assert.hasText(insertSql, "The insertSql can not be empty.");
+		Assert.notNull(binder, "The binder can not be null.");
+		return new BatchedLoadGenerator(dataSource, (connection, from, to) -> {
+			try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+				for (long row = from; row < to; row++) {
+					binder.bind(statement, row);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+			}
+		});
+	}
+
+	/**
+	 * Writes the batches with the Postgres {@code COPY ... FROM STDIN}, the fastest bulk load path.
+	 * @param dataSource the Postgres data source to write to.
+	 * @param copySql the copy statement, e.g. {@code COPY public.eos_test(val) FROM STDIN}.
+	 * @param formatter formats the row in the copy text format.
+	 * @return the load generator.
+	 */
+	public static BatchedLoadGenerator postgresCopy(DataSource dataSource, String copySql, RowFormatter formatter) {
+		Assert.hasText(copySql, "The copySql can not be empty.");
+		Assert.notNull(formatter, "The formatter can not be null.");
+		return new BatchedLoadGenerator(dataSource, (connection, from, to) -> {
+			StringBuilder lines = new StringBuilder((int) (to - from) * 16);
+			for (long row = from; row < to; row++) {
+				formatter.format(row, lines);
+				lines.append('\n');
+			}
+			try {
+				connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql, new StringReader(lines.toString()));
+			}
+			catch (IOException e) {
+				throw new SQLException("COPY failed", e);
+			}
+		});
+	}
+
+	/**
+	 * @param batchSize number of rows per batch and transaction. Defaults to 500.
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "The batchSize must be positive.");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param writers number of the writer threads. Defaults to 1.
+	 */
+	public void setWriters(int writers) {
+		Assert.isTrue(writers > 0, "The writers must be positive.");
+		this.writers = writers;
+	}
+
+	/**
+	 * @param targetRate the target rate in rows per second, or 0 (the default) for as fast as possible.
+	 */
+	public void setTargetRate(double targetRate) {
+		Assert.isTrue(targetRate >= 0, "The targetRate can not be negative.");
+		this.targetRate = targetRate;
+	}
+
+	/**
+	 * @param everyRows call the hook after the batch holding every multiple of this row number is committed.
+	 * @param failureHook the failure injection, e.g. terminating the connector replication connection.
+	 */
+	public void setFailureHook(long everyRows, Runnable failureHook) {
+		Assert.isTrue(everyRows > 0, "The everyRows must be positive.");
+		Assert.notNull(failureHook, "The failureHook can not be null.");
+		this.failureInterval = everyRows;
+		this.failureHook = failureHook;
+	}
+
+	/**
+	 * @param pause the writers wait, before every batch, while it returns true.
+	 */
+	public void setPause(BooleanSupplier pause) {
+		Assert.notNull(pause, "The pause can not be null.");
+		this.pause = pause;
+	}
+
+	/**
+	 * Stops the running generation after the in-flight batches.
+	 */
+	public void stop() {
+		this.stopped = true;
+	}
+
+	/**
+	 * Writes the rows and waits until done.
+	 * @param firstRow the number of the first row.
+	 * @param rowCount number of the rows to write.
+	 * @return the generation result.
+	 * @throws InterruptedException if interrupted while waiting for the writers.
+	 */
+	public Result run(long firstRow, long rowCount) throws InterruptedException {
+		this.stopped = false;
+		AtomicLong cursor = new AtomicLong(0);
+		AtomicLong rows = new AtomicLong(0);
+		AtomicLong batches = new AtomicLong(0);
+		AtomicLong failures = new AtomicLong(0);
+		long start = System.nanoTime();
+		synchronized (this) {
+			this.paceStart = start;
+			this.paceOffset = 0;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(this.writers,
+				new CustomizableThreadFactory("load-generator-"));
+		try {
+			List<Future<?>> futures = new ArrayList<>(this.writers);
+			for (int i = 0; i < this.writers; i++) {
+				futures.add(executor.submit(() -> {
+					long offset;
+					while (!this.stopped && (offset = cursor.getAndAdd(this.batchSize)) < rowCount) {
+						awaitResume(offset);
+						pace(offset);
+						long from = firstRow + offset;
+						long to = from + Math.min(this.batchSize, rowCount - offset);
+						writeBatch(from, to);
+						rows.addAndGet(to - from);
+						batches.incrementAndGet();
+						failures.addAndGet(injectFailures(from, to));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				}
+				catch (ExecutionException e) {
+					stop();
+					throw (e.getCause() instanceof RuntimeException runtime)
+							? runtime
+							: new IllegalStateException("Load generation failed", e.getCause());
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return new Result(rows.get(), batches.get(), failures.get(), Duration.ofNanos(System.nanoTime() - start));
+	}
+
+	private void writeBatch(long from, long to) {
+		this.jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			try {
+				this.writer.write(connection, from, to);
+				connection.commit();
+			}
+			catch (SQLException | RuntimeException e) {
+				connection.rollback();
+				throw e;
+			}
+			finally {
+				connection.setAutoCommit(autoCommit);
+			}
+			return null;
+		});
+	}
+
+	private void awaitResume(long offset) throws InterruptedException {
+		if (!this.pause.getAsBoolean()) {
+			return;
+		}
+		while (this.pause.getAsBoolean() && !this.stopped) {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+		synchronized (this) {
+			if (offset > this.paceOffset) {
+				this.paceStart = System.nanoTime();
+				this.paceOffset = offset;
+			}
+		}
+	}
+
+	private void pace(long offset) throws InterruptedException {
+		if (this.targetRate > 0) {
+			long due;
+			synchronized (this) {
+				due = this.paceStart + (long) ((offset - this.paceOffset) * 1e9 / this.targetRate);
+			}
+			long wait;
+			while ((wait = due - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(wait);
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+			}
+		}
+	}
+
+	private long injectFailures(long from, long to) {
+		if (this.failureInterval == 0) {
+			return 0;
+		}
+		long count = 0;
+		long first = Math.floorDiv(from + this.failureInterval - 1, this.failureInterval) * this.failureInterval;
+		for (long row = first; row < to; row += this.failureInterval) {
+			this.failureHook.run();
+			count++;
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.loadgen;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.dao.DataAccessException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class BatchedLoadGeneratorTests {
+
+	@Test
+	public void writeEveryRowOnceInBatches() throws Exception {
+		Connection connection = mockConnection();
+		Set<Long> rows = new ConcurrentSkipListSet<>();
+		AtomicInteger failures = new AtomicInteger();
+
+		BatchedLoadGenerator generator = BatchedLoadGenerator.preparedBatch(dataSource(connection),
+				"INSERT INTO public.eos_test(val) VALUES (?)", (statement, row) -> {
+					statement.setLong(1, row);
+					assertThat(rows.add(row)).isTrue();
+				});
+		generator.setBatchSize(100);
+		generator.setWriters(4);
+		generator.setFailureHook(250, failures::incrementAndGet);
+
+		BatchedLoadGenerator.Result result = generator.run(1, 1050);
+
+		assertThat(result.rows()).isEqualTo(1050);
+		assertThat(result.batches()).isEqualTo(11);
+		assertThat(result.failures()).isEqualTo(4);
+		assertThat(failures.get()).isEqualTo(4);
+		assertThat(rows).hasSize(1050).first().isEqualTo(1L);
+		assertThat(rows).last().isEqualTo(1050L);
+		verify(connection, times(11)).commit();
+	}
+
+	@Test
+	public void paceToTargetRate() throws Exception {
+		BatchedLoadGenerator generator = BatchedLoadGenerator.preparedBatch(dataSource(mockConnection()),
+				"INSERT INTO public.eos_test(val) VALUES (?)", (statement, row) -> statement.setLong(1, row));
+		generator.setBatchSize(50);
+		generator.setWriters(2);
+		generator.setTargetRate(2000);
+
+		BatchedLoadGenerator.Result result = generator.run(0, 500);
+
+		// The last batch starts at the row 450, i.e. 225ms in.
+		assertThat(result.elapsed()).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+		assertThat(result.rowsPerSecond()).isLessThan(2500);
+	}
+
+	@Test
+	public void pauseWriters() throws Exception {
+		BatchedLoadGenerator generator = BatchedLoadGenerator.preparedBatch(dataSource(mockConnection()),
+				"INSERT INTO public.eos_test(val) VALUES (?)", (statement, row) -> statement.setLong(1, row));
+		long resume = System.nanoTime() + Duration.ofMillis(300).toNanos();
+		generator.setPause(() -> System.nanoTime() < resume);
+		generator.setWriters(2);
+		generator.setTargetRate(100_000);
+
+		BatchedLoadGenerator.Result result = generator.run(0, 1000);
+
+		assertThat(result.rows()).isEqualTo(1000);
+		assertThat(result.elapsed()).isGreaterThanOrEqualTo(Duration.ofMillis(300));
+	}
+
+	@Test
+	public void rollbackAndFailOnWriteError() throws Exception {
+		Connection connection = mockConnection();
+		BatchedLoadGenerator generator = new BatchedLoadGenerator(dataSource(connection), (c, from, to) -> {
+			throw new SQLException("boom");
+		});
+
+		assertThatThrownBy(() -> generator.run(0, 100)).isInstanceOf(DataAccessException.class);
+		verify(connection).rollback();
+	}
+
+	private static Connection mockConnection() throws SQLException {
+		Connection connection = mock(Connection.class);
+		PreparedStatement statement = mock(PreparedStatement.class);
+		given(connection.prepareStatement(anyString())).willReturn(statement);
+		given(statement.executeBatch()).willReturn(new int[0]);
+		return connection;
+	}
+
+	private static DataSource dataSource(Connection connection) throws SQLException {
+		DataSource dataSource = mock(DataSource.class);
+		given(dataSource.getConnection()).willReturn(connection);
+		return dataSource;
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.metrics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.example.sidebeziumdemo.metrics.DebeziumInboundMetrics.Deduplication;
+import io.debezium.engine.ChangeEvent;
+import io.debezium.engine.Header;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.integration.debezium.support.DebeziumHeaders;
+import org.springframework.integration.handler.ServiceActivatingHandler;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DebeziumInboundMetricsTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final DebeziumInboundMetrics metrics = new DebeziumInboundMetrics();
+
+	@Test
+	public void recordEventsLatencyAndLag() {
+		this.metrics.bindTo(this.registry);
+		ServiceActivatingHandler handler = handler();
+
+		long sourceTs = System.currentTimeMillis() - 1000;
+		for (int i = 0; i < 3; i++) {
+			handler.handleMessage(MessageBuilder.withPayload(bytes("{\"val\":" + i + "}"))
+				.setHeader(DebeziumHeaders.DESTINATION, "my-topic.public.eos_test")
+				.setHeader("__op", bytes("{\"payload\":\"c\"}"))
+				.setHeader(DebeziumInboundMetrics.SOURCE_TS, bytes("{\"payload\":" + sourceTs + "}"))
+				.build());
+		}
+		handler.handleMessage(MessageBuilder.withPayload(bytes("{\"val\":3,\"__source_ts_ms\":" + sourceTs + "}"))
+			.setHeader(DebeziumHeaders.DESTINATION, "my-topic.public.eos_test")
+			.setHeader("__op", "u")
+			.build());
+
+		assertThat(this.registry.get("debezium.events").tags("destination", "my-topic.public.eos_test", "op", "create")
+			.counter().count()).isEqualTo(3);
+		assertThat(this.registry.get("debezium.events").tags("op", "update").counter().count()).isEqualTo(1);
+		assertThat(this.registry.get("debezium.handler").tag("destination", "my-topic.public.eos_test").timer().count())
+			.isEqualTo(4);
+		assertThat(this.registry.get("debezium.source.lag").timer().count()).isEqualTo(4);
+		assertThat(this.registry.get("debezium.source.lag").timer().max(TimeUnit.MILLISECONDS))
+			.isGreaterThanOrEqualTo(1000);
+		assertThat(this.registry.get("debezium.queue.depth").gauge().value()).isNaN();
+	}
+
+	@Test
+	public void recordBatchEvents() {
+		this.metrics.bindTo(this.registry);
+
+		handler().handleMessage(MessageBuilder.withPayload(List.of(
+				changeEvent("my-topic.public.orders", "c"),
+				changeEvent("my-topic.public.orders", "d"),
+				changeEvent("my-topic.public.customers", "c")))
+			.build());
+
+		assertThat(this.registry.get("debezium.events").tags("destination", "my-topic.public.orders").counters())
+			.hasSize(2);
+		assertThat(this.registry.get("debezium.events").tags("destination", "my-topic.public.customers", "op", "create")
+			.counter().count()).isEqualTo(1);
+		assertThat(this.registry.find("debezium.source.lag").timers()).isEmpty();
+		assertThat(this.registry.get("debezium.handler").timer().getId().getTag("destination"))
+			.isEqualTo(DebeziumInboundMetrics.BATCH_DESTINATION);
+	}
+
+	@Test
+	public void deduplicationCounters() {
+		AtomicLong hits = new AtomicLong();
+		this.metrics.bindDeduplication(Deduplication.HIT, hits::get);
+		this.metrics.recordDeduplication(Deduplication.FALSE_POSITIVE);
+		this.metrics.bindTo(this.registry);
+
+		hits.set(5);
+		this.metrics.recordDeduplication(Deduplication.FALSE_POSITIVE);
+		this.metrics.recordDeduplication(Deduplication.FALSE_NEGATIVE);
+
+		assertThat(this.registry.get("debezium.dedup").tag("outcome", "hit").functionCounter().count()).isEqualTo(5);
+		// Not recorded before bound.
+		assertThat(this.registry.get("debezium.dedup").tag("outcome", "false_positive").counter().count())
+			.isEqualTo(1);
+		assertThat(this.registry.get("debezium.dedup").tag("outcome", "false_negative").counter().count())
+			.isEqualTo(1);
+	}
+
+	private ServiceActivatingHandler handler() {
+		ServiceActivatingHandler handler = new ServiceActivatingHandler((Message<?> message) -> null);
+		handler.setAdviceChain(List.of(this.metrics.handlerAdvice()));
+		handler.setBeanFactory(new DefaultListableBeanFactory());
+		handler.afterPropertiesSet();
+		return handler;
+	}
+
+	private static ChangeEvent<byte[], byte[]> changeEvent(String destination, String op) {
+		Header<byte[]> opHeader = new Header<>() {
+
+			@Override
+			public String getKey() {
+				return "__op";
+			}
+
+			@Override
+			public byte[] getValue() {
+				return bytes("{\"payload\":\"" + op + "\"}");
+			}
+
+		};
+		return new ChangeEvent<>() {
+
+			@Override
+			public byte[] key() {
+				return null;
+			}
+
+			@Override
+			public byte[] value() {
+				return bytes("{}");
+			}
+
+			@Override
+			public String destination() {
+				return destination;
+			}
+
+			@Override
+			public <H> List<Header<H>> headers() {
+				// The headers of a byte[] serialized event hold byte[] values.
+				@SuppressWarnings("unchecked")
+				Header<H> header = (Header<H>) (Header<?>) opHeader;
+				return List.of(header);
+			}
+
+		};
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
@@ -18,6 +18,7 @@ package com.example.sidebeziumdemo.miscellaneous;
 
 import javax.sql.DataSource;
 
+import com.example.sidebeziumdemo.loadgen.BatchedLoadGenerator;
 import com.zaxxer.hikari.HikariDataSource;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -81,27 +82,20 @@ public class DataGenerator {
 	// private QueueChannel queueChannel;
 
 	@Autowired
-	private JdbcTemplate jdbcTemplate;
+	private DataSource dataSource;
 
 	@BeforeEach
-	public void beforeAll() {
-		//System.out.println("### MAPPED PORT: " + SqlServerTestContainer.mappedPort());
-		for (int i = 0; i < 100000; i++) {
-			jdbcTemplate.update(
-					"INSERT INTO customers(first_name,last_name,email) " +
-							String.format("VALUES('%s', '%s', '%s@spring.org')", "first_" + i, "last_" + i,
-									"name_" + i));
-			// System.out.println(i);
-
-			if ((i % 10000) == 0) {
-				try {
-					Thread.sleep(1000);
-				}
-				catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-		}
+	public void beforeAll() throws InterruptedException {
+		BatchedLoadGenerator generator = BatchedLoadGenerator.preparedBatch(this.dataSource,
+				"INSERT INTO customers(first_name,last_name,email) VALUES (?,?,?)", (statement, row) -> {
+					statement.setString(1, "first_" + row);
+					statement.setString(2, "last_" + row);
+					statement.setString(3, "name_" + row + "@spring.org");
+				});
+		generator.setWriters(4);
+		generator.setBatchSize(500);
+		// Use the setTargetRate(rowsPerSecond) for a steady load instead of a burst.
+		generator.run(0, 100000);
 	}
 
 	@Test
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.monitoring;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import com.example.sidebeziumdemo.monitoring.ReplicationSlotMonitor.SlotStatus;
+import io.debezium.engine.spi.OffsetCommitPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ReplicationSlotMonitorTests {
+
+	private final ResultSet resultSet = mock(ResultSet.class);
+
+	private final List<String> events = new ArrayList<>();
+
+	private ReplicationSlotMonitor monitor;
+
+	private PreparedStatement statement;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		DataSource dataSource = mock(DataSource.class);
+		Connection connection = mock(Connection.class);
+		this.statement = mock(PreparedStatement.class);
+		given(dataSource.getConnection()).willReturn(connection);
+		given(connection.prepareStatement(anyString())).willReturn(this.statement);
+		given(this.statement.executeQuery()).willReturn(this.resultSet);
+
+		this.monitor = new ReplicationSlotMonitor(dataSource, "debezium", 1000);
+		this.monitor.setListener(new ReplicationSlotMonitor.Listener() {
+
+			@Override
+			public void retentionExceeded(SlotStatus status) {
+				events.add("exceeded:" + status.retainedBytes());
+			}
+
+			@Override
+			public void retentionRecovered(SlotStatus status) {
+				events.add("recovered:" + status.retainedBytes());
+			}
+
+		});
+	}
+
+	@Test
+	public void reportSlotPositions() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		this.monitor.bindTo(registry);
+		assertThat(registry.get("debezium.slot.retained").gauge().value()).isNaN();
+
+		slot(10_000, 9_500, 9_800);
+		this.monitor.recordHandled(9_900);
+		this.monitor.recordHandled(9_850);
+		this.monitor.poll();
+
+		verify(this.statement).setString(1, "debezium");
+		assertThat(registry.get("debezium.slot.retained").tag("slot", "debezium").gauge().value()).isEqualTo(500);
+		assertThat(registry.get("debezium.slot.flush.lag").gauge().value()).isEqualTo(200);
+		assertThat(registry.get("debezium.slot.handled.lag").gauge().value()).isEqualTo(100);
+		assertThat(registry.get("debezium.slot.unflushed").gauge().value()).isEqualTo(100);
+		assertThat(this.monitor.getStatus().active()).isTrue();
+		assertThat(this.events).isEmpty();
+
+		given(this.resultSet.next()).willReturn(false);
+		this.monitor.poll();
+		assertThat(this.monitor.getStatus()).isNull();
+	}
+
+	@Test
+	public void forceFlushOverThreshold() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("offset.flush.interval.ms", "60000");
+		OffsetCommitPolicy policy = OffsetCommitPolicy.periodic(properties).or(this.monitor.flushPolicy());
+
+		slot(10_000, 8_000, 9_000);
+		this.monitor.poll();
+		assertThat(this.monitor.isRetentionExceeded()).isTrue();
+		assertThat(policy.performCommit(1, Duration.ofMillis(10))).isTrue();
+		assertThat(policy.performCommit(0, Duration.ofMillis(10))).isFalse();
+
+		slot(10_500, 9_800, 10_400);
+		this.monitor.poll();
+		this.monitor.poll();
+		assertThat(this.monitor.isRetentionExceeded()).isFalse();
+		assertThat(policy.performCommit(1, Duration.ofMillis(10))).isFalse();
+		assertThat(this.events).containsExactly("exceeded:2000", "recovered:700");
+	}
+
+	@Test
+	public void skipNullSlotPositions() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		this.monitor.bindTo(registry);
+
+		// A slot without a reserved WAL, e.g. just created, has NULL restart_lsn and confirmed_flush_lsn.
+		slot(10_000, 0, 0);
+		given(this.resultSet.wasNull()).willReturn(true);
+		this.monitor.poll();
+
+		assertThat(this.monitor.getStatus()).isNull();
+		assertThat(this.monitor.isRetentionExceeded()).isFalse();
+		assertThat(registry.get("debezium.slot.retained").gauge().value()).isNaN();
+		assertThat(this.events).isEmpty();
+	}
+
+	private void slot(long current, long restart, long confirmedFlush) throws Exception {
+		given(this.resultSet.next()).willReturn(true);
+		given(this.resultSet.getLong(1)).willReturn(current);
+		given(this.resultSet.getLong(2)).willReturn(restart);
+		given(this.resultSet.getLong(3)).willReturn(confirmedFlush);
+		given(this.resultSet.getBoolean(4)).willReturn(true);
+	}
+
+}
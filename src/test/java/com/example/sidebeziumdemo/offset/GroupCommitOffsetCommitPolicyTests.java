@@ -0,0 +1,73 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.offset;
+
+import java.time.Duration;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GroupCommitOffsetCommitPolicyTests {
+
+	@Test
+	public void commitOnEventsOrInterval() {
+		GroupCommitOffsetCommitPolicy policy = new GroupCommitOffsetCommitPolicy(100, Duration.ofSeconds(1));
+
+		assertThat(policy.performCommit(99, Duration.ofMillis(10))).isFalse();
+		assertThat(policy.getPendingEvents()).isEqualTo(99);
+		assertThat(policy.performCommit(130, Duration.ofMillis(20))).isTrue();
+		assertThat(policy.getPendingEvents()).isZero();
+
+		assertThat(policy.performCommit(0, Duration.ofSeconds(5))).isFalse();
+		assertThat(policy.performCommit(10, Duration.ofSeconds(1))).isTrue();
+
+		assertThat(policy.getCommits()).isEqualTo(2);
+		assertThat(policy.getLastWindowEvents()).isEqualTo(10);
+		assertThat(policy.getMaxWindowEvents()).isEqualTo(130);
+		assertThat(policy.getMeanWindowEvents()).isEqualTo(70);
+	}
+
+	@Test
+	public void requestsAreCoalesced() {
+		GroupCommitOffsetCommitPolicy policy = new GroupCommitOffsetCommitPolicy(100, Duration.ofSeconds(1));
+		policy.requestCommit();
+		policy.requestCommit();
+		policy.requestCommit();
+
+		assertThat(policy.performCommit(1, Duration.ofMillis(1))).isTrue();
+		assertThat(policy.performCommit(2, Duration.ofMillis(2))).isFalse();
+		assertThat(policy.getCommits()).isEqualTo(1);
+		assertThat(policy.getCoalescedRequests()).isEqualTo(2);
+	}
+
+	@Test
+	public void windowGauges() {
+		GroupCommitOffsetCommitPolicy policy = new GroupCommitOffsetCommitPolicy(100, Duration.ofSeconds(1));
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		policy.bindTo(registry);
+
+		policy.performCommit(150, Duration.ofMillis(5));
+		policy.performCommit(42, Duration.ofMillis(5));
+
+		assertThat(registry.get("debezium.offset.commit.window.max.events").gauge().value()).isEqualTo(150);
+		assertThat(registry.get("debezium.offset.commit.window.pending.events").gauge().value()).isEqualTo(42);
+		assertThat(registry.get("debezium.offset.commits").gauge().value()).isEqualTo(1);
+	}
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.offset;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.connect.runtime.WorkerConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedOffsetLogBackingStoreTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void offsetsSurviveRestart() throws Exception {
+		Path file = this.tempDir.resolve("offsets.log");
+		MappedOffsetLogBackingStore store = start(Map.of(MappedOffsetLogBackingStore.FILENAME_CONFIG, file.toString()));
+		for (int i = 0; i < 100; i++) {
+			set(store, "partition-" + (i % 3), "lsn-" + i);
+		}
+		assertThat(store.getAppends()).isEqualTo(100);
+		assertThat(get(store, "partition-1")).isEqualTo("lsn-97");
+		store.stop();
+
+		store = start(Map.of(MappedOffsetLogBackingStore.FILENAME_CONFIG, file.toString()));
+		assertThat(get(store, "partition-0")).isEqualTo("lsn-99");
+		assertThat(get(store, "partition-1")).isEqualTo("lsn-97");
+		assertThat(get(store, "partition-2")).isEqualTo("lsn-98");
+		assertThat(get(store, "missing")).isNull();
+		store.stop();
+	}
+
+	@Test
+	public void logIsCompacted() throws Exception {
+		Path file = this.tempDir.resolve("offsets.log");
+		Map<String, String> config = Map.of(MappedOffsetLogBackingStore.FILENAME_CONFIG, file.toString(),
+				MappedOffsetLogBackingStore.CAPACITY_CONFIG, "4096",
+				MappedOffsetLogBackingStore.SYNC_INTERVAL_CONFIG, "100");
+		MappedOffsetLogBackingStore store = start(config);
+		for (int i = 0; i < 10000; i++) {
+			set(store, "partition", "{\"lsn\":" + i + "}");
+		}
+		assertThat(store.getCompactions()).isGreaterThan(10);
+		assertThat(Files.size(file)).isEqualTo(4096);
+		store.stop();
+
+		store = start(config);
+		assertThat(get(store, "partition")).isEqualTo("{\"lsn\":9999}");
+		store.stop();
+	}
+
+	@Test
+	public void compactionIsOffTheCommitPath() throws Exception {
+		Path file = this.tempDir.resolve("offsets.log");
+		Map<String, String> config = Map.of(MappedOffsetLogBackingStore.FILENAME_CONFIG, file.toString(),
+				MappedOffsetLogBackingStore.CAPACITY_CONFIG, "4096");
+		MappedOffsetLogBackingStore store = start(config);
+		int i = 0;
+		while (store.getCompactions() < 5) {
+			set(store, "partition-" + (i % 3), "{\"lsn\":" + i + "}");
+			i++;
+			Thread.sleep(1);
+		}
+		// The background compaction completes before the second half of the log is filled.
+		assertThat(store.getInlineCompactions()).isZero();
+		store.stop();
+
+		store = start(config);
+		for (int p = 0; p < 3; p++) {
+			int last = i - 1 - ((i - 1 - p) % 3);
+			assertThat(get(store, "partition-" + p)).isEqualTo("{\"lsn\":" + last + "}");
+		}
+		store.stop();
+	}
+
+	@Test
+	public void commitDurationIsTimed() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		Metrics.addRegistry(registry);
+		try {
+			Path file = this.tempDir.resolve("timed.log");
+			MappedOffsetLogBackingStore store = start(
+					Map.of(MappedOffsetLogBackingStore.FILENAME_CONFIG, file.toString()));
+			for (int i = 0; i < 10; i++) {
+				set(store, "partition", "lsn-" + i);
+			}
+			Timer timer = registry.get(MappedOffsetLogBackingStore.COMMIT_TIMER).tag("file", "timed.log").timer();
+			assertThat(timer.count()).isEqualTo(10);
+			assertThat(timer.totalTime(TimeUnit.NANOSECONDS)).isPositive();
+			store.stop();
+			assertThat(registry.find(MappedOffsetLogBackingStore.COMMIT_TIMER).timers()).isEmpty();
+		}
+		finally {
+			Metrics.removeRegistry(registry);
+		}
+	}
+
+	@Test
+	public void tornTailIsIgnored() throws Exception {
+		Path file = this.tempDir.resolve("offsets.log");
+		MappedOffsetLogBackingStore store = start(Map.of(MappedOffsetLogBackingStore.FILENAME_CONFIG, file.toString()));
+		set(store, "partition", "first");
+		set(store, "partition", "second");
+		store.stop();
+
+		// Corrupt the last value byte of the second record.
+		int recordLength = MappedOffsetLogBackingStore.RECORD_HEADER_BYTES + 8 + "partition".length() + "second".length();
+		int secondRecordEnd = MappedOffsetLogBackingStore.HEADER_BYTES
+				+ MappedOffsetLogBackingStore.RECORD_HEADER_BYTES + 8 + "partition".length() + "first".length()
+				+ recordLength;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 'X' }), secondRecordEnd - 1);
+		}
+
+		store = start(Map.of(MappedOffsetLogBackingStore.FILENAME_CONFIG, file.toString()));
+		assertThat(get(store, "partition")).isEqualTo("first");
+		set(store, "partition", "third");
+		store.stop();
+
+		store = start(Map.of(MappedOffsetLogBackingStore.FILENAME_CONFIG, file.toString()));
+		assertThat(get(store, "partition")).isEqualTo("third");
+		store.stop();
+	}
+
+	@Test
+	public void configuredFromWorkerConfig() throws Exception {
+		Path file = this.tempDir.resolve("offsets.log");
+		MappedOffsetLogBackingStore store = new MappedOffsetLogBackingStore();
+		store.configure(new WorkerConfig(new ConfigDef(),
+				Map.of(MappedOffsetLogBackingStore.FILENAME_CONFIG, file.toString())));
+		store.start();
+		set(store, "partition", "value");
+		store.stop();
+		assertThat(Files.exists(file)).isTrue();
+	}
+
+	private static MappedOffsetLogBackingStore start(Map<String, String> config) {
+		MappedOffsetLogBackingStore store = new MappedOffsetLogBackingStore();
+		store.configure(config);
+		store.start();
+		return store;
+	}
+
+	private static void set(MappedOffsetLogBackingStore store, String key, String value) throws Exception {
+		store.set(Map.of(bytes(key), bytes(value)), null).get(10, TimeUnit.SECONDS);
+	}
+
+	private static String get(MappedOffsetLogBackingStore store, String key) throws Exception {
+		ByteBuffer value = store.get(List.of(bytes(key))).get(10, TimeUnit.SECONDS).get(bytes(key));
+		return (value != null) ? StandardCharsets.UTF_8.decode(value).toString() : null;
+	}
+
+	private static ByteBuffer bytes(String value) {
+		return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
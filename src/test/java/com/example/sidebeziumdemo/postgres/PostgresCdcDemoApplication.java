@@ -1,26 +1,66 @@
 package com.example.sidebeziumdemo.postgres;
 
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+
+import com.example.sidebeziumdemo.dispatch.BoundedVirtualThreadExecutor;
+import com.example.sidebeziumdemo.dispatch.CdcPartitionKeys;
+import com.example.sidebeziumdemo.dispatch.ChangeEventRouter;
+import com.example.sidebeziumdemo.dispatch.CompletionAwareOffsetCommitPolicy;
+import com.example.sidebeziumdemo.dispatch.OrderedCompletionTracker;
+import com.example.sidebeziumdemo.dispatch.VirtualThreadSupport;
+import com.example.sidebeziumdemo.support.ChangeEventHeaders;
+import com.example.sidebeziumdemo.tuning.AdaptiveDebeziumInboundAdapter;
+import com.example.sidebeziumdemo.tuning.BatchSizeTuner;
+import com.example.sidebeziumdemo.tuning.DebeziumTunerEndpoint;
+import io.debezium.data.Envelope;
 import io.debezium.engine.ChangeEvent;
 import io.debezium.engine.DebeziumEngine;
+import io.debezium.engine.spi.OffsetCommitPolicy;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
 import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
 import org.springframework.core.log.LogAccessor;
+import org.springframework.integration.channel.AbstractExecutorChannel;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.integration.channel.NullChannel;
+import org.springframework.integration.channel.PartitionedChannel;
 import org.springframework.integration.debezium.dsl.Debezium;
 import org.springframework.integration.debezium.dsl.DebeziumMessageProducerSpec;
 import org.springframework.integration.debezium.support.DebeziumHeaders;
+import org.springframework.integration.debezium.support.DefaultDebeziumHeaderMapper;
 import org.springframework.integration.dsl.IntegrationFlow;
-import org.springframework.util.StringUtils;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
 
 @SpringBootApplication(exclude = { MongoAutoConfiguration.class, DataSourceAutoConfiguration.class })
 public class PostgresCdcDemoApplication {
 
 	static final LogAccessor logger = new LogAccessor(PostgresCdcDemoApplication.class);
 
+	@Value("${app.dispatch.lanes:0}")
+	private int dispatchLanes;
+
+	@Value("${app.dispatch.window:10000}")
+	private int dispatchWindow;
+
+	@Value("${app.dispatch.virtual-threads:false}")
+	private boolean dispatchVirtualThreads;
+
+	@Value("${app.dispatch.concurrency:0}")
+	private int dispatchConcurrency;
+
 	public static void main(String[] args) {
 		new SpringApplicationBuilder(PostgresCdcDemoApplication.class)
 				.web(WebApplicationType.NONE)
@@ -29,7 +69,9 @@ public class PostgresCdcDemoApplication {
 	}
 
 	@Bean
-	public IntegrationFlow streamFlowFromBuilder(DebeziumEngine.Builder<ChangeEvent<byte[], byte[]>> builder) {
+	@ConditionalOnProperty(name = "app.tuner.enabled", havingValue = "false", matchIfMissing = true)
+	public IntegrationFlow streamFlowFromBuilder(DebeziumEngine.Builder<ChangeEvent<byte[], byte[]>> builder,
+			Environment environment) {
 
 		DebeziumMessageProducerSpec dsl = Debezium.inboundChannelAdapter(builder)
 				.headerNames("*")
@@ -37,46 +79,153 @@ public class PostgresCdcDemoApplication {
 				.enableBatch(false)
 				.enableEmptyPayload(true);
 
+		if (this.dispatchLanes > 0 || this.dispatchConcurrency > 0) {
+			// Parallel mode: the events are dispatched over ordered lanes by primary key, the order holds per key
+			// only, or, with the concurrency, one thread per event without any order. The offsets are committed
+			// once all the dispatched events are completed.
+			OrderedCompletionTracker tracker = new OrderedCompletionTracker(this.dispatchWindow);
+			// The periodic policy requires the offset.flush.interval.ms property, the engine defaults it to 60s.
+			Properties properties = debeziumProperties(environment);
+			properties.putIfAbsent("offset.flush.interval.ms", "60000");
+			builder.using(new CompletionAwareOffsetCommitPolicy(
+					OffsetCommitPolicy.periodic(properties), tracker, Duration.ofSeconds(30)));
+
+			AbstractExecutorChannel channel;
+			if (this.dispatchLanes > 0) {
+				PartitionedChannel lanes = new PartitionedChannel(this.dispatchLanes, CdcPartitionKeys.primaryKey());
+				if (this.dispatchVirtualThreads) {
+					lanes.setThreadFactory(VirtualThreadSupport.threadFactory("cdc-lane-"));
+				}
+				channel = lanes;
+			}
+			else {
+				channel = new ExecutorChannel(new BoundedVirtualThreadExecutor(this.dispatchConcurrency));
+			}
+			channel.addInterceptor(tracker.sequencingInterceptor());
+
+			return IntegrationFlow.from(dsl)
+					.channel(channel)
+					.handle(changeEventRouter(), endpointSpec -> endpointSpec.advice(tracker.completionAdvice()))
+					.get();
+		}
+
 		return IntegrationFlow.from(dsl)
+				.handle(changeEventRouter())
+				.get();
+	}
+
+	// Tuned mode: the max.batch.size, max.queue.size and poll.interval.ms are adapted to the handler p99 latency.
+	// The engine is restarted on every change, so use it with a persistent offset store.
+	@Bean
+	@ConditionalOnProperty(name = "app.tuner.enabled", havingValue = "true")
+	public AdaptiveDebeziumInboundAdapter adaptiveDebeziumInboundAdapter(
+			DebeziumEngine.Builder<ChangeEvent<byte[], byte[]>> builder, Environment environment) {
+
+		Properties properties = debeziumProperties(environment);
+
+		BatchSizeTuner tuner = new BatchSizeTuner(Duration.ofMillis(200), 1, 4096, 4, 100,
+				new BatchSizeTuner.Settings(
+						Integer.parseInt(properties.getProperty("max.batch.size", "2048")),
+						Integer.parseInt(properties.getProperty("max.queue.size", "8192")),
+						Long.parseLong(properties.getProperty("poll.interval.ms", "500"))));
+
+		AdaptiveDebeziumInboundAdapter adapter = new AdaptiveDebeziumInboundAdapter(builder, properties,
+				debeziumInputChannel(), tuner);
+		adapter.setProducerCustomizer(producer -> {
+			DefaultDebeziumHeaderMapper headerMapper = new DefaultDebeziumHeaderMapper();
+			headerMapper.setHeaderNamesToMap("*");
+			producer.setHeaderMapper(headerMapper);
+			producer.setContentType("application/json");
+			producer.setEnableEmptyPayload(true);
+		});
+		return adapter;
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "app.tuner.enabled", havingValue = "true")
+	public MessageChannel debeziumInputChannel() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "app.tuner.enabled", havingValue = "true")
+	public DebeziumTunerEndpoint debeziumTunerEndpoint(AdaptiveDebeziumInboundAdapter adapter) {
+		return new DebeziumTunerEndpoint(adapter);
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "app.tuner.enabled", havingValue = "true")
+	public IntegrationFlow tunedStreamFlow(AdaptiveDebeziumInboundAdapter adapter) {
+		return IntegrationFlow.from(debeziumInputChannel())
+				.handle(changeEventRouter(), endpointSpec -> endpointSpec.advice(adapter.latencyAdvice()))
+				.get();
+	}
+
+	// Routes the change events by the __table and __op headers. The signal table events are dropped, the orders have
+	// their own subflow and the other tables are split into the inserts and the rest.
+	@Bean
+	public ChangeEventRouter changeEventRouter() {
+		return new ChangeEventRouter()
+				.route("dbz_signal", null, new NullChannel())
+				.route("orders", null, orderEvents())
+				.route(null, Envelope.Operation.CREATE, createEvents())
+				.route(null, null, changeEvents());
+	}
+
+	@Bean
+	public MessageChannel orderEvents() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	public MessageChannel createEvents() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	public MessageChannel changeEvents() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	public IntegrationFlow orderEventsFlow() {
+		return IntegrationFlow.from(orderEvents())
+				.handle(m -> logger.info(() -> "ORDER " + ChangeEventHeaders.operation(m) + ", KEY: " + key(m)))
+				.get();
+	}
+
+	@Bean
+	public IntegrationFlow createEventsFlow() {
+		return IntegrationFlow.from(createEvents())
 				.handle(m -> {
-					Object key = m.getHeaders().containsKey(DebeziumHeaders.KEY)
-							? new String((byte[]) m.getHeaders().get(DebeziumHeaders.KEY))
-							: "null";
-					String op = new String((byte[]) m.getHeaders().get("__op"));
-					Object destination = m.getHeaders().get(DebeziumHeaders.DESTINATION);
-					// logger.info("KEY: " + key + ", DESTINATION: " + destination + ", OP: " + op);
-
-					if (!"my-topic.inventory.dbz_signal".equals(destination)) {
-
-						String c = "!";
-						if (StringUtils.hasText(op)) {
-							if (op.contains("\"r\"")) {
-								c = "r";
-							}
-							else if (op.contains("\"c\"")) {
-								c = "c";
-								System.out.println(destination);
-							}
-							else if (op.contains("\"u\"")) {
-								c = "u";
-							}
-							else if (op.contains("\"d\"")) {
-								c = "d";
-							}
-							else {
-								//c = "#";
-								c = op;
-							}
-
-						}
-						System.out.print(c);
-					}
-
-					// headerKeys.add(m.getHeaders().keySet());
-					// payloads.add(new String((byte[]) m.getPayload()));
-					// latch.countDown();
+					System.out.println(m.getHeaders().get(DebeziumHeaders.DESTINATION));
+					System.out.print(Envelope.Operation.CREATE.code());
 				})
 				.get();
 	}
 
+	@Bean
+	public IntegrationFlow changeEventsFlow() {
+		return IntegrationFlow.from(changeEvents())
+				.handle(m -> {
+					Envelope.Operation op = ChangeEventHeaders.operation(m);
+					System.out.print((op != null) ? op.code() : "!");
+				})
+				.get();
+	}
+
+	private static Properties debeziumProperties(Environment environment) {
+		Properties properties = new Properties();
+		properties.putAll(Binder.get(environment)
+				.bind("debezium.properties", Bindable.mapOf(String.class, String.class))
+				.orElse(Map.of()));
+		return properties;
+	}
+
+	private static String key(Message<?> m) {
+		return m.getHeaders().containsKey(DebeziumHeaders.KEY)
+				? new String((byte[]) m.getHeaders().get(DebeziumHeaders.KEY))
+				: "null";
+	}
+
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.support;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ByteValueMatcherTests {
+
+	@Test
+	public void headerEnvelope() {
+		ByteValueMatcher matcher = ByteValueMatcher.header("__op", "c", "u", "d");
+
+		assertThat(matcher.indexOf(withHeader("__op", bytes("{\"schema\":{\"type\":\"string\"},\"payload\":\"u\"}"))))
+			.isEqualTo(1);
+		assertThat(matcher.indexOf(withHeader("__op", bytes(" {\"payload\":\"d\"}")))).isEqualTo(2);
+		assertThat(matcher.accept(withHeader("__op", bytes("{\"payload\":\"r\"}")))).isFalse();
+		assertThat(matcher.accept(withHeader("__op", bytes("{\"payload\":\"cc\"}")))).isFalse();
+		assertThat(matcher.accept(withHeader("__op", bytes("{\"payload\":null}")))).isFalse();
+		assertThat(matcher.accept(withHeader("other", bytes("{\"payload\":\"c\"}")))).isFalse();
+	}
+
+	@Test
+	public void rawHeader() {
+		ByteValueMatcher matcher = ByteValueMatcher.header("__table", "orders", "customers");
+
+		assertThat(matcher.indexOf(withHeader("__table", bytes("customers")))).isEqualTo(1);
+		assertThat(matcher.indexOf(withHeader("__table", "orders"))).isEqualTo(0);
+		assertThat(matcher.accept(withHeader("__table", bytes("order")))).isFalse();
+		assertThat(matcher.getValue(1)).isEqualTo("customers");
+	}
+
+	@Test
+	public void payloadField() {
+		ByteValueMatcher matcher = ByteValueMatcher.payloadField("__op", "r");
+		byte[] payload = bytes("{\"id\":1,\"name\":\"r\",\"nested\":{\"__op\":\"c\"},\"__op\":\"r\",\"__table\":\"t\"}");
+		Message<byte[]> message = MessageBuilder.withPayload(payload).build();
+
+		assertThat(matcher.accept(message)).isTrue();
+		assertThat(message.getPayload()).isSameAs(payload);
+		assertThat(matcher.accept(MessageBuilder.withPayload(bytes("{\"name\":\"r\",\"__op\":\"c\"}")).build()))
+			.isFalse();
+		assertThat(matcher.accept(MessageBuilder.withPayload(new byte[0]).build())).isFalse();
+	}
+
+	private static Message<?> withHeader(String name, Object value) {
+		return MessageBuilder.withPayload(new byte[0]).setHeader(name, value).build();
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
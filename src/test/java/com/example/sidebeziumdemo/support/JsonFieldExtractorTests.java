@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.support;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+public class JsonFieldExtractorTests {
+
+	@Test
+	public void headerEnvelope() {
+		assertThat(JsonFieldExtractor.PAYLOAD.extractLong(bytes("{\"payload\":23785672}"))).isEqualTo(23785672L);
+		assertThat(JsonFieldExtractor.PAYLOAD.extractLong(bytes("{\"payload\":\"-42\"}"))).isEqualTo(-42L);
+		assertThat(JsonFieldExtractor.PAYLOAD.extractLong(bytes(
+				"{ \"schema\" : {\"type\":\"int64\",\"payload\":1}, \"payload\" : 9223372036854775807 }")))
+				.isEqualTo(Long.MAX_VALUE);
+		assertThat(JsonFieldExtractor.PAYLOAD.extractString(bytes("{\"payload\":\"c\"}"))).isEqualTo("c");
+	}
+
+	@Test
+	public void payloadField() {
+		byte[] payload = bytes("{\"id\":1,\"name\":\"a \\\"val\\\" b\",\"tags\":[\"val\",{\"val\":0}],\"val\":-17,"
+				+ "\"__deleted\":\"false\"}");
+		assertThat(JsonFieldExtractor.forField("val").extractInt(payload)).isEqualTo(-17);
+		assertThat(JsonFieldExtractor.forField("name").extractString(payload)).isEqualTo("a \"val\" b");
+		assertThat(JsonFieldExtractor.forField("tags").extractString(payload)).isEqualTo("[\"val\",{\"val\":0}]");
+		assertThat(JsonFieldExtractor.forField("__deleted").valueEquals(payload, bytes("false"))).isTrue();
+		assertThat(JsonFieldExtractor.forField("__deleted").valueEquals(payload, bytes("fals"))).isFalse();
+		assertThat(JsonFieldExtractor.forField("missing").hasField(payload)).isFalse();
+		assertThat(JsonFieldExtractor.forField("missing").extractString(payload)).isNull();
+	}
+
+	@Test
+	public void invalidValues() {
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> JsonFieldExtractor.PAYLOAD.extractLong(bytes("{\"other\":1}")));
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> JsonFieldExtractor.PAYLOAD.extractLong(bytes("{\"payload\":1.5}")));
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> JsonFieldExtractor.PAYLOAD.extractLong(bytes("{\"payload\":null}")));
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> JsonFieldExtractor.PAYLOAD.extractLong(bytes("{\"payload\":9223372036854775808}")));
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> JsonFieldExtractor.PAYLOAD.extractInt(bytes("{\"payload\":2147483648}")));
+	}
+
+	private static byte[] bytes(String json) {
+		return json.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
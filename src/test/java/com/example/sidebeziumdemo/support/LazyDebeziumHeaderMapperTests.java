@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.support;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import io.debezium.data.Envelope;
+import io.debezium.engine.Header;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.MessageHeaders;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LazyDebeziumHeaderMapperTests {
+
+	@Test
+	public void mapOnlyDeclaredHeaders() {
+		LazyDebeziumHeaderMapper mapper = new LazyDebeziumHeaderMapper("__lsn", "__op", "__name");
+
+		MessageHeaders headers = mapper.toHeaders(List.of(
+				header("__lsn", bytes("{\"schema\":{\"type\":\"int64\"},\"payload\":23456789}")),
+				header("__op", bytes("{\"schema\":{\"type\":\"string\"},\"payload\":\"u\"}")),
+				header("__table", bytes("{\"payload\":\"orders\"}")),
+				header("__name", "server1")));
+
+		assertThat(headers).containsKeys("__lsn", "__op", "__name").doesNotContainKey("__table");
+		assertThat(headers.get("__name")).isEqualTo("server1");
+		assertThat(LazyDebeziumHeaderMapper.getLong(headers, "__lsn")).isEqualTo(23456789L);
+		assertThat(ChangeEventHeaders.operation(MessageBuilder.withPayload(new byte[0]).copyHeaders(headers).build()))
+			.isEqualTo(Envelope.Operation.UPDATE);
+		assertThat(ByteValueMatcher.header("__op", "c", "u").indexOf(
+				MessageBuilder.withPayload(new byte[0]).copyHeaders(headers).build())).isEqualTo(1);
+	}
+
+	@Test
+	public void decodeLazilyAndCache() {
+		byte[] bytes = bytes("{\"schema\":{\"type\":\"int64\"},\"payload\":42}");
+		DebeziumHeaderValue value = new DebeziumHeaderValue(bytes);
+
+		assertThat(value.getBytes()).isSameAs(bytes);
+		assertThat(value.asLong()).isEqualTo(42L);
+		// The decoded value is cached, not parsed again from the bytes.
+		bytes[bytes.length - 3] = '9';
+		assertThat(value.asLong()).isEqualTo(42L);
+	}
+
+	@Test
+	public void rawValues() {
+		assertThat(new DebeziumHeaderValue(bytes("12345")).asLong()).isEqualTo(12345L);
+		assertThat(new DebeziumHeaderValue(bytes("\"orders\"")).asString()).isEqualTo("orders");
+		assertThat(new DebeziumHeaderValue(bytes("c")).asOperation()).isEqualTo(Envelope.Operation.CREATE);
+		assertThat(new DebeziumHeaderValue(bytes("{\"payload\":null}")).asString()).isNull();
+	}
+
+	private static Header<Object> header(String key, Object value) {
+		return new Header<>() {
+
+			@Override
+			public String getKey() {
+				return key;
+			}
+
+			@Override
+			public Object getValue() {
+				return value;
+			}
+
+		};
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.tuning;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import com.example.sidebeziumdemo.tuning.BatchSizeTuner.Action;
+import com.example.sidebeziumdemo.tuning.BatchSizeTuner.Decision;
+import com.example.sidebeziumdemo.tuning.BatchSizeTuner.Settings;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BatchSizeTunerTests {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	public void growWhenSaturated() {
+		BatchSizeTuner tuner = new BatchSizeTuner(Duration.ofMillis(100), 1, 4096, 4, 100, new Settings(1, 2, 15000));
+		assertThat(tuner.getSettings()).isEqualTo(new Settings(1, 4, 15000));
+
+		Decision decision = tuner.evaluate(10 * MS, 1.0, Double.NaN);
+		assertThat(decision.action()).isEqualTo(Action.GROW);
+		assertThat(decision.settings()).isEqualTo(new Settings(2, 8, 100));
+
+		for (int i = 0; i < 20; i++) {
+			tuner.evaluate(10 * MS, Double.NaN, 1.0);
+		}
+		assertThat(tuner.getSettings()).isEqualTo(new Settings(4096, 16384, 100));
+		assertThat(tuner.evaluate(10 * MS, 1.0, 1.0).action()).isEqualTo(Action.HOLD);
+	}
+
+	@Test
+	public void shrinkOverTarget() {
+		BatchSizeTuner tuner = new BatchSizeTuner(Duration.ofMillis(100), 16, 4096, 4, 100,
+				new Settings(1024, 4096, 500));
+
+		Decision decision = tuner.evaluate(150 * MS, 1.0, 1.0);
+		assertThat(decision.action()).isEqualTo(Action.SHRINK);
+		assertThat(decision.settings()).isEqualTo(new Settings(512, 2048, 500));
+		assertThat(decision.p99Micros()).isEqualTo(150_000);
+
+		for (int i = 0; i < 20; i++) {
+			tuner.evaluate(150 * MS, 1.0, 1.0);
+		}
+		assertThat(tuner.getSettings().maxBatchSize()).isEqualTo(16);
+	}
+
+	@Test
+	public void holdWithoutHeadroom() {
+		BatchSizeTuner tuner = new BatchSizeTuner(Duration.ofMillis(100), 1, 4096, 4, 100,
+				new Settings(256, 1024, 500));
+
+		assertThat(tuner.evaluate(80 * MS, 1.0, 1.0).action()).isEqualTo(Action.HOLD);
+		assertThat(tuner.evaluate(10 * MS, 0.1, 0.2).action()).isEqualTo(Action.HOLD);
+		assertThat(tuner.evaluate(0, Double.NaN, Double.NaN).action()).isEqualTo(Action.HOLD);
+		assertThat(tuner.getSettings()).isEqualTo(new Settings(256, 1024, 500));
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2023-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.sidebeziumdemo.tuning;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.example.sidebeziumdemo.tuning.SnapshotChunkSizeTuner.Action;
+import com.example.sidebeziumdemo.tuning.SnapshotChunkSizeTuner.Decision;
+import io.debezium.pipeline.notification.Notification;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SnapshotChunkSizeTunerTests {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	public void growTowardsTargetChunkTime() {
+		SnapshotChunkSizeTuner tuner = new SnapshotChunkSizeTuner(Duration.ofSeconds(1), 1, 100_000, 3);
+
+		Decision decision = snapshot(tuner, 10, 50, 0);
+		assertThat(decision.action()).isEqualTo(Action.GROW);
+		assertThat(decision.previousChunkSize()).isEqualTo(3);
+		assertThat(decision.chunkSize()).isEqualTo(24);
+		assertThat(decision.chunks()).isEqualTo(10);
+		assertThat(decision.medianChunkMillis()).isEqualTo(50);
+		assertThat(decision.rowsScanned()).isEqualTo(30);
+
+		assertThat(snapshot(tuner, 10, 250, 1_000_000).chunkSize()).isEqualTo(96);
+		assertThat(snapshot(tuner, 10, 900, 2_000_000).action()).isEqualTo(Action.HOLD);
+		assertThat(tuner.getChunkSize()).isEqualTo(96);
+		assertThat(tuner.getLastDecision().reason()).isEqualTo("within target");
+	}
+
+	@Test
+	public void shrinkOverTargetWithinBounds() {
+		SnapshotChunkSizeTuner tuner = new SnapshotChunkSizeTuner(Duration.ofSeconds(1), 100, 100_000, 1024);
+
+		Decision decision = snapshot(tuner, 5, 4000, 0);
+		assertThat(decision.action()).isEqualTo(Action.SHRINK);
+		assertThat(decision.chunkSize()).isEqualTo(256);
+
+		assertThat(snapshot(tuner, 5, 60_000, 100_000).chunkSize()).isEqualTo(100);
+	}
+
+	@Test
+	public void pausedAndAbortedSnapshots() {
+		SnapshotChunkSizeTuner tuner = new SnapshotChunkSizeTuner(Duration.ofSeconds(1), 1, 100_000, 300);
+
+		assertThat(tuner.onNotification(notification("STARTED", Map.of()), 0)).isNull();
+		inProgress(tuner, "[1]", 900 * MS);
+		tuner.onNotification(notification("PAUSED", Map.of()), 1000 * MS);
+		tuner.onNotification(notification("RESUMED", Map.of()), 60_000 * MS);
+		inProgress(tuner, "[2]", 60_900 * MS);
+		// Re-read chunk
+		inProgress(tuner, "[2]", 61_000 * MS);
+		inProgress(tuner, "[3]", 61_900 * MS);
+		Decision decision = tuner.onNotification(notification("COMPLETED", Map.of()), 62_000 * MS);
+		assertThat(decision.action()).isEqualTo(Action.HOLD);
+		assertThat(decision.chunks()).isEqualTo(3);
+		assertThat(decision.medianChunkMillis()).isEqualTo(900);
+
+		tuner.onNotification(notification("STARTED", Map.of()), 0);
+		inProgress(tuner, "[1]", 10 * MS);
+		tuner.onNotification(notification("ABORTED", Map.of()), 20 * MS);
+		assertThat(tuner.onNotification(notification("COMPLETED", Map.of()), 30 * MS)).isNull();
+		assertThat(tuner.onNotification(new Notification("x", "Initial Snapshot", "COMPLETED", Map.of()), 0)).isNull();
+		assertThat(tuner.getChunkSize()).isEqualTo(300);
+	}
+
+	private static Decision snapshot(SnapshotChunkSizeTuner tuner, int chunks, long chunkMillis, long start) {
+		long now = start;
+		tuner.onNotification(notification("STARTED", Map.of()), now);
+		for (int i = 0; i < chunks; i++) {
+			now += chunkMillis * MS;
+			inProgress(tuner, "[" + (i * tuner.getChunkSize()) + "]", now);
+		}
+		tuner.onNotification(notification("TABLE_SCAN_COMPLETED",
+				Map.of("total_rows_scanned", String.valueOf(chunks * tuner.getChunkSize()))), now);
+		return tuner.onNotification(notification("COMPLETED", Map.of()), now);
+	}
+
+	private static void inProgress(SnapshotChunkSizeTuner tuner, String key, long nanoTime) {
+		tuner.onNotification(notification("IN_PROGRESS", Map.of("current_collection_in_progress", "testDB.dbo.orders",
+				"last_processed_key", key, "maximum_key", "[1000]")), nanoTime);
+	}
+
+	private static Notification notification(String type, Map<String, String> data) {
+		return new Notification("0", "Incremental Snapshot", type, data);
+	}
+
+}